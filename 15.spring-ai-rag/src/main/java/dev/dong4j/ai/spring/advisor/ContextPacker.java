@@ -0,0 +1,215 @@
+package dev.dong4j.ai.spring.advisor;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.retrieval.KeywordTokenizer;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 按 token 预算打包生成上下文
+ *
+ * <p>检索结果原样拼入提示词时，topK × 分块长度可能超出模型上下文，也会把 token 浪费在重复或低价值的片段上。
+ * 这里按文档的排序（检索、融合或重排后的顺序即价值顺序）贪心装箱：
+ * - 先去掉与排在前面、已选中文档中的句子重复的句子（词项 Jaccard 相似度不低于阈值）
+ * - 剩余正文的 token 数不超过剩余预算就选中，否则跳过，继续尝试后面更短的文档
+ * - 第一篇文档单独就超出预算时，保留它开头能放下的句子，保证上下文不为空
+ *
+ * <p>token 数由 {@link TokenCountEstimator} 估算。文档入库时由 {@link #stamp(Document)} 把正文的 token 数写入
+ * {@link #TOKEN_COUNT_METADATA_KEY} 元数据，检索结果因此自带 token 数，打包时未裁剪的文档无需再次估算；
+ * 没有该元数据的文档（如入库早于此功能）打包时现算。
+ * 打包前后的 token 数分别计入 {@code rag.context.tokens} 分布（标签 {@code stage=retrieved|packed}）。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class ContextPacker {
+
+    /** 缓存文档 token 数的元数据键 */
+    public static final String TOKEN_COUNT_METADATA_KEY = "token_count";
+
+    /** token 数指标名 */
+    public static final String METRIC_NAME = "rag.context.tokens";
+
+    /** 句子：到句末标点、换行或英文句点加空白为止，连同其后的空白 */
+    private static final Pattern SENTENCE = Pattern.compile("(?s).+?(?:[。！？!?；;\\n]+|\\.(?=\\s)|$)\\s*");
+
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int tokenBudget;
+    private final double sentenceSimilarity;
+    private final DistributionSummary retrievedTokens;
+    private final DistributionSummary packedTokens;
+
+    /**
+     * 构造函数
+     *
+     * @param properties RAG 配置属性
+     * @param meterRegistry 指标注册表
+     */
+    @Autowired
+    public ContextPacker(RagProperties properties, MeterRegistry meterRegistry) {
+        this(new JTokkitTokenCountEstimator(), properties.context().tokenBudget(),
+                properties.context().sentenceSimilarity(), meterRegistry);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param tokenCountEstimator token 数估算器
+     * @param tokenBudget 上下文文档正文的 token 预算
+     * @param sentenceSimilarity 判定句子重复的词项 Jaccard 相似度阈值
+     * @param meterRegistry 指标注册表
+     */
+    public ContextPacker(TokenCountEstimator tokenCountEstimator,
+                         int tokenBudget,
+                         double sentenceSimilarity,
+                         MeterRegistry meterRegistry) {
+        if (tokenBudget <= 0) {
+            throw new IllegalArgumentException("上下文 token 预算必须大于 0");
+        }
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.tokenBudget = tokenBudget;
+        this.sentenceSimilarity = sentenceSimilarity;
+        this.retrievedTokens = DistributionSummary.builder(METRIC_NAME).tag("stage", "retrieved")
+                .register(meterRegistry);
+        this.packedTokens = DistributionSummary.builder(METRIC_NAME).tag("stage", "packed").register(meterRegistry);
+    }
+
+    /**
+     * 入库前为文档写入正文的 token 数
+     *
+     * @param document 文档
+     */
+    public void stamp(Document document) {
+        String text = document.getText() != null ? document.getText().strip() : "";
+        document.getMetadata().put(TOKEN_COUNT_METADATA_KEY, estimate(text));
+    }
+
+    /**
+     * 在 token 预算内选出上下文文档
+     *
+     * @param documents 按价值降序排列的文档
+     * @return 选中的文档，保持原有顺序；去掉了重复句子的文档正文为裁剪后的文本，token 数写入
+     *         {@link #TOKEN_COUNT_METADATA_KEY} 元数据
+     */
+    public List<Document> pack(List<Document> documents) {
+        List<Document> packed = new ArrayList<>();
+        List<Set<String>> selectedSentences = new ArrayList<>();
+        int remaining = tokenBudget;
+        long retrieved = 0;
+
+        for (Document document : documents) {
+            String text = document.getText() != null ? document.getText().strip() : "";
+            retrieved += tokenCount(document, text);
+
+            List<String> sentences = new ArrayList<>();
+            List<Set<String>> terms = new ArrayList<>();
+            for (String sentence : sentences(text)) {
+                Set<String> sentenceTerms = new HashSet<>(KeywordTokenizer.tokenize(sentence));
+                if (!sentenceTerms.isEmpty() && !redundant(sentenceTerms, selectedSentences)) {
+                    sentences.add(sentence);
+                    terms.add(sentenceTerms);
+                }
+            }
+            if (sentences.isEmpty()) {
+                continue;
+            }
+
+            String trimmed = String.join("", sentences).strip();
+            int tokens = trimmed.equals(text) ? tokenCount(document, text) : estimate(trimmed);
+            if (tokens > remaining && packed.isEmpty()) {
+                // 第一篇文档单独超出预算：保留开头放得下的句子
+                int kept = 0;
+                tokens = 0;
+                while (kept < sentences.size()) {
+                    int next = estimate(String.join("", sentences.subList(0, kept + 1)).strip());
+                    if (next > remaining) {
+                        break;
+                    }
+                    kept++;
+                    tokens = next;
+                }
+                if (kept == 0) {
+                    continue;
+                }
+                sentences = sentences.subList(0, kept);
+                terms = terms.subList(0, kept);
+                trimmed = String.join("", sentences).strip();
+            }
+            if (tokens > remaining) {
+                continue;
+            }
+
+            remaining -= tokens;
+            selectedSentences.addAll(terms);
+            packed.add(trimmed.equals(text) ? document : document.mutate().text(trimmed).build());
+            packed.getLast().getMetadata().put(TOKEN_COUNT_METADATA_KEY, tokens);
+        }
+
+        retrievedTokens.record(retrieved);
+        packedTokens.record(tokenBudget - remaining);
+        return packed;
+    }
+
+    /**
+     * 与已选句子的词项 Jaccard 相似度是否达到阈值
+     */
+    private boolean redundant(Set<String> terms, List<Set<String>> selected) {
+        for (Set<String> other : selected) {
+            int common = 0;
+            for (String term : terms) {
+                if (other.contains(term)) {
+                    common++;
+                }
+            }
+            int union = terms.size() + other.size() - common;
+            if (common >= sentenceSimilarity * union) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读取入库时写入元数据的 token 数，没有时估算并写回
+     */
+    private int tokenCount(Document document, String text) {
+        if (document.getMetadata().get(TOKEN_COUNT_METADATA_KEY) instanceof Number cached) {
+            return cached.intValue();
+        }
+        int tokens = estimate(text);
+        document.getMetadata().put(TOKEN_COUNT_METADATA_KEY, tokens);
+        return tokens;
+    }
+
+    private int estimate(String text) {
+        return text.isEmpty() ? 0 : tokenCountEstimator.estimate(text);
+    }
+
+    private static List<String> sentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        Matcher matcher = SENTENCE.matcher(text);
+        while (matcher.find()) {
+            if (!matcher.group().isBlank()) {
+                sentences.add(matcher.group());
+            }
+        }
+        return sentences;
+    }
+}
@@ -0,0 +1,84 @@
+package dev.dong4j.ai.spring.advisor;
+
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 单次请求的检索上下文
+ *
+ * <p>把接口内已经完成检索、融合或重排的文档交给 {@link RetrievalContextAdvisor}，
+ * 由它拼入生成提示词，避免生成阶段再做一次检索。用法：
+ * <pre>{@code
+ * chatClient.prompt()
+ *         .user(query)
+ *         .advisors(RetrievalContext.of(rerankedDocs))
+ *         .call()
+ *         .content();
+ * }</pre>
+ *
+ * <p>接口本身不需要展示检索结果时可以使用 {@link #lazy(Supplier)}，检索推迟到 Advisor 执行时才进行，
+ * 语义缓存命中的请求因此连检索也一并跳过。
+ *
+ * <p>{@link #of(List)} 同时记录文档集合的指纹（{@link #FINGERPRINT}），{@link SemanticCacheAdvisor} 把它并入缓存作用域：
+ * topK、融合权重等参数改变了检索结果时不会复用按另一组文档生成的回答。按需检索只依赖问题本身，不记录指纹。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public final class RetrievalContext {
+
+    /** 保存检索文档来源的上下文参数 */
+    public static final String DOCUMENTS = "retrieval_context_documents";
+
+    /** 保存检索文档集合指纹的上下文参数 */
+    public static final String FINGERPRINT = "retrieval_context_fingerprint";
+
+    private RetrievalContext() {
+    }
+
+    /**
+     * 使用已检索好的文档作为生成上下文
+     *
+     * @param documents 检索、融合或重排后的文档
+     * @return 供 {@code ChatClient.prompt().advisors(...)} 使用的参数设置
+     */
+    public static Consumer<ChatClient.AdvisorSpec> of(List<Document> documents) {
+        List<Document> snapshot = List.copyOf(documents);
+        String fingerprint = fingerprint(snapshot);
+        return lazy(() -> snapshot).andThen(a -> a.param(FINGERPRINT, fingerprint));
+    }
+
+    /**
+     * 文档集合的指纹：各文档内容指纹排序后再取指纹，与文档顺序无关
+     *
+     * @param documents 文档
+     * @return 十六进制指纹
+     */
+    static String fingerprint(List<Document> documents) {
+        long[] keys = documents.stream().mapToLong(DocumentDeduplicator::keyOf).sorted().toArray();
+        StringBuilder joined = new StringBuilder(keys.length * 17);
+        for (long key : keys) {
+            joined.append(Long.toHexString(key)).append(',');
+        }
+        return Long.toHexString(DocumentDeduplicator.fingerprint(joined.toString()));
+    }
+
+    /**
+     * 在生成前按需检索文档
+     *
+     * @param retriever 检索逻辑，只在请求真正进入生成流程时执行一次
+     * @return 供 {@code ChatClient.prompt().advisors(...)} 使用的参数设置
+     */
+    public static Consumer<ChatClient.AdvisorSpec> lazy(Supplier<List<Document>> retriever) {
+        return a -> a.param(DOCUMENTS, retriever);
+    }
+}
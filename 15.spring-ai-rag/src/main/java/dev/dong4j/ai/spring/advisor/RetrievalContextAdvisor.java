@@ -0,0 +1,91 @@
+package dev.dong4j.ai.spring.advisor;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.document.Document;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 检索上下文注入 Advisor
+ *
+ * <p>读取请求上下文中由 {@link RetrievalContext} 提供的文档，经 {@link ContextPacker} 按 token 预算裁剪、去重后
+ * 按顺序编号拼入用户消息，让模型基于接口已经检索、融合、重排好的结果作答。请求未携带检索上下文时原样放行。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class RetrievalContextAdvisor implements BaseAdvisor {
+
+    private static final String PROMPT_TEMPLATE = """
+            %s
+
+            以下是检索到的参考资料：
+            ---------------------
+            %s
+            ---------------------
+
+            请基于参考资料回答上面的问题。参考资料中没有相关信息时，直接说明无法从资料中找到答案，不要编造。
+            """;
+
+    private final ContextPacker contextPacker;
+
+    /**
+     * 构造函数
+     *
+     * @param contextPacker 上下文打包器
+     */
+    public RetrievalContextAdvisor(ContextPacker contextPacker) {
+        this.contextPacker = contextPacker;
+    }
+
+    @Override
+    public ChatClientRequest before(ChatClientRequest request, AdvisorChain advisorChain) {
+        if (!(request.context().get(RetrievalContext.DOCUMENTS) instanceof Supplier<?> retriever)) {
+            return request;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Document> documents = contextPacker.pack((List<Document>) retriever.get());
+        String userText = request.prompt().getUserMessage().getText();
+        String augmented = PROMPT_TEMPLATE.formatted(userText, formatDocuments(documents));
+
+        return request.mutate()
+                .prompt(request.prompt().augmentUserMessage(augmented))
+                .build();
+    }
+
+    @Override
+    public ChatClientResponse after(ChatClientResponse response, AdvisorChain advisorChain) {
+        return response;
+    }
+
+    @Override
+    public int getOrder() {
+        // 在语义缓存之后执行，缓存命中的请求不再拼装上下文
+        return Ordered.HIGHEST_PRECEDENCE + 200;
+    }
+
+    /**
+     * 按顺序编号拼接文档正文
+     */
+    private static String formatDocuments(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return "（无）";
+        }
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < documents.size(); i++) {
+            context.append('[').append(i + 1).append("] ").append(documents.get(i).getText()).append('\n');
+        }
+        return context.toString().stripTrailing();
+    }
+}
@@ -0,0 +1,235 @@
+package dev.dong4j.ai.spring.advisor;
+
+import dev.dong4j.ai.spring.cache.SemanticCache;
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.embedding.QueryEmbeddingMemo;
+import dev.dong4j.ai.spring.vectorstore.KnowledgeBaseVersion;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.ChatClientMessageAggregator;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisor;
+import org.springframework.ai.chat.client.advisor.api.CallAdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisor;
+import org.springframework.ai.chat.client.advisor.api.StreamAdvisorChain;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * 语义答案缓存 Advisor
+ *
+ * <p>对用户问题做嵌入，在 {@link SemanticCache} 中查找同一作用域、同一知识库版本下
+ * 相似度超过阈值的历史问题，命中时直接返回缓存的回答，跳过模型生成；未命中时正常调用模型并缓存结果。
+ * 同一问题的不同说法（如「Spring AI 有哪些特性」与「Spring AI 的主要功能是什么」）因此只需生成一次。
+ *
+ * <p>缓存按请求显式开启：只有通过 {@link #scope(String)} 声明了作用域的请求才会参与缓存。
+ * 查询改写、重排打分等内部调用与最终问答共用同一个 ChatClient，它们的提示词不适合做语义匹配，默认不受影响；
+ * 不同接口的检索、重排策略不同，作用域也用来隔离各接口的答案。请求通过 {@link RetrievalContext#of(java.util.List)}
+ * 带上已检索的文档时，文档集合的指纹并入作用域：同一接口中 topK、融合权重、推测检索等参数改变了检索结果，
+ * 就不会命中按另一组文档生成的回答。
+ *
+ * <p>同步调用和流式调用共用同一份缓存，流式调用未命中时在流结束后聚合完整回答再写入。
+ *
+ * <p>知识库有写入或删除时 {@link KnowledgeBaseVersion} 递增，旧答案随之失效。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class SemanticCacheAdvisor implements CallAdvisor, StreamAdvisor {
+
+    /** 声明缓存作用域的上下文参数 */
+    public static final String SCOPE = "semantic_cache_scope";
+
+    /** 携带请求内查询嵌入备忘录的上下文参数 */
+    public static final String MEMO = "semantic_cache_memo";
+
+    /** 响应上下文中标记命中缓存的键 */
+    public static final String HIT = "semantic_cache_hit";
+
+    /** 命中率指标名 */
+    public static final String METRIC_NAME = "rag.semantic.cache";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final EmbeddingModel embeddingModel;
+    private final KnowledgeBaseVersion knowledgeBaseVersion;
+    private final SemanticCache<ChatResponse> cache;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * 构造函数
+     *
+     * @param embeddingModel 嵌入模型
+     * @param knowledgeBaseVersion 知识库版本号
+     * @param properties RAG 配置属性
+     * @param meterRegistry 指标注册表
+     */
+    @Autowired
+    public SemanticCacheAdvisor(EmbeddingModel embeddingModel,
+                                KnowledgeBaseVersion knowledgeBaseVersion,
+                                RagProperties properties,
+                                MeterRegistry meterRegistry) {
+        this(embeddingModel, knowledgeBaseVersion, properties.semanticCache(), meterRegistry);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param embeddingModel 嵌入模型
+     * @param knowledgeBaseVersion 知识库版本号
+     * @param properties 语义缓存配置
+     * @param meterRegistry 指标注册表
+     */
+    public SemanticCacheAdvisor(EmbeddingModel embeddingModel,
+                                KnowledgeBaseVersion knowledgeBaseVersion,
+                                RagProperties.SemanticCache properties,
+                                MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.knowledgeBaseVersion = knowledgeBaseVersion;
+        this.cache = new SemanticCache<>(properties.maxEntries(), properties.similarityThreshold());
+        this.hits = Counter.builder(METRIC_NAME).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(METRIC_NAME).tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * 为请求开启语义缓存
+     *
+     * @param scope 缓存作用域，通常为接口路径
+     * @return 供 {@code ChatClient.prompt().advisors(...)} 使用的参数设置
+     */
+    public static Consumer<ChatClient.AdvisorSpec> scope(String scope) {
+        return a -> a.param(SCOPE, scope);
+    }
+
+    /**
+     * 为流式请求开启语义缓存，缓存查询在弹性线程上沿用给定的查询嵌入备忘录，不再重复嵌入检索阶段已嵌入的问题
+     *
+     * @param scope 缓存作用域，通常为接口路径
+     * @param memo 请求内的查询嵌入备忘录
+     * @return 供 {@code ChatClient.prompt().advisors(...)} 使用的参数设置
+     */
+    public static Consumer<ChatClient.AdvisorSpec> scope(String scope, QueryEmbeddingMemo memo) {
+        return a -> a.param(SCOPE, scope).param(MEMO, memo);
+    }
+
+    @Override
+    public ChatClientResponse adviseCall(ChatClientRequest request, CallAdvisorChain chain) {
+        Lookup lookup = lookup(request);
+        if (lookup == null) {
+            return chain.nextCall(request);
+        }
+        if (lookup.cached() != null) {
+            return hitResponse(request, lookup.cached());
+        }
+
+        ChatClientResponse response = chain.nextCall(request);
+        store(lookup, response);
+        return response;
+    }
+
+    @Override
+    public Flux<ChatClientResponse> adviseStream(ChatClientRequest request, StreamAdvisorChain chain) {
+        if (!(request.context().get(SCOPE) instanceof String)) {
+            return chain.nextStream(request);
+        }
+        // 嵌入调用是阻塞的，放到弹性线程池执行并沿用请求的备忘录；未命中时聚合完整的流式响应后再写入缓存
+        QueryEmbeddingMemo memo = request.context().get(MEMO) instanceof QueryEmbeddingMemo carried
+                ? carried : QueryEmbeddingMemo.current();
+        return Mono.fromCallable(QueryEmbeddingMemo.wrap(memo, () -> Optional.ofNullable(lookup(request))))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(lookup -> {
+                    if (lookup.isEmpty()) {
+                        return chain.nextStream(request);
+                    }
+                    if (lookup.get().cached() != null) {
+                        return Flux.just(hitResponse(request, lookup.get().cached()));
+                    }
+                    return new ChatClientMessageAggregator().aggregateChatClientResponse(
+                            chain.nextStream(request), response -> store(lookup.get(), response));
+                });
+    }
+
+    /**
+     * 计算问题嵌入并查找缓存，请求未开启缓存或无法计算嵌入时返回 null
+     */
+    private Lookup lookup(ChatClientRequest request) {
+        if (!(request.context().get(SCOPE) instanceof String scope)) {
+            return null;
+        }
+        if (request.context().get(RetrievalContext.FINGERPRINT) instanceof String fingerprint) {
+            scope = scope + '#' + fingerprint;
+        }
+        UserMessage userMessage = request.prompt().getUserMessage();
+        if (userMessage.getText() == null || userMessage.getText().isBlank()) {
+            return null;
+        }
+
+        long version = knowledgeBaseVersion.current();
+        float[] embedding;
+        try {
+            embedding = embeddingModel.embed(userMessage.getText());
+        } catch (RuntimeException e) {
+            log.warn("语义缓存查询嵌入失败，跳过缓存: {}", e.getMessage());
+            return null;
+        }
+
+        ChatResponse cached = cache.find(scope, version, embedding);
+        (cached != null ? hits : misses).increment();
+        return new Lookup(scope, version, embedding, cached);
+    }
+
+    private ChatClientResponse hitResponse(ChatClientRequest request, ChatResponse cached) {
+        return ChatClientResponse.builder()
+                .chatResponse(cached)
+                .context(request.context())
+                .context(HIT, true)
+                .build();
+    }
+
+    private void store(Lookup lookup, ChatClientResponse response) {
+        if (response.chatResponse() != null && response.chatResponse().getResult() != null) {
+            cache.put(lookup.scope(), lookup.version(), lookup.embedding(), response.chatResponse());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public int getOrder() {
+        // 先于检索上下文注入等 Advisor 执行，以原始问题作为缓存键，命中时跳过后续所有处理
+        return Ordered.HIGHEST_PRECEDENCE + 100;
+    }
+
+    /**
+     * 一次缓存查找的结果
+     *
+     * @param scope 缓存作用域
+     * @param version 查找时的知识库版本
+     * @param embedding 问题嵌入
+     * @param cached 命中的回答，未命中时为 null
+     */
+    private record Lookup(String scope, long version, float[] embedding, ChatResponse cached) {}
+}
@@ -0,0 +1,90 @@
+package dev.dong4j.ai.spring.cache;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * 进程内的查询转换结果缓存
+ *
+ * <p>容量有界的 LRU 缓存，条目写入后超过 TTL 即视为过期，读到过期条目按未命中处理并重新计算。
+ * 命中与未命中分别计入 {@code rag.query.transform.cache} 指标（标签 {@code result=hit|miss}）。
+ *
+ * <p>同一个键的并发未命中不做合并，可能各自调用一次 LLM，结果以最后写入的为准。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class InMemoryQueryTransformCache implements QueryTransformCache {
+
+    /** 命中率指标名 */
+    public static final String METRIC_NAME = "rag.query.transform.cache";
+
+    private final LruCache<Key, Entry> entries;
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * 构造函数
+     *
+     * @param properties RAG 配置属性
+     * @param meterRegistry 指标注册表
+     */
+    @Autowired
+    public InMemoryQueryTransformCache(RagProperties properties, MeterRegistry meterRegistry) {
+        this(properties.queryCache().maxSize(), properties.queryCache().ttl(), meterRegistry);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param maxSize 最大条目数
+     * @param ttl 条目存活时间
+     * @param meterRegistry 指标注册表
+     */
+    public InMemoryQueryTransformCache(int maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.entries = new LruCache<>(maxSize);
+        this.ttlNanos = ttl.toNanos();
+        this.hits = Counter.builder(METRIC_NAME).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(METRIC_NAME).tag("result", "miss").register(meterRegistry);
+    }
+
+    @Override
+    public String getOrCompute(String promptVersion, String query, Function<String, String> transformer) {
+        Key key = new Key(promptVersion, QueryTransformCache.normalize(query));
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.createdNanos() < ttlNanos) {
+            hits.increment();
+            return entry.value();
+        }
+
+        misses.increment();
+        // LLM 调用在缓存锁之外执行
+        String value = transformer.apply(query);
+        if (value != null) {
+            entries.put(key, new Entry(value, System.nanoTime()));
+        }
+        return value;
+    }
+
+    /**
+     * 缓存键
+     */
+    private record Key(String promptVersion, String normalizedQuery) {}
+
+    /**
+     * 缓存条目
+     */
+    private record Entry(String value, long createdNanos) {}
+}
@@ -0,0 +1,79 @@
+package dev.dong4j.ai.spring.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 容量有界的 LRU 缓存
+ *
+ * <p>基于按访问顺序排列的 {@link LinkedHashMap}，超出容量时淘汰最久未访问的条目。
+ * 所有操作在同一把锁内完成，适合读写都很轻量的场景（如缓存打分结果）；
+ * 耗时的计算应在锁外完成后再 {@link #put}。
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class LruCache<K, V> {
+
+    private final int capacity;
+    private final LinkedHashMap<K, V> entries;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 最大条目数
+     */
+    public LruCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("缓存容量必须大于 0");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > LruCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * 读取缓存，命中时刷新访问顺序
+     *
+     * @param key 键
+     * @return 缓存值，未命中时返回 null
+     */
+    public synchronized V get(K key) {
+        return entries.get(key);
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key 键
+     * @param value 值
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * 当前条目数
+     *
+     * @return 条目数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,44 @@
+package dev.dong4j.ai.spring.cache;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * 查询转换结果缓存
+ *
+ * <p>查询扩展、重写、分解等转换都需要一次阻塞的 LLM 调用，而热门查询会被反复提交。
+ * 缓存以「提示词版本 + 归一化后的查询」为键保存 LLM 的原始输出，
+ * 修改提示词时同步升级版本号即可让旧结果自然失效。
+ *
+ * <p>默认实现为进程内的 {@link InMemoryQueryTransformCache}，需要跨实例共享时可替换为分布式实现。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public interface QueryTransformCache {
+
+    /**
+     * 读取缓存的转换结果，未命中时调用转换函数并写入缓存
+     *
+     * @param promptVersion 提示词版本，如 {@code expansion-v1}
+     * @param query 用户原始查询
+     * @param transformer 转换函数，入参为原始查询，返回 LLM 输出
+     * @return 转换结果
+     */
+    String getOrCompute(String promptVersion, String query, Function<String, String> transformer);
+
+    /**
+     * 归一化查询文本：Unicode 兼容归一化（全角转半角）、折叠空白并转为小写
+     *
+     * @param query 查询文本
+     * @return 归一化后的查询
+     */
+    static String normalize(String query) {
+        String normalized = Normalizer.normalize(query, Normalizer.Form.NFKC);
+        return normalized.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+}
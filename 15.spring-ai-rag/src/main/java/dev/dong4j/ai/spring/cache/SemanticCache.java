@@ -0,0 +1,167 @@
+package dev.dong4j.ai.spring.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 按向量相似度查找的紧凑缓存
+ *
+ * <p>所有条目的向量归一化后平铺在一个 float 数组中，按固定容量循环覆盖（写满后淘汰最早写入的条目），
+ * 查找时线性扫描同一作用域、同一知识库版本下的条目，取余弦相似度最高且不低于阈值的一条。
+ * 缓存条目数通常在千级以内，线性扫描的点积开销远小于一次模型生成。
+ *
+ * <p>知识库版本变化后写入新条目时会整体清空旧条目；读取时版本不一致的条目同样不会命中。
+ *
+ * @param <V> 缓存值类型
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class SemanticCache<V> {
+
+    private final int capacity;
+    private final float threshold;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final String[] scopes;
+    private final Object[] values;
+    private final long[] versions;
+
+    private float[] vectors;
+    private int dimensions;
+    private int next;
+    private int size;
+    private long currentVersion = Long.MIN_VALUE;
+
+    /**
+     * 构造函数
+     *
+     * @param capacity 最大条目数
+     * @param threshold 命中所需的最低余弦相似度
+     */
+    public SemanticCache(int capacity, float threshold) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("缓存容量必须大于 0");
+        }
+        this.capacity = capacity;
+        this.threshold = threshold;
+        this.scopes = new String[capacity];
+        this.values = new Object[capacity];
+        this.versions = new long[capacity];
+    }
+
+    /**
+     * 查找与给定向量最相似的缓存值
+     *
+     * @param scope 作用域，只在同一作用域内匹配
+     * @param version 当前知识库版本
+     * @param embedding 查询向量
+     * @return 相似度不低于阈值的最佳匹配，未命中时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public V find(String scope, long version, float[] embedding) {
+        lock.readLock().lock();
+        try {
+            if (size == 0 || embedding.length != dimensions) {
+                return null;
+            }
+            float[] query = normalize(embedding);
+            int best = -1;
+            float bestSimilarity = threshold;
+            for (int i = 0; i < size; i++) {
+                if (versions[i] != version || !scope.equals(scopes[i])) {
+                    continue;
+                }
+                float similarity = dot(query, vectors, i * dimensions);
+                if (similarity >= bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = i;
+                }
+            }
+            return best >= 0 ? (V) values[best] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param scope 作用域
+     * @param version 计算该值时的知识库版本
+     * @param embedding 查询向量
+     * @param value 缓存值
+     */
+    public void put(String scope, long version, float[] embedding, V value) {
+        lock.writeLock().lock();
+        try {
+            if (version < currentVersion) {
+                // 生成期间知识库已更新，结果已经过时
+                return;
+            }
+            if (version != currentVersion || embedding.length != dimensions) {
+                reset(version, embedding.length);
+            }
+            int slot = next;
+            System.arraycopy(normalize(embedding), 0, vectors, slot * dimensions, dimensions);
+            scopes[slot] = scope;
+            values[slot] = value;
+            versions[slot] = version;
+            next = (next + 1) % capacity;
+            size = Math.max(size, slot + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 当前条目数
+     *
+     * @return 条目数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void reset(long version, int newDimensions) {
+        if (vectors == null || newDimensions != dimensions) {
+            vectors = new float[capacity * newDimensions];
+            dimensions = newDimensions;
+        }
+        Arrays.fill(scopes, null);
+        Arrays.fill(values, null);
+        currentVersion = version;
+        next = 0;
+        size = 0;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    private static float dot(float[] query, float[] vectors, int offset) {
+        float sum = 0f;
+        for (int i = 0; i < query.length; i++) {
+            sum += query[i] * vectors[offset + i];
+        }
+        return sum;
+    }
+}
@@ -1,13 +1,31 @@
 package dev.dong4j.ai.spring.config;
 
+import dev.dong4j.ai.spring.advisor.ContextPacker;
+import dev.dong4j.ai.spring.advisor.RetrievalContextAdvisor;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.embedding.CachingEmbeddingModel;
+import dev.dong4j.ai.spring.embedding.CoalescingEmbeddingModel;
+import dev.dong4j.ai.spring.embedding.MappedEmbeddingCache;
+import dev.dong4j.ai.spring.embedding.MemoizingEmbeddingModel;
+import dev.dong4j.ai.spring.retrieval.Bm25Index;
+import dev.dong4j.ai.spring.vectorstore.HnswVectorStore;
+import dev.dong4j.ai.spring.vectorstore.KeywordIndexedVectorStore;
+import dev.dong4j.ai.spring.vectorstore.KnowledgeBaseVersion;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.model.openai.autoconfigure.OpenAiEmbeddingProperties;
 import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.ai.openai.OpenAiEmbeddingModel;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
-import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /**
  * Spring AI RAG 配置类
@@ -22,46 +40,140 @@ import org.springframework.context.annotation.Configuration;
  * @since 1.0.0
  */
 @Configuration
+@EnableConfigurationProperties(RagProperties.class)
 public class RagConfig {
 
     /**
      * 创建并返回一个配置好的 OpenAI 聊天客户端实例
      *
+     * <p>默认挂载 {@link SemanticCacheAdvisor} 和 {@link RetrievalContextAdvisor}：
+     * 声明了缓存作用域的请求会先查语义答案缓存，未命中时再把请求携带的检索结果拼入提示词。
+     *
      * @param chatModel 用于构建聊天客户端的模型配置对象
+     * @param semanticCacheAdvisor 语义答案缓存 Advisor
+     * @param retrievalContextAdvisor 检索上下文注入 Advisor
      * @return 配置好的 ChatClient 实例
      */
     @Bean
-    public ChatClient openAiChatClient(OpenAiChatModel chatModel) {
-        return ChatClient.create(
-                chatModel
-                        .mutate()
-                        .defaultOptions(
-                                OpenAiChatOptions.builder()
-                                        .model("Qwen/Qwen3-8B")
-                                        .temperature(0.7)
-                                        .build())
-                        .build());
+    public ChatClient openAiChatClient(OpenAiChatModel chatModel,
+                                       SemanticCacheAdvisor semanticCacheAdvisor,
+                                       RetrievalContextAdvisor retrievalContextAdvisor) {
+        return ChatClient.builder(
+                        chatModel
+                                .mutate()
+                                .defaultOptions(
+                                        OpenAiChatOptions.builder()
+                                                .model("Qwen/Qwen3-8B")
+                                                .temperature(0.7)
+                                                .build())
+                                .build())
+                .defaultAdvisors(semanticCacheAdvisor, retrievalContextAdvisor)
+                .build();
     }
 
     /**
-     * 创建 SimpleVectorStore 向量存储实例
+     * 持久化嵌入缓存，按 (模型, 维度, 文本) 缓存向量，重启后仍然有效
      *
-     * <p>SimpleVectorStore 是 Spring AI 提供的轻量级内存向量存储实现。
-     * 在 Spring AI 0.8.0 后，InMemoryVectorStore 和 SimplePersistentVectorStore
-     * 被合并为 SimpleVectorStore。
+     * @param properties RAG 配置
+     * @return 嵌入缓存
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "rag.embedding-cache", name = "enabled", matchIfMissing = true)
+    public MappedEmbeddingCache mappedEmbeddingCache(RagProperties properties) {
+        RagProperties.EmbeddingCache cache = properties.embeddingCache();
+        return new MappedEmbeddingCache(cache.file(), cache.precision(), cache.initialSize().toBytes());
+    }
+
+    /**
+     * 合并并发嵌入调用的嵌入模型
+     *
+     * <p>在 OpenAI 嵌入模型外依次包装两层：{@link CachingEmbeddingModel} 命中持久化缓存的文本不再请求嵌入服务，
+     * {@link CoalescingEmbeddingModel} 把并发的单条嵌入调用合并为批量请求。
+     *
+     * @param embeddingModel OpenAI 嵌入模型
+     * @param embeddingProperties OpenAI 嵌入配置，提供默认模型与维度用于计算缓存键
+     * @param embeddingCache 持久化嵌入缓存，未启用时不存在
+     * @param properties RAG 配置
+     * @param meterRegistry 指标注册表
+     * @return 合并请求的嵌入模型
+     */
+    @Bean
+    public CoalescingEmbeddingModel coalescingEmbeddingModel(OpenAiEmbeddingModel embeddingModel,
+                                                             OpenAiEmbeddingProperties embeddingProperties,
+                                                             ObjectProvider<MappedEmbeddingCache> embeddingCache,
+                                                             RagProperties properties,
+                                                             MeterRegistry meterRegistry) {
+        EmbeddingModel delegate = embeddingModel;
+        MappedEmbeddingCache cache = embeddingCache.getIfAvailable();
+        if (cache != null) {
+            OpenAiEmbeddingOptions options = embeddingProperties.getOptions();
+            delegate = new CachingEmbeddingModel(
+                    embeddingModel, cache, options.getModel(), options.getDimensions(), meterRegistry);
+        }
+        RagProperties.EmbeddingBatch batch = properties.embeddingBatch();
+        return new CoalescingEmbeddingModel(
+                delegate, batch.linger(), batch.maxBatchSize(), batch.timeout(), meterRegistry);
+    }
+
+    /**
+     * 应用内使用的嵌入模型
      *
-     * <p>特点：
-     * - 数据存储在内存中（可选持久化）
-     * - 无需外部数据库依赖
-     * - 适合开发测试场景
-     * - 零配置，开箱即用
+     * <p>在 {@link #coalescingEmbeddingModel} 外再包装 {@link MemoizingEmbeddingModel}，同一请求内对同一查询只嵌入一次。
+     * 作为首选的 {@link EmbeddingModel}，向量检索、语义缓存、推测检索等组件都经过这三层。
      *
-     * @param embeddingModel 嵌入模型，用于将文本转换为向量表示
-     * @return 配置好的 SimpleVectorStore 实例
+     * @param embeddingModel 合并请求的嵌入模型
+     * @return 请求内记住查询嵌入的嵌入模型
      */
     @Bean
-    public VectorStore simpleVectorStore(OpenAiEmbeddingModel embeddingModel) {
-        return SimpleVectorStore.builder(embeddingModel)
+    @Primary
+    public MemoizingEmbeddingModel memoizingEmbeddingModel(CoalescingEmbeddingModel embeddingModel) {
+        return new MemoizingEmbeddingModel(embeddingModel);
+    }
+
+    /**
+     * 创建基于 HNSW 图索引的内存向量存储
+     *
+     * <p>最初使用的 SimpleVectorStore 是 Spring AI 提供的轻量级内存向量存储，每次查询都要与全部向量计算相似度，
+     * 查询耗时随知识库线性增长。{@link HnswVectorStore} 同样无需外部数据库、开箱即用，
+     * 检索语义与 SimpleVectorStore 一致，但查询耗时随数据量对数增长。
+     * 启动和关闭时由 {@link dev.dong4j.ai.spring.vectorstore.VectorStoreSnapshotter} 加载、保存二进制快照。
+     *
+     * @param embeddingModel 嵌入模型（首选实例），用于将文本转换为向量表示
+     * @param properties RAG 配置
+     * @return HNSW 向量存储
+     */
+    @Bean
+    public HnswVectorStore hnswVectorStore(EmbeddingModel embeddingModel, RagProperties properties) {
+        RagProperties.Hnsw hnsw = properties.hnsw();
+        return HnswVectorStore.builder(embeddingModel)
+                .m(hnsw.m())
+                .efConstruction(hnsw.efConstruction())
+                .efSearch(hnsw.efSearch())
+                .quantization(hnsw.quantization())
+                .rescoreFactor(hnsw.rescoreFactor())
+                .bruteForceThreshold(hnsw.bruteForceThreshold())
                 .build();
     }
+
+    /**
+     * 应用内使用的向量存储
+     *
+     * <p>在 {@link HnswVectorStore} 外包装 {@link KeywordIndexedVectorStore}，写入文档时同步更新 BM25 关键词索引，
+     * 供多路召回中的关键词通道使用；同时通过 {@link dev.dong4j.ai.spring.vectorstore.VectorLookup}
+     * 使 MMR 等组件可以读取已入库的向量。作为首选的 VectorStore，所有写入都经过这一层。
+     *
+     * @param hnswVectorStore HNSW 向量存储
+     * @param keywordIndex BM25 关键词索引
+     * @param knowledgeBaseVersion 知识库版本号，文档写入或删除时递增
+     * @param contextPacker 上下文打包器，入库时为文档写入 token 数
+     * @return 配置好的向量存储实例
+     */
+    @Bean
+    @Primary
+    public KeywordIndexedVectorStore vectorStore(HnswVectorStore hnswVectorStore,
+                                                 Bm25Index keywordIndex,
+                                                 KnowledgeBaseVersion knowledgeBaseVersion,
+                                                 ContextPacker contextPacker) {
+        return new KeywordIndexedVectorStore(hnswVectorStore, keywordIndex, knowledgeBaseVersion, contextPacker);
+    }
 }
@@ -0,0 +1,257 @@
+package dev.dong4j.ai.spring.config;
+
+import dev.dong4j.ai.spring.embedding.MappedEmbeddingCache;
+import dev.dong4j.ai.spring.vectorstore.VectorQuantization;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * RAG 模块配置属性
+ *
+ * <p>统一承载 {@code rag.*} 前缀下的调优参数，各检索、重排组件从这里读取配置，
+ * 未配置时使用这里声明的默认值。
+ *
+ * @param recall 多路召回配置
+ * @param bm25 BM25 关键词索引配置
+ * @param fusion 多路结果融合配置
+ * @param rerank LLM 重排配置
+ * @param mmr MMR 多样性选择配置
+ * @param queryCache 查询转换结果缓存配置
+ * @param semanticCache 语义答案缓存配置
+ * @param speculative 推测检索配置
+ * @param decomposition 查询分解配置
+ * @param ingest 批量导入配置
+ * @param embeddingBatch 嵌入请求合并配置
+ * @param embeddingCache 持久化嵌入缓存配置
+ * @param hnsw HNSW 向量索引配置
+ * @param snapshot 向量存储快照配置
+ * @param compaction 向量存储后台压缩配置
+ * @param coalescing 并发相同请求合并配置
+ * @param cascade 级联重排配置
+ * @param context 生成上下文打包配置
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@ConfigurationProperties(prefix = "rag")
+public record RagProperties(
+        @DefaultValue Recall recall,
+        @DefaultValue Bm25 bm25,
+        @DefaultValue Fusion fusion,
+        @DefaultValue Rerank rerank,
+        @DefaultValue Mmr mmr,
+        @DefaultValue QueryCache queryCache,
+        @DefaultValue SemanticCache semanticCache,
+        @DefaultValue Speculative speculative,
+        @DefaultValue Decomposition decomposition,
+        @DefaultValue Ingest ingest,
+        @DefaultValue EmbeddingBatch embeddingBatch,
+        @DefaultValue EmbeddingCache embeddingCache,
+        @DefaultValue Hnsw hnsw,
+        @DefaultValue Snapshot snapshot,
+        @DefaultValue Compaction compaction,
+        @DefaultValue Coalescing coalescing,
+        @DefaultValue Cascade cascade,
+        @DefaultValue Context context) {
+
+    /**
+     * 多路召回配置
+     *
+     * @param channelTimeout 单个召回通道的截止时间，超时的通道结果会被丢弃
+     */
+    public record Recall(@DefaultValue("3s") Duration channelTimeout) {}
+
+    /**
+     * BM25 关键词索引配置
+     *
+     * @param k1 词频饱和参数，越大词频的影响越线性
+     * @param b 文档长度归一化参数，0 表示不做长度归一化
+     */
+    public record Bm25(@DefaultValue("1.2") float k1, @DefaultValue("0.75") float b) {}
+
+    /**
+     * 多路结果融合配置
+     *
+     * @param rrfK RRF 平滑常数，常用取值 60
+     */
+    public record Fusion(@DefaultValue("60") int rrfK) {}
+
+    /**
+     * LLM 重排配置
+     *
+     * @param windowSize 每次调用 LLM 打分的候选文档数，各窗口并行打分
+     * @param windowTimeout 重排截止时间，各窗口共用；到期仍有候选未打分时整批回退为按原始检索分数排序
+     * @param cacheSize (查询, 文档) 打分结果缓存的最大条目数
+     */
+    public record Rerank(
+            @DefaultValue("8") int windowSize,
+            @DefaultValue("5s") Duration windowTimeout,
+            @DefaultValue("4096") int cacheSize) {}
+
+    /**
+     * MMR 多样性选择配置
+     *
+     * @param lambda 相关性权重，1 表示只看相关性，0 表示只看多样性
+     */
+    public record Mmr(@DefaultValue("0.5") double lambda) {}
+
+    /**
+     * 查询转换结果缓存配置
+     *
+     * @param maxSize 最大条目数，超出后淘汰最久未访问的条目
+     * @param ttl 条目存活时间
+     */
+    public record QueryCache(@DefaultValue("1000") int maxSize, @DefaultValue("30m") Duration ttl) {}
+
+    /**
+     * 语义答案缓存配置
+     *
+     * @param similarityThreshold 命中所需的最低余弦相似度
+     * @param maxEntries 最大条目数，写满后淘汰最早写入的条目
+     */
+    public record SemanticCache(
+            @DefaultValue("0.92") float similarityThreshold,
+            @DefaultValue("1024") int maxEntries) {}
+
+    /**
+     * 推测检索配置
+     *
+     * @param similarityThreshold 改写前后查询的余弦相似度不低于该值时复用原始查询的检索结果
+     * @param timeout 查询改写与推测检索的截止时间
+     */
+    public record Speculative(
+            @DefaultValue("0.9") double similarityThreshold,
+            @DefaultValue("30s") Duration timeout) {}
+
+    /**
+     * 查询分解配置
+     *
+     * @param maxConcurrency 同时执行的子查询上限
+     * @param subQueryTimeout 单个子查询「检索 + 回答」的截止时间
+     */
+    public record Decomposition(
+            @DefaultValue("4") int maxConcurrency,
+            @DefaultValue("30s") Duration subQueryTimeout) {}
+
+    /**
+     * 批量导入配置
+     *
+     * @param workDir 上传数据与检查点文件的工作目录
+     * @param queueCapacity 流水线各阶段之间队列的容量，决定内存占用上限
+     * @param batchSize 每次写入向量存储（一次批量嵌入调用）的分块数
+     * @param chunkSize 分块大小（token 数）
+     */
+    public record Ingest(
+            @DefaultValue("rag-ingest") Path workDir,
+            @DefaultValue("256") int queueCapacity,
+            @DefaultValue("64") int batchSize,
+            @DefaultValue("800") int chunkSize) {}
+
+    /**
+     * 嵌入请求合并配置
+     *
+     * @param linger 攒批窗口，收到第一条文本后最多等待的时间
+     * @param maxBatchSize 每次嵌入请求最多合并的文本数
+     * @param timeout 单条嵌入调用等待合并结果的最长时间
+     */
+    public record EmbeddingBatch(
+            @DefaultValue("5ms") Duration linger,
+            @DefaultValue("32") int maxBatchSize,
+            @DefaultValue("30s") Duration timeout) {}
+
+    /**
+     * 持久化嵌入缓存配置
+     *
+     * @param enabled 是否启用
+     * @param file 缓存文件路径
+     * @param precision 向量存储精度，FLOAT16 体积减半
+     * @param initialSize 新建缓存文件时的初始映射大小
+     */
+    public record EmbeddingCache(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("rag-embedding-cache.bin") Path file,
+            @DefaultValue("FLOAT32") MappedEmbeddingCache.Precision precision,
+            @DefaultValue("16MB") DataSize initialSize) {}
+
+    /**
+     * HNSW 向量索引配置
+     *
+     * @param m 每个节点的最大邻居数（第 0 层为 2M），越大召回率越高、内存占用越大
+     * @param efConstruction 插入时的候选集大小，越大图质量越好、写入越慢
+     * @param efSearch 查询时的候选集大小，越大召回率越高、查询越慢，实际取值不小于 topK
+     * @param quantization 向量量化方式，NONE / INT8 / BINARY
+     * @param rescoreFactor 量化时先取 topK 的多少倍候选，再用原始向量重新打分
+     * @param bruteForceThreshold 元数据过滤后的候选数不超过该值时逐一计算相似度，不走图搜索
+     */
+    public record Hnsw(
+            @DefaultValue("16") int m,
+            @DefaultValue("200") int efConstruction,
+            @DefaultValue("64") int efSearch,
+            @DefaultValue("NONE") VectorQuantization quantization,
+            @DefaultValue("4") int rescoreFactor,
+            @DefaultValue("2048") int bruteForceThreshold) {}
+
+    /**
+     * 向量存储快照配置
+     *
+     * @param enabled 是否在启动时加载、关闭时保存快照
+     * @param file 快照文件路径
+     */
+    public record Snapshot(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("rag-vector-store.snapshot") Path file) {}
+
+    /**
+     * 向量存储后台压缩配置
+     *
+     * @param enabled 是否定期回收已删除的节点
+     * @param interval 检查间隔
+     * @param minTombstones 已删除节点数至少达到该值才压缩
+     * @param tombstoneRatio 已删除节点占全部节点的比例至少达到该值才压缩
+     */
+    public record Compaction(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("1m") Duration interval,
+            @DefaultValue("1000") int minTombstones,
+            @DefaultValue("0.2") double tombstoneRatio) {}
+
+    /**
+     * 并发相同请求合并配置
+     *
+     * @param enabled 是否合并同时到达的相同请求
+     * @param waitTimeout 等待正在执行的相同请求的最长时间，超时后自行执行
+     * @param excludedPaths 不参与合并的路径（有副作用的 GET 接口）
+     */
+    public record Coalescing(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("60s") Duration waitTimeout,
+            @DefaultValue({"/rag/naive/add-document", "/rag/naive/add-sample-documents"}) List<String> excludedPaths) {}
+
+    /**
+     * 级联重排配置
+     *
+     * @param lexicalMargin 关键词覆盖率阶段提前结束所需的边界分差（第 topK 名与第 topK + 1 名之差，0 到 1）
+     * @param vectorMargin 向量分数阶段提前结束所需的边界分差（余弦相似度之差）
+     */
+    public record Cascade(
+            @DefaultValue("0.5") double lexicalMargin,
+            @DefaultValue("0.1") double vectorMargin) {}
+
+    /**
+     * 生成上下文打包配置
+     *
+     * @param tokenBudget 拼入提示词的参考资料正文最多占用的 token 数
+     * @param sentenceSimilarity 与已选句子的词项 Jaccard 相似度不低于该值的句子视为重复并去掉
+     */
+    public record Context(
+            @DefaultValue("3000") int tokenBudget,
+            @DefaultValue("0.8") double sentenceSimilarity) {}
+}
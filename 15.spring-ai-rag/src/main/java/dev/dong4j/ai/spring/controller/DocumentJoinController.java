@@ -1,18 +1,31 @@
 package dev.dong4j.ai.spring.controller;
 
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.cache.QueryTransformCache;
+import dev.dong4j.ai.spring.retrieval.Bm25Index;
+import dev.dong4j.ai.spring.retrieval.ChannelResult;
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+import dev.dong4j.ai.spring.retrieval.DocumentJoiner;
+import dev.dong4j.ai.spring.retrieval.RecallChannel;
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+import dev.dong4j.ai.spring.stream.RagStreamer;
+
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * 文档连接控制器
@@ -33,7 +46,7 @@ import java.util.Set;
  * 3. WeightedDocumentJoiner（加权文档连接器）
  *    - 根据不同数据源的权重进行加权融合
  *    - 例如：向量检索权重0.7，BM25权重0.3
- *    - 得分加权求和后选择 top-k 文档
+ *    - 各路按排名计算 RRF 得分并乘以权重（加权 RRF），求和后选择 top-k 文档
  *
  * @author ogromwang
  * @version 1.0.0
@@ -47,16 +60,37 @@ public class DocumentJoinController {
 
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final RecallExecutor recallExecutor;
+    private final Bm25Index keywordIndex;
+    private final DocumentJoiner documentJoiner;
+    private final QueryTransformCache queryTransformCache;
+    private final RagStreamer ragStreamer;
 
     /**
      * 构造函数，注入相关组件
      *
      * @param chatClient 聊天客户端
      * @param vectorStore 向量存储
+     * @param recallExecutor 多路召回执行器
+     * @param keywordIndex BM25 关键词索引
+     * @param documentJoiner 多路召回结果融合器
+     * @param queryTransformCache 查询转换结果缓存
+     * @param ragStreamer RAG 流式响应构建器
      */
-    public DocumentJoinController(ChatClient chatClient, VectorStore vectorStore) {
+    public DocumentJoinController(ChatClient chatClient,
+                                  VectorStore vectorStore,
+                                  RecallExecutor recallExecutor,
+                                  Bm25Index keywordIndex,
+                                  DocumentJoiner documentJoiner,
+                                  QueryTransformCache queryTransformCache,
+                                  RagStreamer ragStreamer) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
+        this.recallExecutor = recallExecutor;
+        this.keywordIndex = keywordIndex;
+        this.documentJoiner = documentJoiner;
+        this.queryTransformCache = queryTransformCache;
+        this.ragStreamer = ragStreamer;
     }
 
     /**
@@ -86,7 +120,7 @@ public class DocumentJoinController {
         }
 
         // 使用拼接方式合并文档（ConcatenationDocumentJoiner）
-        List<Document> concatenatedDocs = concatenateDocuments(multiChannelResults);
+        List<Document> concatenatedDocs = DocumentDeduplicator.distinct(multiChannelResults);
 
         StringBuilder docsContent = new StringBuilder();
         for (int i = 0; i < concatenatedDocs.size(); i++) {
@@ -96,7 +130,8 @@ public class DocumentJoinController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(concatenatedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/join/concatenation"))
                 .call()
                 .content();
 
@@ -120,6 +155,21 @@ public class DocumentJoinController {
                 """, query, queryVariants.size(), docsContent, response);
     }
 
+    /**
+     * 文档拼接连接流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/concatenation/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> concatenationJoinStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query) {
+        return ragStreamer.stream(query, "/rag/join/concatenation", () -> DocumentDeduplicator.distinct(
+                generateQueryVariants(query).stream().map(vectorStore::similaritySearch).toList()));
+    }
+
     /**
      * 评分排序连接演示接口
      *
@@ -155,7 +205,8 @@ public class DocumentJoinController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(sortedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/join/score-sort"))
                 .call()
                 .content();
 
@@ -178,6 +229,23 @@ public class DocumentJoinController {
                 """, query, topK, docsContent, response);
     }
 
+    /**
+     * 评分排序连接流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @param topK 返回的文档数量
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/score-sort/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> scoreSortJoinStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
+            @RequestParam(defaultValue = "3") int topK) {
+        return ragStreamer.stream(query, "/rag/join/score-sort",
+                () -> sortByScore(vectorStore.similaritySearch(query), topK));
+    }
+
     /**
      * 加权融合连接演示接口
      *
@@ -187,7 +255,9 @@ public class DocumentJoinController {
      * 例如：
      * - 向量检索权重 0.7
      * - BM25 权重 0.3
-     * - 得分加权求和后选择 top-k
+     * - 各路按排名计算 RRF 得分 1 / (k + rank) 并乘以权重，求和后选择 top-k
+     *
+     * 按排名而不是原始得分融合：余弦相似度与 BM25 分数量纲不同，不能直接加权相加。
      *
      适用场景：
      * - 多路召回（向量检索 + 关键词检索）
@@ -204,17 +274,15 @@ public class DocumentJoinController {
             @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
             @RequestParam(defaultValue = "0.7") double vectorWeight,
             @RequestParam(defaultValue = "0.3") double bm25Weight) {
-        // 模拟多路召回结果
-        // 实际场景中，这可能是向量检索和 BM25 检索的结果
+        // 多路召回结果：向量检索 + BM25 关键词检索
         List<Document> vectorResults = vectorStore.similaritySearch(query);
 
-        // 模拟 BM25 检索结果（这里用向量检索结果模拟）
-        List<Document> bm25Results = vectorStore.similaritySearch(query);
+        // BM25 检索直接查询内存倒排索引，不需要调用嵌入模型
+        List<Document> bm25Results = keywordIndex.search(query, SearchRequest.DEFAULT_TOP_K);
 
-        // 使用加权融合方式合并（WeightedDocumentJoiner）
-        List<Document> fusedDocs = weightedFusion(
-                vectorResults, bm25Results,
-                vectorWeight, bm25Weight, 5);
+        // 加权 RRF 融合：各路按排名贡献 1 / (k + rank)，再乘以该路权重
+        List<Document> fusedDocs = documentJoiner.weightedReciprocalRankFusion(
+                List.of(vectorResults, bm25Results), new double[] {vectorWeight, bm25Weight}, 5);
 
         StringBuilder docsContent = new StringBuilder();
         for (int i = 0; i < fusedDocs.size(); i++) {
@@ -224,7 +292,8 @@ public class DocumentJoinController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(fusedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/join/weighted-fusion"))
                 .call()
                 .content();
 
@@ -235,7 +304,7 @@ public class DocumentJoinController {
                 向量检索权重: %.1f
                 BM25 权重: %.1f
 
-                合并策略: 多路召回得分加权求和，选择 top-5
+                合并策略: 加权 RRF（各路排名得分乘以权重后求和），选择 top-5
 
                 加权融合后的文档列表:
                 %s
@@ -244,11 +313,33 @@ public class DocumentJoinController {
                 %s
 
                 说明: WeightedDocumentJoiner 根据不同数据源的权重进行加权融合，
-                      如向量检索权重 %.1f，BM25 权重 %.1f，得分加权求和后选择 top-k。
+                      如向量检索权重 %.1f，BM25 权重 %.1f，按排名加权求和后选择 top-k。
                       这种方式解决了"多样性"和"覆盖度"问题。
                 """, query, vectorWeight, bm25Weight, docsContent, response, vectorWeight, bm25Weight);
     }
 
+    /**
+     * 加权融合连接流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @param vectorWeight 向量检索权重
+     * @param bm25Weight BM25 权重
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/weighted-fusion/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> weightedFusionJoinStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
+            @RequestParam(defaultValue = "0.7") double vectorWeight,
+            @RequestParam(defaultValue = "0.3") double bm25Weight) {
+        return ragStreamer.stream(query, "/rag/join/weighted-fusion",
+                () -> documentJoiner.weightedReciprocalRankFusion(
+                        List.of(vectorStore.similaritySearch(query),
+                                keywordIndex.search(query, SearchRequest.DEFAULT_TOP_K)),
+                        new double[] {vectorWeight, bm25Weight}, 5));
+    }
+
     /**
      * 多路召回融合完整演示接口
      *
@@ -262,42 +353,33 @@ public class DocumentJoinController {
      */
     @GetMapping("/multi-channel-fusion")
     public String multiChannelFusion(@RequestParam(defaultValue = "Spring AI 支持哪些功能？") String query) {
-        // 模拟多路召回
-        List<List<Document>> channelResults = new ArrayList<>();
-
-        // 通道1: 向量检索
-        List<Document> vectorDocs = vectorStore.similaritySearch(query);
-        channelResults.add(vectorDocs);
-
-        // 通道2: 另一个查询变体的检索
-        List<String> variants = generateQueryVariants(query);
-        for (int i = 1; i < Math.min(3, variants.size()); i++) {
-            List<Document> variantDocs = vectorStore.similaritySearch(variants.get(i));
-            channelResults.add(variantDocs);
-        }
+        // 多路召回：各通道并行执行，只合并按时返回的结果
+        List<ChannelResult> recallResults = recallExecutor.recall(recallChannels(query));
+        List<List<Document>> channelResults = ChannelResult.documentsOf(recallResults);
 
         // 统计信息
         int totalDocs = channelResults.stream().mapToInt(List::size).sum();
 
         // 多路融合
-        List<Document> fusedDocs = multiChannelFusion(channelResults, 5);
+        List<Document> fusedDocs = documentJoiner.reciprocalRankFusion(channelResults, 5);
 
         StringBuilder channelInfo = new StringBuilder();
-        channelInfo.append("通道1: 向量检索, 文档数: ").append(vectorDocs.size()).append("\n");
-        for (int i = 1; i < channelResults.size(); i++) {
-            channelInfo.append(String.format("通道%d: 查询变体检索, 文档数: %d\n",
-                    i + 1, channelResults.get(i).size()));
+        for (int i = 0; i < recallResults.size(); i++) {
+            ChannelResult result = recallResults.get(i);
+            channelInfo.append(String.format("通道%d: %s, 文档数: %d, 状态: %s, 耗时: %dms\n",
+                    i + 1, result.name(), result.documents().size(), result.status(), result.elapsedMillis()));
         }
 
         StringBuilder docsContent = new StringBuilder();
         for (int i = 0; i < fusedDocs.size(); i++) {
             Document doc = fusedDocs.get(i);
-            docsContent.append(String.format("%d. %s\n", i + 1, doc.getText()));
+            docsContent.append(String.format("%d. [RRF: %.4f] %s\n", i + 1, doc.getScore(), doc.getText()));
         }
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(fusedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/join/multi-channel-fusion"))
                 .call()
                 .content();
 
@@ -309,7 +391,7 @@ public class DocumentJoinController {
                 检索通道:
                 %s
 
-                融合策略: Reciprocal Rank Fusion (RRF) 或加权投票
+                融合策略: Reciprocal Rank Fusion (RRF)
 
                 总检索文档数: %d
                 融合后 top-5: %d
@@ -325,12 +407,47 @@ public class DocumentJoinController {
                 """, query, channelInfo, totalDocs, fusedDocs.size(), docsContent, response);
     }
 
+    /**
+     * 多路召回融合流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/multi-channel-fusion/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> multiChannelFusionStream(
+            @RequestParam(defaultValue = "Spring AI 支持哪些功能？") String query) {
+        return ragStreamer.stream(query, "/rag/join/multi-channel-fusion",
+                () -> documentJoiner.reciprocalRankFusion(
+                        ChannelResult.documentsOf(recallExecutor.recall(recallChannels(query))), 5));
+    }
+
+    /**
+     * 构建多路召回通道：原始查询的向量检索 + 最多两个查询变体的向量检索
+     */
+    private List<RecallChannel> recallChannels(String query) {
+        List<RecallChannel> channels = new ArrayList<>();
+
+        // 通道1: 向量检索
+        channels.add(RecallChannel.vector("向量检索", vectorStore, query));
+
+        // 通道2: 另一个查询变体的检索
+        List<String> variants = generateQueryVariants(query);
+        for (int i = 1; i < Math.min(3, variants.size()); i++) {
+            channels.add(RecallChannel.vector("查询变体检索", vectorStore, variants.get(i)));
+        }
+        return channels;
+    }
+
     /**
      * 生成查询变体
      */
     private List<String> generateQueryVariants(String query) {
-        String prompt = String.format("将以下查询扩展为3个不同的表述:\n%s", query);
-        String expansion = chatClient.prompt().user(prompt).call().content();
+        String expansion = queryTransformCache.getOrCompute("join-variants-v1", query, q -> {
+            String prompt = String.format("将以下查询扩展为3个不同的表述:\n%s", q);
+            return chatClient.prompt().user(prompt).call().content();
+        });
 
         List<String> variants = new ArrayList<>();
         variants.add(query);
@@ -343,25 +460,6 @@ public class DocumentJoinController {
         return variants;
     }
 
-    /**
-     * 拼接文档列表
-     */
-    private List<Document> concatenateDocuments(List<List<Document>> multiChannelResults) {
-        List<Document> result = new ArrayList<>();
-        Set<String> seenContents = new HashSet<>();
-
-        for (List<Document> channelDocs : multiChannelResults) {
-            for (Document doc : channelDocs) {
-                String content = doc.getText();
-                if (!seenContents.contains(content)) {
-                    seenContents.add(content);
-                    result.add(doc);
-                }
-            }
-        }
-        return result;
-    }
-
     /**
      * 按评分排序文档
      */
@@ -376,54 +474,6 @@ public class DocumentJoinController {
                 .toList();
     }
 
-    /**
-     * 加权融合多个检索结果
-     */
-    private List<Document> weightedFusion(
-            List<Document> vectorResults,
-            List<Document> bm25Results,
-            double vectorWeight,
-            double bm25Weight,
-            int topK) {
-        // 合并所有文档
-        Set<String> allContents = new HashSet<>();
-        List<DocumentWithWeight> weightedDocs = new ArrayList<>();
-
-        for (int i = 0; i < vectorResults.size(); i++) {
-            Document doc = vectorResults.get(i);
-            String content = doc.getText();
-            if (!allContents.contains(content)) {
-                allContents.add(content);
-                weightedDocs.add(new DocumentWithWeight(doc, vectorWeight * (1.0 - i * 0.1)));
-            }
-        }
-
-        for (int i = 0; i < bm25Results.size(); i++) {
-            Document doc = bm25Results.get(i);
-            String content = doc.getText();
-            if (!allContents.contains(content)) {
-                allContents.add(content);
-                weightedDocs.add(new DocumentWithWeight(doc, bm25Weight * (1.0 - i * 0.1)));
-            }
-        }
-
-        // 按权重排序
-        weightedDocs.sort((a, b) -> Double.compare(b.weight, a.weight));
-
-        return weightedDocs.stream()
-                .limit(topK)
-                .map(d -> d.document)
-                .toList();
-    }
-
-    /**
-     * 多通道融合（RRF 简化实现）
-     */
-    private List<Document> multiChannelFusion(List<List<Document>> channelResults, int topK) {
-        // 简单实现：合并去重后取前 topK
-        return concatenateDocuments(channelResults).stream().limit(topK).toList();
-    }
-
     /**
      * 提取文档评分
      */
@@ -434,9 +484,4 @@ public class DocumentJoinController {
         }
         return 0.0;
     }
-
-    /**
-     * 带权重的文档记录
-     */
-    private record DocumentWithWeight(Document document, double weight) {}
 }
@@ -0,0 +1,101 @@
+package dev.dong4j.ai.spring.controller;
+
+import dev.dong4j.ai.spring.ingest.IngestionJob;
+import dev.dong4j.ai.spring.ingest.IngestionPipeline;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 知识库批量导入控制器
+ *
+ * <p>以 NDJSON 格式批量导入语料，每行一条记录：
+ * <pre>
+ * {"id": "doc-1", "text": "文档内容", "metadata": {"source": "manual"}}
+ * </pre>
+ * {@code id} 和 {@code metadata} 可省略。请求体可以直接是 NDJSON（{@code application/x-ndjson}），
+ * 也可以通过 multipart 上传 NDJSON 文件（字段名 {@code file}）。
+ *
+ * <p>提交后立即返回任务 id，导入在后台按「解析 → 分块 → 批量嵌入写入」流水线执行，
+ * 通过任务 id 查询进度；任务失败或服务重启后可以续传。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@RestController
+@RequestMapping("/rag/ingest")
+public class IngestionController {
+
+    private final IngestionPipeline ingestionPipeline;
+
+    /**
+     * 构造函数
+     *
+     * @param ingestionPipeline 批量导入流水线
+     */
+    public IngestionController(IngestionPipeline ingestionPipeline) {
+        this.ingestionPipeline = ingestionPipeline;
+    }
+
+    /**
+     * 提交 NDJSON 请求体作为导入任务
+     *
+     * @param body NDJSON 请求体
+     * @return 任务初始进度
+     * @throws IOException 请求体落盘失败
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<IngestionJob.Progress> ingest(InputStream body) throws IOException {
+        return ResponseEntity.accepted().body(ingestionPipeline.submit(body));
+    }
+
+    /**
+     * 上传 NDJSON 文件作为导入任务
+     *
+     * @param file NDJSON 文件
+     * @return 任务初始进度
+     * @throws IOException 文件落盘失败
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<IngestionJob.Progress> ingestFile(@RequestParam("file") MultipartFile file)
+            throws IOException {
+        try (InputStream source = file.getInputStream()) {
+            return ResponseEntity.accepted().body(ingestionPipeline.submit(source));
+        }
+    }
+
+    /**
+     * 查询导入进度
+     *
+     * @param jobId 任务 id
+     * @return 任务进度
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<IngestionJob.Progress> progress(@PathVariable String jobId) {
+        return ResponseEntity.of(ingestionPipeline.progress(jobId));
+    }
+
+    /**
+     * 从检查点续传导入任务
+     *
+     * @param jobId 任务 id
+     * @return 任务进度
+     */
+    @PostMapping("/{jobId}/resume")
+    public ResponseEntity<IngestionJob.Progress> resume(@PathVariable String jobId) {
+        return ResponseEntity.of(ingestionPipeline.resume(jobId));
+    }
+}
@@ -1,15 +1,25 @@
 package dev.dong4j.ai.spring.controller;
 
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.stream.RagStreamer;
+
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * Naive RAG 控制器
@@ -40,16 +50,19 @@ public class NaiveRagController {
 
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final RagStreamer ragStreamer;
 
     /**
      * 构造函数，注入聊天客户端和向量存储
      *
      * @param chatClient 聊天客户端，用于与 AI 模型交互
      * @param vectorStore 向量存储，用于检索相似文档
+     * @param ragStreamer RAG 流式响应构建器
      */
-    public NaiveRagController(ChatClient chatClient, VectorStore vectorStore) {
+    public NaiveRagController(ChatClient chatClient, VectorStore vectorStore, RagStreamer ragStreamer) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
+        this.ragStreamer = ragStreamer;
     }
 
     /**
@@ -73,8 +86,9 @@ public class NaiveRagController {
         String response = chatClient.prompt()
                 // 设置用户查询
                 .user(query)
-                // 启用 RAG 检索增强，从向量存储中检索相关文档
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                // 启用 RAG 检索增强，生成前从向量存储中检索相关文档并拼入提示词
+                .advisors(RetrievalContext.lazy(() -> vectorStore.similaritySearch(query)))
+                .advisors(SemanticCacheAdvisor.scope("/rag/naive/query"))
                 .call()
                 .content();
 
@@ -88,28 +102,61 @@ public class NaiveRagController {
                 """, query, response);
     }
 
+    /**
+     * 基础 RAG 流式查询接口
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询问题
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/query/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> naiveRagQueryStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query) {
+        return ragStreamer.stream(query, "/rag/naive/query", () -> vectorStore.similaritySearch(query));
+    }
+
     /**
      * 添加文档到知识库接口
      *
      * <p>用于向向量存储中添加文档，构建知识库。
      * 在实际应用中，这些文档可以是产品手册、技术文档、FAQ 等。
      *
+     * <p>按 id 写入：id 已存在时替换旧文档。未指定 id 时由内容生成，重复添加同一内容不会产生重复文档。
+     *
      * @param content 文档内容
      * @param metadata 文档元数据（如标题、来源等）
+     * @param id 文档 id，为空时由内容生成
      * @return 添加结果
+     * @deprecated 只适合演示单条文档，批量导入请使用 {@link IngestionController}（{@code POST /rag/ingest}）
      */
+    @Deprecated
     @GetMapping("/add-document")
     public String addDocument(
             @RequestParam String content,
-            @RequestParam(defaultValue = "default") String metadata) {
+            @RequestParam(defaultValue = "default") String metadata,
+            @RequestParam(required = false) String id) {
         Document document = Document.builder()
+                .id(id != null ? id : contentId(content))
                 .text(content)
                 .metadata(Map.of("source", metadata))
                 .build();
 
         vectorStore.add(List.of(document));
 
-        return String.format("文档添加成功！内容: %s", content);
+        return String.format("文档添加成功！id: %s，内容: %s", document.getId(), content);
+    }
+
+    /**
+     * 从知识库删除文档接口
+     *
+     * @param id 文档 id
+     * @return 删除结果
+     */
+    @DeleteMapping("/document")
+    public String deleteDocument(@RequestParam String id) {
+        vectorStore.delete(List.of(id));
+        return String.format("文档已删除: %s", id);
     }
 
     /**
@@ -119,7 +166,9 @@ public class NaiveRagController {
      * 这些文档涵盖 Spring AI 的不同特性。
      *
      * @return 添加结果
+     * @deprecated 只适合演示，批量导入请使用 {@link IngestionController}（{@code POST /rag/ingest}）
      */
+    @Deprecated
     @GetMapping("/add-sample-documents")
     public String addSampleDocuments() {
         List<Document> documents = List.of(
@@ -160,8 +209,13 @@ public class NaiveRagController {
                         .build()
         );
 
-        vectorStore.add(documents);
+        // 按内容生成 id，重复调用只会替换而不会重复添加
+        vectorStore.add(documents.stream().map(doc -> doc.mutate().id(contentId(doc.getText())).build()).toList());
 
         return String.format("已添加 %d 个示例文档到知识库", documents.size());
     }
+
+    private static String contentId(String content) {
+        return UUID.nameUUIDFromBytes(content.getBytes(StandardCharsets.UTF_8)).toString();
+    }
 }
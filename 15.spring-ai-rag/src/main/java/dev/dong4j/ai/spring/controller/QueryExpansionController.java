@@ -1,17 +1,25 @@
 package dev.dong4j.ai.spring.controller;
 
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.cache.QueryTransformCache;
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+import dev.dong4j.ai.spring.retrieval.DocumentJoiner;
+import dev.dong4j.ai.spring.stream.RagStreamer;
+
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * 查询扩展示控制器
@@ -42,16 +50,29 @@ public class QueryExpansionController {
 
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final DocumentJoiner documentJoiner;
+    private final QueryTransformCache queryTransformCache;
+    private final RagStreamer ragStreamer;
 
     /**
      * 构造函数，注入相关组件
      *
      * @param chatClient 聊天客户端
      * @param vectorStore 向量存储
+     * @param documentJoiner 多路召回结果融合器
+     * @param queryTransformCache 查询转换结果缓存
+     * @param ragStreamer RAG 流式响应构建器
      */
-    public QueryExpansionController(ChatClient chatClient, VectorStore vectorStore) {
+    public QueryExpansionController(ChatClient chatClient,
+                                    VectorStore vectorStore,
+                                    DocumentJoiner documentJoiner,
+                                    QueryTransformCache queryTransformCache,
+                                    RagStreamer ragStreamer) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
+        this.documentJoiner = documentJoiner;
+        this.queryTransformCache = queryTransformCache;
+        this.ragStreamer = ragStreamer;
     }
 
     /**
@@ -78,14 +99,10 @@ public class QueryExpansionController {
         List<String> expandedQueries = expandQuery(query);
 
         // 并行执行多个查询检索
-        List<List<Document>> allRetrievedDocs = new ArrayList<>();
-        for (String expandedQuery : expandedQueries) {
-            List<Document> docs = vectorStore.similaritySearch(expandedQuery);
-            allRetrievedDocs.add(docs);
-        }
+        List<List<Document>> allRetrievedDocs = searchAll(expandedQueries);
 
         // 合并所有检索结果
-        List<Document> mergedDocs = mergeDocuments(allRetrievedDocs);
+        List<Document> mergedDocs = DocumentDeduplicator.distinct(allRetrievedDocs);
 
         StringBuilder expandedQueryStr = new StringBuilder();
         for (int i = 0; i < expandedQueries.size(); i++) {
@@ -99,7 +116,8 @@ public class QueryExpansionController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(mergedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/expansion/multi-query"))
                 .call()
                 .content();
 
@@ -122,6 +140,21 @@ public class QueryExpansionController {
                 """, query, expandedQueryStr, retrievedContent, response);
     }
 
+    /**
+     * 多查询扩展流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户原始查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/multi-query/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> multiQueryExpansionStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query) {
+        return ragStreamer.stream(query, "/rag/expansion/multi-query",
+                () -> DocumentDeduplicator.distinct(searchAll(expandQuery(query))));
+    }
+
     /**
      * 相关查询生成演示接口
      *
@@ -145,14 +178,10 @@ public class QueryExpansionController {
         allQueries.addAll(relatedQueries);
 
         // 执行多查询检索
-        List<List<Document>> allRetrievedDocs = new ArrayList<>();
-        for (String q : allQueries) {
-            List<Document> docs = vectorStore.similaritySearch(q);
-            allRetrievedDocs.add(docs);
-        }
+        List<List<Document>> allRetrievedDocs = searchAll(allQueries);
 
         // 合并去重后的文档
-        List<Document> mergedDocs = mergeDocuments(allRetrievedDocs);
+        List<Document> mergedDocs = DocumentDeduplicator.distinct(allRetrievedDocs);
 
         StringBuilder relatedQueryStr = new StringBuilder();
         for (String q : relatedQueries) {
@@ -166,7 +195,8 @@ public class QueryExpansionController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(mergedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/expansion/related-query"))
                 .call()
                 .content();
 
@@ -189,6 +219,25 @@ public class QueryExpansionController {
                 """, query, relatedQueryStr, retrievedContent, response);
     }
 
+    /**
+     * 相关查询生成流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/related-query/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> relatedQueryGenerationStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query) {
+        return ragStreamer.stream(query, "/rag/expansion/related-query", () -> {
+            List<String> allQueries = new ArrayList<>();
+            allQueries.add(query);
+            allQueries.addAll(generateRelatedQueries(query));
+            return DocumentDeduplicator.distinct(searchAll(allQueries));
+        });
+    }
+
     /**
      * 查询扩展与融合检索演示接口
      *
@@ -207,14 +256,10 @@ public class QueryExpansionController {
         List<String> expandedQueries = expandQuery(query);
 
         // 步骤2: 多查询并行检索
-        List<List<Document>> allRetrievedDocs = new ArrayList<>();
-        for (String expandedQuery : expandedQueries) {
-            List<Document> docs = vectorStore.similaritySearch(expandedQuery);
-            allRetrievedDocs.add(docs);
-        }
+        List<List<Document>> allRetrievedDocs = searchAll(expandedQueries);
 
         // 步骤3: 结果融合
-        List<Document> fusedDocs = fuseResults(allRetrievedDocs);
+        List<Document> fusedDocs = documentJoiner.reciprocalRankFusion(allRetrievedDocs, 5);
 
         // 统计信息
         int totalRetrieved = allRetrievedDocs.stream().mapToInt(List::size).sum();
@@ -227,7 +272,8 @@ public class QueryExpansionController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(fusedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/expansion/expand-and-fusion"))
                 .call()
                 .content();
 
@@ -241,7 +287,7 @@ public class QueryExpansionController {
 
                 检索统计:
                 - 总检索文档数: %d
-                - 融合去重后: %d
+                - RRF 融合后 top-5: %d
 
                 AI 回复:
                 %s
@@ -252,6 +298,35 @@ public class QueryExpansionController {
                 """, query, expandedQueries.size(), expandedQueryStr, totalRetrieved, uniqueDocs, response);
     }
 
+    /**
+     * 查询扩展与融合检索流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/expand-and-fusion/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> expandAndFusionStream(
+            @RequestParam(defaultValue = "Spring AI 支持哪些功能？") String query) {
+        return ragStreamer.stream(query, "/rag/expansion/expand-and-fusion",
+                () -> documentJoiner.reciprocalRankFusion(searchAll(expandQuery(query)), 5));
+    }
+
+    /**
+     * 逐个检索查询列表，返回各查询的检索结果
+     *
+     * @param queries 查询列表
+     * @return 与查询一一对应的检索结果
+     */
+    private List<List<Document>> searchAll(List<String> queries) {
+        List<List<Document>> results = new ArrayList<>();
+        for (String q : queries) {
+            results.add(vectorStore.similaritySearch(q));
+        }
+        return results;
+    }
+
     /**
      * 扩展单个查询为多个查询变体
      *
@@ -261,23 +336,25 @@ public class QueryExpansionController {
      * @return 扩展后的查询列表
      */
     private List<String> expandQuery(String originalQuery) {
-        // 使用 LLM 生成查询变体
-        String expansionPrompt = String.format("""
-            将以下查询扩展为3个不同的查询变体，每个变体关注查询的不同方面。
-            原始查询: %s
+        // 使用 LLM 生成查询变体，相同查询直接复用缓存结果
+        String expansion = queryTransformCache.getOrCompute("expansion-v1", originalQuery, q -> {
+            String expansionPrompt = String.format("""
+                将以下查询扩展为3个不同的查询变体，每个变体关注查询的不同方面。
+                原始查询: %s
 
-            要求：
-            1. 每个变体应该用不同的关键词或角度表达相同的查询意图
-            2. 变体应该覆盖查询的不同方面
-            3. 输出格式：每个变体一行，不要添加编号
+                要求：
+                1. 每个变体应该用不同的关键词或角度表达相同的查询意图
+                2. 变体应该覆盖查询的不同方面
+                3. 输出格式：每个变体一行，不要添加编号
 
-            扩展查询:
-            """, originalQuery);
+                扩展查询:
+                """, q);
 
-        String expansion = chatClient.prompt()
-                .user(expansionPrompt)
-                .call()
-                .content();
+            return chatClient.prompt()
+                    .user(expansionPrompt)
+                    .call()
+                    .content();
+        });
 
         // 解析扩展结果
         List<String> queries = new ArrayList<>();
@@ -306,17 +383,19 @@ public class QueryExpansionController {
      * @return 相关查询列表
      */
     private List<String> generateRelatedQueries(String query) {
-        String relatedPrompt = String.format("""
-            基于以下查询，生成2个相关的补充查询，这些查询应该扩展检索的范围。
-            原始查询: %s
+        String related = queryTransformCache.getOrCompute("related-v1", query, q -> {
+            String relatedPrompt = String.format("""
+                基于以下查询，生成2个相关的补充查询，这些查询应该扩展检索的范围。
+                原始查询: %s
 
-            相关查询:
-            """, query);
+                相关查询:
+                """, q);
 
-        String related = chatClient.prompt()
-                .user(relatedPrompt)
-                .call()
-                .content();
+            return chatClient.prompt()
+                    .user(relatedPrompt)
+                    .call()
+                    .content();
+        });
 
         List<String> queries = new ArrayList<>();
         for (String line : related.split("\\n")) {
@@ -328,39 +407,4 @@ public class QueryExpansionController {
 
         return queries;
     }
-
-    /**
-     * 合并多个检索结果列表（去重）
-     *
-     * @param retrievedDocsLists 多个检索结果列表
-     * @return 合并去重后的文档列表
-     */
-    private List<Document> mergeDocuments(List<List<Document>> retrievedDocsLists) {
-        List<Document> merged = new ArrayList<>();
-        Set<String> seenContents = new HashSet<>();
-
-        for (List<Document> docs : retrievedDocsLists) {
-            for (Document doc : docs) {
-                String content = doc.getText();
-                if (!seenContents.contains(content)) {
-                    seenContents.add(content);
-                    merged.add(doc);
-                }
-            }
-        }
-        return merged;
-    }
-
-    /**
-     * 使用加权融合算法合并检索结果
-     *
-     * <p>多路召回与融合的另一种实现方式，根据不同查询来源的权重进行加权。
-     *
-     * @param retrievedDocsLists 多个检索结果列表
-     * @return 融合后的文档列表
-     */
-    private List<Document> fuseResults(List<List<Document>> retrievedDocsLists) {
-        // 简单实现：合并去重
-        return mergeDocuments(retrievedDocsLists);
-    }
 }
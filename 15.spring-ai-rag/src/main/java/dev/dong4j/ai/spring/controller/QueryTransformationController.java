@@ -1,14 +1,26 @@
 package dev.dong4j.ai.spring.controller;
 
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.cache.QueryTransformCache;
+import dev.dong4j.ai.spring.decomposition.DecompositionExecutor;
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+import dev.dong4j.ai.spring.retrieval.SpeculativeRetriever;
+import dev.dong4j.ai.spring.stream.RagStreamer;
+
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * 查询转换控制器
@@ -39,16 +51,33 @@ public class QueryTransformationController {
 
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final QueryTransformCache queryTransformCache;
+    private final RagStreamer ragStreamer;
+    private final SpeculativeRetriever speculativeRetriever;
+    private final DecompositionExecutor decompositionExecutor;
 
     /**
      * 构造函数，注入相关组件
      *
      * @param chatClient 聊天客户端
      * @param vectorStore 向量存储
+     * @param queryTransformCache 查询转换结果缓存
+     * @param ragStreamer RAG 流式响应构建器
+     * @param speculativeRetriever 推测检索器
+     * @param decompositionExecutor 查询分解执行器
      */
-    public QueryTransformationController(ChatClient chatClient, VectorStore vectorStore) {
+    public QueryTransformationController(ChatClient chatClient,
+                                         VectorStore vectorStore,
+                                         QueryTransformCache queryTransformCache,
+                                         RagStreamer ragStreamer,
+                                         SpeculativeRetriever speculativeRetriever,
+                                         DecompositionExecutor decompositionExecutor) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
+        this.queryTransformCache = queryTransformCache;
+        this.ragStreamer = ragStreamer;
+        this.speculativeRetriever = speculativeRetriever;
+        this.decompositionExecutor = decompositionExecutor;
     }
 
     /**
@@ -69,24 +98,13 @@ public class QueryTransformationController {
      */
     @GetMapping("/rewrite")
     public String rewriteQuery(@RequestParam(defaultValue = "给我讲讲那个什么 Spring AI 的事儿") String query) {
-        // 使用 LLM 进行查询重写
-        String rewritePrompt = String.format("""
-            将以下口语化的用户查询转换为清晰、专业的检索语句。
-            保留查询的核心意图，但去除口语化表达，生成更适合向量检索的查询。
-
-            原始查询: %s
-
-            重写后的查询:
-            """, query);
-
-        String transformedQuery = chatClient.prompt()
-                .user(rewritePrompt)
-                .call()
-                .content();
+        // 使用 LLM 进行查询重写，相同查询直接复用缓存结果
+        String transformedQuery = rewrite(query);
 
         String response = chatClient.prompt()
                 .user(transformedQuery)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.lazy(() -> vectorStore.similaritySearch(transformedQuery)))
+                .advisors(SemanticCacheAdvisor.scope("/rag/transformation/rewrite"))
                 .call()
                 .content();
 
@@ -104,6 +122,21 @@ public class QueryTransformationController {
                 """, query, transformedQuery, response);
     }
 
+    /**
+     * 查询重写流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户原始查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/rewrite/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> rewriteQueryStream(
+            @RequestParam(defaultValue = "给我讲讲那个什么 Spring AI 的事儿") String query) {
+        return ragStreamer.stream(query, "/rag/transformation/rewrite",
+                () -> vectorStore.similaritySearch(rewrite(query)));
+    }
+
     /**
      * 查询分解演示接口
      *
@@ -119,48 +152,34 @@ public class QueryTransformationController {
      * - 检索结果更加精准
      * - 最终综合多个子查询结果形成完整回答
      *
+     * 各子查询由 {@link DecompositionExecutor} 在并发上限内并行检索、回答，最后一次调用综合。
+     *
      * @param query 用户复杂查询
      * @return 分解后的子查询和综合回答
      */
     @GetMapping("/decompose")
     public String decomposeQuery(@RequestParam(defaultValue = "Spring AI 和传统 Spring 框架有什么关系？它有哪些核心特性？") String query) {
-        // 使用 LLM 进行查询分解
-        String decomposePrompt = String.format("""
-            将以下复杂查询分解为多个简单的子查询。
-            每个子查询应该能够独立回答，然后综合形成完整答案。
-
-            原始查询: %s
-
-            子查询列表（每行一个）:
-            """, query);
-
-        String decomposedQueries = chatClient.prompt()
-                .user(decomposePrompt)
-                .call()
-                .content();
+        // 使用 LLM 进行查询分解，相同查询直接复用缓存结果
+        String decomposedQueries = decompose(query);
 
         // 解析子查询
-        List<String> subQueries = List.of(decomposedQueries.split("\\n"));
+        List<String> subQueries = DecompositionExecutor.parseSubQueries(decomposedQueries);
+
+        // 各子查询并行检索并回答，再综合为最终回答
+        DecompositionExecutor.Result result =
+                decompositionExecutor.execute(query, subQueries, "/rag/transformation/decompose");
 
-        // 分别检索每个子查询的结果
         StringBuilder subResults = new StringBuilder();
-        for (String subQuery : subQueries) {
-            if (!subQuery.trim().isEmpty() && !subQuery.contains("子查询")) {
-                List<Document> docs = vectorStore.similaritySearch(subQuery.trim());
-                subResults.append("\n子查询: ").append(subQuery.trim());
-                subResults.append("\n检索结果: ");
-                for (Document doc : docs) {
-                    subResults.append("- ").append(doc.getText()).append("\n");
-                }
+        for (DecompositionExecutor.SubAnswer subAnswer : result.subAnswers()) {
+            subResults.append("\n子查询: ").append(subAnswer.subQuery())
+                    .append(String.format(" [%s, %dms]", subAnswer.status(), subAnswer.elapsedMillis()));
+            subResults.append("\n检索结果: ");
+            for (Document doc : subAnswer.documents()) {
+                subResults.append("- ").append(doc.getText()).append("\n");
             }
+            subResults.append("\n子查询回答: ").append(subAnswer.answer()).append("\n");
         }
 
-        String response = chatClient.prompt()
-                .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
-                .call()
-                .content();
-
         return String.format("""
                 === Query Decomposition（查询分解） ===
 
@@ -169,15 +188,33 @@ public class QueryTransformationController {
                 分解后的子查询:
                 %s
 
-                子查询检索结果:
+                子查询检索与回答:
                 %s
 
                 AI 综合回复:
                 %s
 
                 说明: 查询分解将复杂问题拆分为多个子查询，
-                         每个子查询独立检索后综合结果。
-                """, query, decomposedQueries, subResults, response);
+                         各子查询并行检索、回答后综合结果，耗时取决于最慢的子查询。
+                """, query, decomposedQueries, subResults, result.answer());
+    }
+
+    /**
+     * 查询分解流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户复杂查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/decompose/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> decomposeQueryStream(
+            @RequestParam(defaultValue = "Spring AI 和传统 Spring 框架有什么关系？它有哪些核心特性？") String query) {
+        return ragStreamer.stream(query, "/rag/transformation/decompose",
+                () -> DocumentDeduplicator.distinct(
+                        DecompositionExecutor.parseSubQueries(decompose(query)).stream()
+                                .map(vectorStore::similaritySearch)
+                                .toList()));
     }
 
     /**
@@ -189,26 +226,23 @@ public class QueryTransformationController {
      * 3. 使用转换后的查询进行向量检索
      * 4. 将检索结果提供给 LLM 生成最终回答
      *
+     * <p>推测模式下步骤 2、3 并行：转换的同时用原始查询检索，
+     * 转换结果与原始查询足够接近时直接复用检索结果，否则用转换后的查询重新检索。
+     *
      * @param query 用户查询
      * @param transformType 转换类型：rewrite（重写）或 decompose（分解）
+     * @param speculative 是否启用推测检索
      * @return 处理结果
      */
     @GetMapping("/transform-and-retrieve")
     public String transformAndRetrieve(
             @RequestParam(defaultValue = "Spring AI 支持哪些嵌入模型？") String query,
-            @RequestParam(defaultValue = "rewrite") String transformType) {
-
-        String transformedQuery;
-        if ("rewrite".equals(transformType)) {
-            String rewritePrompt = String.format("将以下查询转换为标准检索语句: %s", query);
-            transformedQuery = chatClient.prompt().user(rewritePrompt).call().content();
-        } else {
-            String decomposePrompt = String.format("将以下查询分解为子查询: %s", query);
-            transformedQuery = chatClient.prompt().user(decomposePrompt).call().content();
-        }
+            @RequestParam(defaultValue = "rewrite") String transformType,
+            @RequestParam(defaultValue = "true") boolean speculative) {
 
         // 使用转换后的查询进行检索
-        List<Document> retrievedDocs = vectorStore.similaritySearch(transformedQuery);
+        SpeculativeRetriever.Result retrieval = transformAndSearch(query, transformType, speculative);
+        List<Document> retrievedDocs = retrieval.documents();
 
         StringBuilder retrievedContent = new StringBuilder();
         for (Document doc : retrievedDocs) {
@@ -217,7 +251,8 @@ public class QueryTransformationController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(retrievedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/transformation/transform-and-retrieve"))
                 .call()
                 .content();
 
@@ -227,12 +262,115 @@ public class QueryTransformationController {
                 转换类型: %s
                 原始查询: %s
                 转换后查询: %s
+                检索方式: %s
 
                 检索到的文档:
                 %s
 
                 AI 回复:
                 %s
-                """, transformType, query, transformedQuery, retrievedContent, response);
+                """, transformType, query, retrieval.rewrittenQuery(), retrieval.describe(), retrievedContent, response);
+    }
+
+    /**
+     * 查询转换与检索流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @param transformType 转换类型：rewrite（重写）或 decompose（分解）
+     * @param speculative 是否启用推测检索
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/transform-and-retrieve/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> transformAndRetrieveStream(
+            @RequestParam(defaultValue = "Spring AI 支持哪些嵌入模型？") String query,
+            @RequestParam(defaultValue = "rewrite") String transformType,
+            @RequestParam(defaultValue = "true") boolean speculative) {
+        return ragStreamer.stream(query, "/rag/transformation/transform-and-retrieve",
+                () -> transformAndSearch(query, transformType, speculative).documents());
+    }
+
+    /**
+     * 使用 LLM 将口语化查询重写为检索语句，相同查询直接复用缓存结果
+     *
+     * @param query 用户原始查询
+     * @return 重写后的查询
+     */
+    private String rewrite(String query) {
+        return queryTransformCache.getOrCompute("rewrite-v1", query, q -> {
+            String rewritePrompt = String.format("""
+                将以下口语化的用户查询转换为清晰、专业的检索语句。
+                保留查询的核心意图，但去除口语化表达，生成更适合向量检索的查询。
+
+                原始查询: %s
+
+                重写后的查询:
+                """, q);
+
+            return chatClient.prompt()
+                    .user(rewritePrompt)
+                    .call()
+                    .content();
+        });
+    }
+
+    /**
+     * 使用 LLM 将复杂查询分解为子查询，相同查询直接复用缓存结果
+     *
+     * @param query 用户复杂查询
+     * @return 分解结果，每行一个子查询
+     */
+    private String decompose(String query) {
+        return queryTransformCache.getOrCompute("decompose-v1", query, q -> {
+            String decomposePrompt = String.format("""
+                将以下复杂查询分解为多个简单的子查询。
+                每个子查询应该能够独立回答，然后综合形成完整答案。
+
+                原始查询: %s
+
+                子查询列表（每行一个）:
+                """, q);
+
+            return chatClient.prompt()
+                    .user(decomposePrompt)
+                    .call()
+                    .content();
+        });
+    }
+
+    /**
+     * 转换查询并检索，推测模式下转换与原始查询的检索并行执行
+     *
+     * @param query 用户查询
+     * @param transformType 转换类型：rewrite（重写）或 decompose（分解）
+     * @param speculative 是否启用推测检索
+     * @return 转换后的查询与检索结果
+     */
+    private SpeculativeRetriever.Result transformAndSearch(String query, String transformType, boolean speculative) {
+        Function<String, String> transformer = q -> transform(q, transformType);
+        return speculative
+                ? speculativeRetriever.retrieve(query, transformer, vectorStore::similaritySearch)
+                : SpeculativeRetriever.sequential(query, transformer, vectorStore::similaritySearch);
+    }
+
+    /**
+     * 按转换类型转换查询
+     *
+     * @param query 用户查询
+     * @param transformType 转换类型：rewrite（重写）或 decompose（分解）
+     * @return 转换后的查询
+     */
+    private String transform(String query, String transformType) {
+        if ("rewrite".equals(transformType)) {
+            return queryTransformCache.getOrCompute("short-rewrite-v1", query, q -> {
+                String rewritePrompt = String.format("将以下查询转换为标准检索语句: %s", q);
+                return chatClient.prompt().user(rewritePrompt).call().content();
+            });
+        }
+        return queryTransformCache.getOrCompute("short-decompose-v1", query, q -> {
+            String decomposePrompt = String.format("将以下查询分解为子查询: %s", q);
+            return chatClient.prompt().user(decomposePrompt).call().content();
+        });
     }
 }
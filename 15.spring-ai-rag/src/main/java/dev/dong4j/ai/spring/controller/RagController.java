@@ -1,13 +1,26 @@
 package dev.dong4j.ai.spring.controller;
 
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.decomposition.DecompositionExecutor;
+import dev.dong4j.ai.spring.rerank.CascadeReranker;
+import dev.dong4j.ai.spring.retrieval.Bm25Index;
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+import dev.dong4j.ai.spring.retrieval.DocumentJoiner;
+import dev.dong4j.ai.spring.retrieval.SpeculativeRetriever;
+import dev.dong4j.ai.spring.stream.RagStreamer;
+
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.List;
 
@@ -59,16 +72,41 @@ public class RagController {
 
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final Bm25Index keywordIndex;
+    private final RagStreamer ragStreamer;
+    private final SpeculativeRetriever speculativeRetriever;
+    private final DecompositionExecutor decompositionExecutor;
+    private final DocumentJoiner documentJoiner;
+    private final CascadeReranker cascadeReranker;
 
     /**
      * 构造函数
      *
      * @param chatClient 聊天客户端
      * @param vectorStore 向量存储
+     * @param keywordIndex BM25 关键词索引
+     * @param ragStreamer RAG 流式响应构建器
+     * @param speculativeRetriever 推测检索器
+     * @param decompositionExecutor 查询分解执行器
+     * @param documentJoiner 多路召回结果融合器
+     * @param cascadeReranker 级联重排器
      */
-    public RagController(ChatClient chatClient, VectorStore vectorStore) {
+    public RagController(ChatClient chatClient,
+                         VectorStore vectorStore,
+                         Bm25Index keywordIndex,
+                         RagStreamer ragStreamer,
+                         SpeculativeRetriever speculativeRetriever,
+                         DecompositionExecutor decompositionExecutor,
+                         DocumentJoiner documentJoiner,
+                         CascadeReranker cascadeReranker) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
+        this.keywordIndex = keywordIndex;
+        this.ragStreamer = ragStreamer;
+        this.speculativeRetriever = speculativeRetriever;
+        this.decompositionExecutor = decompositionExecutor;
+        this.documentJoiner = documentJoiner;
+        this.cascadeReranker = cascadeReranker;
     }
 
     /**
@@ -95,7 +133,8 @@ public class RagController {
         // Naive RAG 流程：直接使用向量检索 + 上下文拼接
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.lazy(() -> vectorStore.similaritySearch(query)))
+                .advisors(SemanticCacheAdvisor.scope("/rag/naive"))
                 .call()
                 .content();
 
@@ -114,6 +153,20 @@ public class RagController {
                 """, query, response);
     }
 
+    /**
+     * Naive RAG 流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/naive/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> naiveRagStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query) {
+        return ragStreamer.stream(query, "/rag/naive", () -> vectorStore.similaritySearch(query));
+    }
+
     /**
      * 高级 RAG - 查询重写演示
      *
@@ -124,30 +177,24 @@ public class RagController {
      * - 原始查询："给我讲讲那个什么 Spring AI 的事儿"
      * - 重写后："Spring AI 的核心特性和功能"
      *
+     * <p>推测模式下，查询重写与原始查询的检索并行执行，重写结果与原始查询足够接近时直接复用检索结果，
+     * 重写延迟不再叠加在检索延迟之上。
+     *
      * @param query 用户原始查询
+     * @param speculative 是否启用推测检索
      * @return 重写后的查询和检索结果
      */
     @GetMapping("/query-rewrite")
-    public String queryRewrite(@RequestParam(defaultValue = "给我讲讲那个什么 Spring AI 的事儿") String query) {
-        // 使用 LLM 进行查询重写
-        String rewritePrompt = String.format("""
-            将以下口语化的用户查询转换为清晰、专业的检索语句。
-            保留查询的核心意图，但去除口语化表达，生成更适合向量检索的查询。
-
-            原始查询: %s
-
-            重写后的查询（只返回查询语句，不要其他内容）:
-            """, query);
-
-        String rewrittenQuery = chatClient.prompt()
-                .user(rewritePrompt)
-                .call()
-                .content();
+    public String queryRewrite(
+            @RequestParam(defaultValue = "给我讲讲那个什么 Spring AI 的事儿") String query,
+            @RequestParam(defaultValue = "true") boolean speculative) {
+        // 使用 LLM 进行查询重写，并使用重写后的查询进行检索
+        SpeculativeRetriever.Result retrieval = rewriteAndRetrieve(query, speculative);
 
-        // 使用重写后的查询进行检索
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(retrieval.documents()))
+                .advisors(SemanticCacheAdvisor.scope("/rag/query-rewrite"))
                 .call()
                 .content();
 
@@ -156,13 +203,31 @@ public class RagController {
 
                 原始查询: %s
                 重写后查询: %s
+                检索方式: %s
 
                 Spring AI 组件: RewriteQueryTransformer
                 RAG 概念: Query Rewriting - LLM 将口语化问题转为标准检索语句
 
                 AI 回复:
                 %s
-                """, query, rewrittenQuery, response);
+                """, query, retrieval.rewrittenQuery(), retrieval.describe(), response);
+    }
+
+    /**
+     * 查询重写流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @param speculative 是否启用推测检索
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/query-rewrite/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> queryRewriteStream(
+            @RequestParam(defaultValue = "给我讲讲那个什么 Spring AI 的事儿") String query,
+            @RequestParam(defaultValue = "true") boolean speculative) {
+        return ragStreamer.stream(query, "/rag/query-rewrite",
+                () -> rewriteAndRetrieve(query, speculative).documents());
     }
 
     /**
@@ -183,25 +248,17 @@ public class RagController {
     @GetMapping("/query-decompose")
     public String queryDecompose(@RequestParam(defaultValue = "Spring AI 和传统 Spring 框架有什么关系？它有哪些核心特性？") String query) {
         // 使用 LLM 进行查询分解
-        String decomposePrompt = String.format("""
-            将以下复杂查询分解为多个简单的子查询。
-            每个子查询应该能够独立回答，然后综合形成完整答案。
+        String decomposedQueries = decomposeQuery(query);
 
-            原始查询: %s
+        // 各子查询并行检索并回答，再综合为最终回答
+        DecompositionExecutor.Result result = decompositionExecutor.execute(
+                query, DecompositionExecutor.parseSubQueries(decomposedQueries), "/rag/query-decompose");
 
-            子查询列表（每行一个，只返回子查询）：
-            """, query);
-
-        String decomposedQueries = chatClient.prompt()
-                .user(decomposePrompt)
-                .call()
-                .content();
-
-        String response = chatClient.prompt()
-                .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
-                .call()
-                .content();
+        StringBuilder subAnswers = new StringBuilder();
+        for (DecompositionExecutor.SubAnswer subAnswer : result.subAnswers()) {
+            subAnswers.append(String.format("- %s [%s, %dms]\n  %s\n",
+                    subAnswer.subQuery(), subAnswer.status(), subAnswer.elapsedMillis(), subAnswer.answer()));
+        }
 
         return String.format("""
                 === Query Decomposition（查询分解） ===
@@ -211,12 +268,32 @@ public class RagController {
                 分解后的子查询:
                 %s
 
+                子查询回答:
+                %s
+
                 Spring AI 组件: QueryDecomposer（概念）
-                RAG 概念: Query Decomposition - 复杂问题拆解为多个子查询
+                RAG 概念: Query Decomposition - 复杂问题拆解为多个子查询，并行检索回答后综合
 
                 AI 回复:
                 %s
-                """, query, decomposedQueries, response);
+                """, query, decomposedQueries, subAnswers, result.answer());
+    }
+
+    /**
+     * 查询分解流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/query-decompose/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> queryDecomposeStream(
+            @RequestParam(defaultValue = "Spring AI 和传统 Spring 框架有什么关系？它有哪些核心特性？") String query) {
+        return ragStreamer.stream(query, "/rag/query-decompose", () -> DocumentDeduplicator.distinct(
+                DecompositionExecutor.parseSubQueries(decomposeQuery(query)).stream()
+                        .map(vectorStore::similaritySearch)
+                        .toList()));
     }
 
     /**
@@ -251,7 +328,8 @@ public class RagController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.lazy(() -> vectorStore.similaritySearch(query)))
+                .advisors(SemanticCacheAdvisor.scope("/rag/query-expand"))
                 .call()
                 .content();
 
@@ -271,6 +349,20 @@ public class RagController {
                 """, query, expandedQueries, response);
     }
 
+    /**
+     * 查询扩展流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/query-expand/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> queryExpandStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query) {
+        return ragStreamer.stream(query, "/rag/query-expand", () -> vectorStore.similaritySearch(query));
+    }
+
     /**
      * 高级 RAG - 多路召回与融合演示
      *
@@ -280,7 +372,7 @@ public class RagController {
      * <p>示例：
      * - 通道1: 向量检索（权重 0.7）
      * - 通道2: BM25 关键词检索（权重 0.3）
-     * - 融合: 得分加权求和
+     * - 融合: 加权 RRF，各路排名得分乘以权重后求和
      *
      * @param query 用户查询
      * @param vectorWeight 向量检索权重
@@ -292,30 +384,26 @@ public class RagController {
             @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
             @RequestParam(defaultValue = "0.7") double vectorWeight,
             @RequestParam(defaultValue = "0.3") double bm25Weight) {
-        // 模拟多路召回结果
+        // 多路召回结果
         // 通道1: 向量检索
-        List<Document> vectorResults = vectorStore.similaritySearch(
-                SearchRequest.builder().query(query).topK(5).build()
-        );
+        List<Document> vectorResults = vectorSearch(query, 5);
+
+        // 通道2: BM25 关键词检索，直接查询内存倒排索引，不需要调用嵌入模型
+        List<Document> bm25Results = keywordIndex.search(query, 5);
 
-        // 简单模拟 BM25 结果（实际应用中应使用真正的 BM25 检索）
-        List<Document> bm25Results = vectorStore.similaritySearch(
-                SearchRequest.builder().query(query).topK(5).build()
-        );
+        // 加权 RRF 融合：各路按排名贡献 1 / (k + rank)，再乘以该路权重
+        List<Document> fusedDocs = documentJoiner.weightedReciprocalRankFusion(
+                List.of(vectorResults, bm25Results), new double[] {vectorWeight, bm25Weight}, 5);
 
-        // 加权融合（简化实现）
         StringBuilder fusionResult = new StringBuilder();
-        int i = 1;
-        for (Document doc : vectorResults) {
-            fusionResult.append(String.format("%d. [向量检索] %s\n", i++, doc.getText()));
-        }
-        for (Document doc : bm25Results) {
-            fusionResult.append(String.format("%d. [BM25检索] %s\n", i++, doc.getText()));
+        for (int i = 0; i < fusedDocs.size(); i++) {
+            fusionResult.append(String.format("%d. %s\n", i + 1, fusedDocs.get(i).getText()));
         }
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(fusedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/multi-channel-fusion"))
                 .call()
                 .content();
 
@@ -339,6 +427,27 @@ public class RagController {
                 """, vectorWeight, bm25Weight, vectorWeight, bm25Weight, fusionResult, response);
     }
 
+    /**
+     * 多路召回与融合流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @param vectorWeight 向量检索权重
+     * @param bm25Weight BM25 权重
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/multi-channel-fusion/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> multiChannelFusionStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
+            @RequestParam(defaultValue = "0.7") double vectorWeight,
+            @RequestParam(defaultValue = "0.3") double bm25Weight) {
+        return ragStreamer.stream(query, "/rag/multi-channel-fusion",
+                () -> documentJoiner.weightedReciprocalRankFusion(
+                        List.of(vectorSearch(query, 5), keywordIndex.search(query, 5)),
+                        new double[] {vectorWeight, bm25Weight}, 5));
+    }
+
     /**
      * 高级 RAG - 重排演示
      *
@@ -358,28 +467,20 @@ public class RagController {
             @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
             @RequestParam(defaultValue = "5") int topK) {
         // 初步检索获取候选文档
-        List<Document> candidates = vectorStore.similaritySearch(
-                SearchRequest.builder().query(query).topK(10).build()
-        );
-
-        // 模拟重排（使用 LLM 进行相关性评分）
-        StringBuilder rerankPrompt = new StringBuilder();
-        rerankPrompt.append("请对以下文档与查询的相关性进行评分（0-1分），返回评分结果：\n");
-        rerankPrompt.append("查询: ").append(query).append("\n\n");
-        for (int i = 0; i < candidates.size(); i++) {
-            rerankPrompt.append(String.format("文档%d: %s\n", i + 1, candidates.get(i).getText()));
-        }
+        List<Document> candidates = vectorSearch(query, 10);
+
+        // 级联重排：廉价阶段区分不开时才使用 LLM 进行相关性评分
+        List<Document> rerankedDocs = cascadeReranker.rerank(query, candidates, topK);
 
-        // 获取重排结果（简化：直接使用相似度排序）
         StringBuilder rankedDocs = new StringBuilder();
-        for (int i = 0; i < Math.min(topK, candidates.size()); i++) {
-            Document doc = candidates.get(i);
-            rankedDocs.append(String.format("%d. %s\n", i + 1, doc.getText()));
+        for (int i = 0; i < rerankedDocs.size(); i++) {
+            rankedDocs.append(String.format("%d. %s\n", i + 1, rerankedDocs.get(i).getText()));
         }
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(rerankedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/rerank"))
                 .call()
                 .content();
 
@@ -388,13 +489,13 @@ public class RagController {
 
                 重排流程:
                 1. 多路召回获取 %d 个候选文档
-                2. 使用 Cross-Encoder 等模型进行精细打分
+                2. 级联重排（关键词覆盖率 → 向量分数 → LLM 评分）进行精细打分
                 3. 按评分排序，选择 top-%d
 
                 重排后的 Top-%d 文档:
                 %s
 
-                Spring AI 组件: CrossEncoderReranker（用于重排）
+                Spring AI 组件: CascadeReranker（廉价阶段区分不开时才调用 LLM 重排）
                 RAG 概念: 重排 - 用更强的模型做"精筛"，选出最相关的 top-K
 
                 AI 回复:
@@ -402,6 +503,23 @@ public class RagController {
                 """, candidates.size(), topK, topK, rankedDocs, response);
     }
 
+    /**
+     * 重排流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @param topK 返回的文档数量
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/rerank/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> rerankStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
+            @RequestParam(defaultValue = "5") int topK) {
+        return ragStreamer.stream(query, "/rag/rerank",
+                () -> cascadeReranker.rerank(query, vectorSearch(query, 10), topK));
+    }
+
     /**
      * 高级 RAG - 完整流程演示
      *
@@ -422,9 +540,7 @@ public class RagController {
         String expandedQueries = chatClient.prompt().user(expandPrompt).call().content();
 
         // 步骤2: 多路召回
-        List<Document> docs = vectorStore.similaritySearch(
-                SearchRequest.builder().query(query).topK(10).build()
-        );
+        List<Document> docs = vectorSearch(query, 10);
 
         // 步骤3: 结果融合（简化）
         // 步骤4: 重排精筛（简化：取 top-5）
@@ -438,7 +554,8 @@ public class RagController {
         // 步骤5: 生成回答
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(topDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/advanced"))
                 .call()
                 .content();
 
@@ -465,6 +582,21 @@ public class RagController {
                 """, query, expandedQueries, context, response);
     }
 
+    /**
+     * 高级 RAG 完整流程流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/advanced/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> advancedRagStream(
+            @RequestParam(defaultValue = "Spring AI 支持哪些功能？") String query) {
+        return ragStreamer.stream(query, "/rag/advanced",
+                () -> vectorSearch(query, 10).stream().limit(5).toList());
+    }
+
     /**
      * RAG 概念速查表
      *
@@ -520,4 +652,72 @@ public class RagController {
                 | RetrievalAugmentationAdvisor | 完整 RAG 管道 | 整合所有 RAG 组件 |
                 """);
     }
+
+    /**
+     * 使用 LLM 将口语化查询重写为检索语句
+     *
+     * @param query 用户原始查询
+     * @return 重写后的查询
+     */
+    private String rewriteQuery(String query) {
+        String rewritePrompt = String.format("""
+            将以下口语化的用户查询转换为清晰、专业的检索语句。
+            保留查询的核心意图，但去除口语化表达，生成更适合向量检索的查询。
+
+            原始查询: %s
+
+            重写后的查询（只返回查询语句，不要其他内容）:
+            """, query);
+
+        return chatClient.prompt()
+                .user(rewritePrompt)
+                .call()
+                .content();
+    }
+
+    /**
+     * 使用 LLM 将复杂查询分解为子查询
+     *
+     * @param query 用户复杂查询
+     * @return 分解结果，每行一个子查询
+     */
+    private String decomposeQuery(String query) {
+        String decomposePrompt = String.format("""
+            将以下复杂查询分解为多个简单的子查询。
+            每个子查询应该能够独立回答，然后综合形成完整答案。
+
+            原始查询: %s
+
+            子查询列表（每行一个，只返回子查询）：
+            """, query);
+
+        return chatClient.prompt()
+                .user(decomposePrompt)
+                .call()
+                .content();
+    }
+
+    /**
+     * 重写查询并检索，推测模式下重写与原始查询的检索并行执行
+     *
+     * @param query 用户原始查询
+     * @param speculative 是否启用推测检索
+     * @return 重写后的查询与检索结果
+     */
+    private SpeculativeRetriever.Result rewriteAndRetrieve(String query, boolean speculative) {
+        return speculative
+                ? speculativeRetriever.retrieve(query, this::rewriteQuery, vectorStore::similaritySearch)
+                : SpeculativeRetriever.sequential(query, this::rewriteQuery, vectorStore::similaritySearch);
+    }
+
+    /**
+     * 向量检索 top-K 文档
+     *
+     * @param query 查询
+     * @param topK 返回的文档数量
+     * @return 检索结果
+     */
+    private List<Document> vectorSearch(String query, int topK) {
+        return vectorStore.similaritySearch(SearchRequest.builder().query(query).topK(topK).build());
+    }
 }
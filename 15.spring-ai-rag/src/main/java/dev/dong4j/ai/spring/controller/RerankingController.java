@@ -1,12 +1,28 @@
 package dev.dong4j.ai.spring.controller;
 
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.cache.QueryTransformCache;
+import dev.dong4j.ai.spring.rerank.CascadeReranker;
+import dev.dong4j.ai.spring.rerank.LlmReranker;
+import dev.dong4j.ai.spring.rerank.MmrSelector;
+import dev.dong4j.ai.spring.retrieval.ChannelResult;
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+import dev.dong4j.ai.spring.retrieval.RecallChannel;
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+import dev.dong4j.ai.spring.stream.RagStreamer;
+
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -58,16 +74,41 @@ public class RerankingController {
 
     private final ChatClient chatClient;
     private final VectorStore vectorStore;
+    private final RecallExecutor recallExecutor;
+    private final LlmReranker llmReranker;
+    private final CascadeReranker cascadeReranker;
+    private final MmrSelector mmrSelector;
+    private final QueryTransformCache queryTransformCache;
+    private final RagStreamer ragStreamer;
 
     /**
      * 构造函数，注入相关组件
      *
      * @param chatClient 聊天客户端
      * @param vectorStore 向量存储
+     * @param recallExecutor 多路召回执行器
+     * @param llmReranker LLM 重排器
+     * @param cascadeReranker 级联重排器
+     * @param mmrSelector MMR 多样性选择器
+     * @param queryTransformCache 查询转换结果缓存
+     * @param ragStreamer RAG 流式响应构建器
      */
-    public RerankingController(ChatClient chatClient, VectorStore vectorStore) {
+    public RerankingController(ChatClient chatClient,
+                               VectorStore vectorStore,
+                               RecallExecutor recallExecutor,
+                               LlmReranker llmReranker,
+                               CascadeReranker cascadeReranker,
+                               MmrSelector mmrSelector,
+                               QueryTransformCache queryTransformCache,
+                               RagStreamer ragStreamer) {
         this.chatClient = chatClient;
         this.vectorStore = vectorStore;
+        this.recallExecutor = recallExecutor;
+        this.llmReranker = llmReranker;
+        this.cascadeReranker = cascadeReranker;
+        this.mmrSelector = mmrSelector;
+        this.queryTransformCache = queryTransformCache;
+        this.ragStreamer = ragStreamer;
     }
 
     /**
@@ -75,7 +116,7 @@ public class RerankingController {
      *
      * <p>演示重排的基本流程：
      * 1. 初步检索获取候选文档
-     * 2. 使用 LLM 对候选文档进行相关性评分
+     * 2. 级联重排：关键词覆盖率、向量分数能明确区分 top-K 时直接采用，否则使用 LLM 对候选文档进行相关性评分
      * 3. 按评分排序，选择 top-K
      *
      * @param query 用户查询
@@ -86,24 +127,25 @@ public class RerankingController {
     public String basicRerank(
             @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
             @RequestParam(defaultValue = "5") int topK) {
-        // 步骤1: 初步检索，获取候选文档
-        List<Document> candidateDocs = vectorStore.similaritySearch(query);
+        // 步骤1: 初步检索，获取多于 top-K 的候选文档，重排才有可挑选的余地
+        List<Document> candidateDocs = candidates(query, topK);
 
-        // 步骤2: 使用 LLM 对候选文档进行重排评分
-        List<Document> rerankedDocs = rerankWithLLM(query, candidateDocs, topK);
+        // 步骤2: 级联重排，只有前面的廉价阶段区分不开时才调用 LLM 评分
+        List<Document> rerankedDocs = cascadeReranker.rerank(query, candidateDocs, topK);
+        Object stage = rerankedDocs.isEmpty() ? "N/A"
+                : rerankedDocs.getFirst().getMetadata().get(CascadeReranker.STAGE_METADATA_KEY);
 
         // 构建重排后的文档列表
         StringBuilder rerankedContent = new StringBuilder();
         for (int i = 0; i < rerankedDocs.size(); i++) {
             Document doc = rerankedDocs.get(i);
-            Object score = doc.getMetadata().get("rerank_score");
-            rerankedContent.append(String.format("%d. [重排分数: %s] %s\n",
-                    i + 1, score != null ? score : "N/A", doc.getText()));
+            rerankedContent.append(String.format("%d. [重排分数: %.4f] %s\n", i + 1, doc.getScore(), doc.getText()));
         }
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(rerankedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/rerank/basic"))
                 .call()
                 .content();
 
@@ -115,7 +157,7 @@ public class RerankingController {
 
                 重排流程:
                 1. 初步检索获取 %d 个候选文档
-                2. 使用 LLM 对候选文档进行相关性评分
+                2. 级联重排（关键词覆盖率 → 向量分数 → LLM 评分），本次采用阶段: %s
                 3. 按评分排序，选择 top-%d
 
                 重排后的文档列表:
@@ -128,7 +170,24 @@ public class RerankingController {
                       选出最相关的 top-K（如 top-5）送给 LLM。
                       初步检索是"近似最近邻"，速度快但精度有限；
                       重排用更昂贵但更准的模型做"精筛"。
-                """, query, topK, candidateDocs.size(), topK, rerankedContent, response);
+                """, query, topK, candidateDocs.size(), stage, topK, rerankedContent, response);
+    }
+
+    /**
+     * 基础重排流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @param topK 返回的文档数量
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/basic/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> basicRerankStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query,
+            @RequestParam(defaultValue = "5") int topK) {
+        return ragStreamer.stream(query, "/rag/rerank/basic",
+                () -> cascadeReranker.rerank(query, candidates(query, topK), topK));
     }
 
     /**
@@ -165,7 +224,8 @@ public class RerankingController {
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(rerankedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/rerank/cross-encoder"))
                 .call()
                 .content();
 
@@ -192,6 +252,21 @@ public class RerankingController {
                 """, query, rerankedContent, response);
     }
 
+    /**
+     * Cross-Encoder 重排流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/cross-encoder/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> crossEncoderRerankStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性是什么？") String query) {
+        return ragStreamer.stream(query, "/rag/rerank/cross-encoder",
+                () -> crossEncoderRerank(query, vectorStore.similaritySearch(query)));
+    }
+
     /**
      * 多样性重排演示接口
      *
@@ -211,18 +286,20 @@ public class RerankingController {
         // 步骤1: 初步检索获取候选文档
         List<Document> candidateDocs = vectorStore.similaritySearch(query);
 
-        // 步骤2: 多样性重排
-        List<Document> rerankedDocs = diversityRerank(query, candidateDocs);
+        // 步骤2: 基于入库向量的 MMR 多样性重排
+        List<Document> rerankedDocs = mmrSelector.select(candidateDocs, 5);
 
         StringBuilder rerankedContent = new StringBuilder();
         for (int i = 0; i < rerankedDocs.size(); i++) {
             Document doc = rerankedDocs.get(i);
-            rerankedContent.append(String.format("%d. %s\n", i + 1, doc.getText()));
+            rerankedContent.append(String.format("%d. [MMR: %.4f] %s\n",
+                    i + 1, doc.getMetadata().get(MmrSelector.SCORE_METADATA_KEY), doc.getText()));
         }
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(rerankedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/rerank/diversity"))
                 .call()
                 .content();
 
@@ -248,6 +325,21 @@ public class RerankingController {
                 """, query, rerankedContent, response);
     }
 
+    /**
+     * 多样性重排流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
+     */
+    @GetMapping(value = "/diversity/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> diversityRerankStream(
+            @RequestParam(defaultValue = "Spring AI 支持哪些功能？") String query) {
+        return ragStreamer.stream(query, "/rag/rerank/diversity",
+                () -> mmrSelector.select(vectorStore.similaritySearch(query), 5));
+    }
+
     /**
      * 完整的高级 RAG 重排流程演示接口
      *
@@ -273,37 +365,41 @@ public class RerankingController {
         }
         flowLog.append("\n");
 
-        // 步骤2: 多路召回
+        // 步骤2: 多路召回，各通道在虚拟线程上并行执行，只合并按时返回的结果
         flowLog.append("步骤2: 多路召回（Multi-Channel Recall）\n");
-        List<List<Document>> channelResults = new ArrayList<>();
-        for (String expandedQuery : expandedQueries) {
-            List<Document> docs = vectorStore.similaritySearch(expandedQuery);
-            channelResults.add(docs);
-            flowLog.append(String.format("  - 通道%d检索: %d 个文档\n",
-                    channelResults.size(), docs.size()));
+        List<ChannelResult> recallResults = recallExecutor.recall(recallChannels(expandedQueries));
+        for (ChannelResult result : recallResults) {
+            flowLog.append(String.format("  - %s检索: %d 个文档 [%s, %dms]\n",
+                    result.name(), result.documents().size(), result.status(), result.elapsedMillis()));
         }
+        List<List<Document>> channelResults = ChannelResult.documentsOf(recallResults);
         flowLog.append("\n");
 
         // 步骤3: 结果融合
         flowLog.append("步骤3: 结果融合（Result Fusion）\n");
-        List<Document> fusedDocs = concatenateDocuments(channelResults);
+        List<Document> fusedDocs = DocumentDeduplicator.distinct(channelResults);
         flowLog.append(String.format("  - 融合后文档数: %d\n\n", fusedDocs.size()));
 
         // 步骤4: 重排精筛
         flowLog.append("步骤4: 重排精筛（Re-ranking）\n");
-        List<Document> rerankedDocs = rerankWithLLM(query, fusedDocs, 5);
+        List<Document> rerankedDocs = llmReranker.rerank(query, fusedDocs, 5);
+        if (!rerankedDocs.isEmpty()) {
+            // FALLBACK 表示截止时间内未完成 LLM 打分，按原始检索分数排序
+            flowLog.append(String.format("  - 重排结果: %s\n",
+                    rerankedDocs.getFirst().getMetadata().get(LlmReranker.OUTCOME_METADATA_KEY)));
+        }
         for (int i = 0; i < rerankedDocs.size(); i++) {
             Document doc = rerankedDocs.get(i);
-            Object score = doc.getMetadata().get("rerank_score");
-            flowLog.append(String.format("  - Top%d [分数: %s]: %s\n",
-                    i + 1, score != null ? score : "N/A",
+            flowLog.append(String.format("  - Top%d [分数: %.4f]: %s\n",
+                    i + 1, doc.getScore(),
                     doc.getText().substring(0, Math.min(50, doc.getText().length())) + "..."));
         }
         flowLog.append("\n");
 
         String response = chatClient.prompt()
                 .user(query)
-                .advisors(a -> a.param("VectorStoreRetriever", vectorStore))
+                .advisors(RetrievalContext.of(rerankedDocs))
+                .advisors(SemanticCacheAdvisor.scope("/rag/rerank/complete-flow"))
                 .call()
                 .content();
 
@@ -323,41 +419,35 @@ public class RerankingController {
     }
 
     /**
-     * 使用 LLM 对候选文档进行重排评分
+     * 完整重排流程流式演示
+     *
+     * <p>先推送检索结果，再逐段推送 LLM 生成的回答。
+     *
+     * @param query 用户查询
+     * @return SSE 事件流
      */
-    private List<Document> rerankWithLLM(String query, List<Document> candidates, int topK) {
-        // 构建重排提示
-        StringBuilder rerankPrompt = new StringBuilder();
-        rerankPrompt.append("请对以下候选文档与查询的相关性进行评分（0-1分）：\n");
-        rerankPrompt.append(String.format("查询: %s\n\n", query));
-        rerankPrompt.append("候选文档:\n");
-        for (int i = 0; i < candidates.size(); i++) {
-            rerankPrompt.append(String.format("文档%d: %s\n", i + 1, candidates.get(i).getText()));
-        }
-        rerankPrompt.append("\n请按以下格式返回评分结果（只返回评分）：\n");
-        rerankPrompt.append("文档1: 0.85\n文档2: 0.72\n...");
-
-        // 调用 LLM 进行评分
-        String scores = chatClient.prompt()
-                .user(rerankPrompt.toString())
-                .call()
-                .content();
+    @GetMapping(value = "/complete-flow/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> completeRerankFlowStream(
+            @RequestParam(defaultValue = "Spring AI 的核心特性和应用场景") String query) {
+        return ragStreamer.stream(query, "/rag/rerank/complete-flow", () -> {
+            List<ChannelResult> recallResults = recallExecutor.recall(recallChannels(expandQuery(query)));
+            List<Document> fusedDocs = DocumentDeduplicator.distinct(ChannelResult.documentsOf(recallResults));
+            return llmReranker.rerank(query, fusedDocs, 5);
+        });
+    }
 
-        // 解析评分结果并排序
-        List<DocumentWithScore> docsWithScores = new ArrayList<>();
-        for (int i = 0; i < candidates.size(); i++) {
-            Document doc = candidates.get(i);
-            double score = parseScore(scores, i + 1);
-            doc.getMetadata().put("rerank_score", String.format("%.4f", score));
-            docsWithScores.add(new DocumentWithScore(doc, score));
+    /**
+     * 为每个扩展查询构建一个向量检索通道
+     *
+     * @param expandedQueries 扩展后的查询
+     * @return 召回通道列表
+     */
+    private List<RecallChannel> recallChannels(List<String> expandedQueries) {
+        List<RecallChannel> channels = new ArrayList<>();
+        for (int i = 0; i < expandedQueries.size(); i++) {
+            channels.add(RecallChannel.vector("通道" + (i + 1), vectorStore, expandedQueries.get(i)));
         }
-
-        // 按评分排序并选择 topK
-        docsWithScores.sort((a, b) -> Double.compare(b.score, a.score));
-        return docsWithScores.stream()
-                .limit(topK)
-                .map(d -> d.document)
-                .toList();
+        return channels;
     }
 
     /**
@@ -382,55 +472,14 @@ public class RerankingController {
                 .toList();
     }
 
-    /**
-     * 多样性重排
-     */
-    private List<Document> diversityRerank(String query, List<Document> candidates) {
-        // 先按相关性排序
-        List<DocumentWithScore> docsWithScores = new ArrayList<>();
-        for (int i = 0; i < candidates.size(); i++) {
-            Document doc = candidates.get(i);
-            double relevance = simulateCrossEncoderScore(query, doc.getText());
-            docsWithScores.add(new DocumentWithScore(doc, relevance));
-        }
-        docsWithScores.sort((a, b) -> Double.compare(b.score, a.score));
-
-        // 使用 MMR 算法选择多样化的文档
-        List<Document> selected = new ArrayList<>();
-        double lambda = 0.5; // 相关性和多样性的平衡因子
-
-        for (int i = 0; i < Math.min(5, docsWithScores.size()); i++) {
-            DocumentWithScore candidate = docsWithScores.get(i);
-
-            // 如果已选文档为空，直接选择
-            if (selected.isEmpty()) {
-                selected.add(candidate.document);
-                continue;
-            }
-
-            // 计算与已选文档的最大相似度（多样性惩罚）
-            double maxSimilarity = 0.0;
-            for (Document selectedDoc : selected) {
-                double similarity = calculateSimilarity(candidate.document.getText(), selectedDoc.getText());
-                maxSimilarity = Math.max(maxSimilarity, similarity);
-            }
-
-            // MMR 分数 = 相关性 - λ * 多样性惩罚
-            double mmrScore = lambda * candidate.score - (1 - lambda) * maxSimilarity;
-            candidate.document.getMetadata().put("mmr_score", String.format("%.4f", mmrScore));
-
-            selected.add(candidate.document);
-        }
-
-        return selected;
-    }
-
     /**
      * 扩展单个查询为多个查询变体
      */
     private List<String> expandQuery(String originalQuery) {
-        String expansionPrompt = String.format("将以下查询扩展为3个不同的查询变体:\n%s", originalQuery);
-        String expansion = chatClient.prompt().user(expansionPrompt).call().content();
+        String expansion = queryTransformCache.getOrCompute("rerank-expansion-v1", originalQuery, q -> {
+            String expansionPrompt = String.format("将以下查询扩展为3个不同的查询变体:\n%s", q);
+            return chatClient.prompt().user(expansionPrompt).call().content();
+        });
 
         List<String> queries = new ArrayList<>();
         for (String line : expansion.split("\\n")) {
@@ -447,45 +496,6 @@ public class RerankingController {
         return queries;
     }
 
-    /**
-     * 拼接文档列表
-     */
-    private List<Document> concatenateDocuments(List<List<Document>> multiChannelResults) {
-        List<Document> result = new ArrayList<>();
-        java.util.Set<String> seenContents = new java.util.HashSet<>();
-
-        for (List<Document> channelDocs : multiChannelResults) {
-            for (Document doc : channelDocs) {
-                String content = doc.getText();
-                if (!seenContents.contains(content)) {
-                    seenContents.add(content);
-                    result.add(doc);
-                }
-            }
-        }
-        return result;
-    }
-
-    /**
-     * 解析评分
-     */
-    private double parseScore(String scores, int docIndex) {
-        try {
-            for (String line : scores.split("\\n")) {
-                if (line.contains("文档" + docIndex + ":") || line.contains("Doc" + docIndex + ":")) {
-                    String[] parts = line.split(":");
-                    if (parts.length >= 2) {
-                        return Double.parseDouble(parts[1].trim());
-                    }
-                }
-            }
-        } catch (Exception e) {
-            // 忽略解析错误
-        }
-        // 默认返回随机分数
-        return 0.5 + Math.random() * 0.5;
-    }
-
     /**
      * 模拟 Cross-Encoder 评分
      */
@@ -502,35 +512,10 @@ public class RerankingController {
     }
 
     /**
-     * 计算文档相似度（用于多样性计算）
+     * 重排的候选池：至少 10 个、不少于 top-K 的两倍
      */
-    private double calculateSimilarity(String doc1, String doc2) {
-        // 简单模拟：基于共同词汇
-        java.util.Set<String> words1 = new java.util.HashSet<>();
-        java.util.Set<String> words2 = new java.util.HashSet<>();
-
-        for (String word : doc1.toLowerCase().split("\\s+")) {
-            if (word.length() > 3) {
-                words1.add(word);
-            }
-        }
-        for (String word : doc2.toLowerCase().split("\\s+")) {
-            if (word.length() > 3) {
-                words2.add(word);
-            }
-        }
-
-        if (words1.isEmpty() || words2.isEmpty()) {
-            return 0.0;
-        }
-
-        java.util.Set<String> intersection = new java.util.HashSet<>(words1);
-        intersection.retainAll(words2);
-
-        java.util.Set<String> union = new java.util.HashSet<>(words1);
-        union.addAll(words2);
-
-        return intersection.size() / (double) union.size();
+    private List<Document> candidates(String query, int topK) {
+        return vectorStore.similaritySearch(SearchRequest.builder().query(query).topK(Math.max(10, topK * 2)).build());
     }
 
     /**
@@ -0,0 +1,220 @@
+package dev.dong4j.ai.spring.decomposition;
+
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 查询分解执行器
+ *
+ * <p>多跳问题分解为子查询后，每个子查询独立「检索 + 回答」，各子查询在 {@link RecallExecutor}
+ * 的虚拟线程上并行执行，最后用一次 LLM 调用综合各子查询的回答。端到端延迟约为最慢的子查询加一次综合调用，
+ * 而不是所有子查询之和。
+ *
+ * <p>同时执行的子查询数量受信号量限制，避免子查询过多时瞬间打满模型的并发配额；
+ * 超出并发上限的子查询排队执行。每个子查询拿到许可后才开始计时，超过单次截止时间即被取消并释放许可，
+ * 排队时间不计入截止时间，慢的子查询也不会占用排在后面的子查询的时间。
+ * 超时或失败的子查询不会阻塞综合，综合时注明该子查询没有回答。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class DecompositionExecutor {
+
+    private static final String SUB_ANSWER_PROMPT = "请只根据参考资料简要回答这个子问题: %s";
+
+    private static final String SYNTHESIS_PROMPT = """
+            用户的问题已被分解为以下子问题并分别作答：
+
+            %s
+            请综合各子问题的回答，完整回答用户的问题。没有回答的子问题请根据已有信息说明不确定之处。
+            """;
+
+    private final ChatClient chatClient;
+    private final VectorStore vectorStore;
+    private final RecallExecutor executor;
+    private final int maxConcurrency;
+    private final Duration subQueryTimeout;
+
+    /**
+     * 构造函数
+     *
+     * @param chatClient 聊天客户端
+     * @param vectorStore 向量存储
+     * @param executor 并行执行器
+     * @param properties RAG 配置属性
+     */
+    @Autowired
+    public DecompositionExecutor(ChatClient chatClient,
+                                 VectorStore vectorStore,
+                                 RecallExecutor executor,
+                                 RagProperties properties) {
+        this(chatClient, vectorStore, executor,
+                properties.decomposition().maxConcurrency(), properties.decomposition().subQueryTimeout());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param chatClient 聊天客户端
+     * @param vectorStore 向量存储
+     * @param executor 并行执行器
+     * @param maxConcurrency 同时执行的子查询上限
+     * @param subQueryTimeout 单个子查询「检索 + 回答」的截止时间
+     */
+    public DecompositionExecutor(ChatClient chatClient,
+                                 VectorStore vectorStore,
+                                 RecallExecutor executor,
+                                 int maxConcurrency,
+                                 Duration subQueryTimeout) {
+        this.chatClient = chatClient;
+        this.vectorStore = vectorStore;
+        this.executor = executor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.subQueryTimeout = subQueryTimeout;
+    }
+
+    /**
+     * 从 LLM 的分解结果中解析出子查询
+     *
+     * <p>每行一个子查询，去除空行、标题行以及行首的编号和列表符号。
+     *
+     * @param decomposition LLM 返回的分解结果
+     * @return 子查询列表
+     */
+    public static List<String> parseSubQueries(String decomposition) {
+        List<String> subQueries = new ArrayList<>();
+        for (String line : decomposition.split("\\n")) {
+            String trimmed = line.trim().replaceFirst("^(\\d+[.、)）]|[-*•])\\s*", "");
+            if (!trimmed.isEmpty() && !trimmed.contains("子查询")) {
+                subQueries.add(trimmed);
+            }
+        }
+        return subQueries;
+    }
+
+    /**
+     * 并行检索并回答各子查询，再综合为最终回答
+     *
+     * @param query 用户原始问题
+     * @param subQueries 分解得到的子查询
+     * @param cacheScope 综合回答的语义缓存作用域
+     * @return 各子查询的执行结果与综合回答
+     */
+    public Result execute(String query, List<String> subQueries, String cacheScope) {
+        List<SubAnswer> subAnswers = answerAll(subQueries);
+
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < subAnswers.size(); i++) {
+            SubAnswer subAnswer = subAnswers.get(i);
+            context.append(i + 1).append(". ").append(subAnswer.subQuery()).append('\n')
+                    .append("   回答: ").append(subAnswer.answer() != null ? subAnswer.answer() : "（没有回答）")
+                    .append("\n\n");
+        }
+
+        String answer = chatClient.prompt()
+                .system(SYNTHESIS_PROMPT.formatted(context))
+                .user(query)
+                .advisors(SemanticCacheAdvisor.scope(cacheScope))
+                .call()
+                .content();
+        return new Result(subAnswers, answer);
+    }
+
+    /**
+     * 在并发上限内并行执行所有子查询
+     *
+     * @param subQueries 子查询
+     * @return 各子查询的执行结果，顺序与入参一致
+     */
+    public List<SubAnswer> answerAll(List<String> subQueries) {
+        Semaphore permits = new Semaphore(maxConcurrency);
+        List<Callable<RecallExecutor.Outcome<SubAnswer>>> tasks = new ArrayList<>(subQueries.size());
+        for (String subQuery : subQueries) {
+            Callable<SubAnswer> task = () -> answer(subQuery);
+            tasks.add(() -> {
+                permits.acquire();
+                try {
+                    // 拿到许可后才开始计时，超时的子查询被取消后立即释放许可
+                    return executor.fanOut(List.of(task), subQueryTimeout).getFirst();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        // 每个子查询最多排队 waves - 1 轮，外层截止时间只是兜底，正常情况下由各子查询自己的截止时间结束
+        int waves = Math.max(1, (subQueries.size() + maxConcurrency - 1) / maxConcurrency);
+        List<RecallExecutor.Outcome<RecallExecutor.Outcome<SubAnswer>>> queued =
+                executor.fanOut(tasks, subQueryTimeout.multipliedBy(waves + 1L));
+
+        List<SubAnswer> subAnswers = new ArrayList<>(subQueries.size());
+        for (int i = 0; i < subQueries.size(); i++) {
+            RecallExecutor.Outcome<SubAnswer> outcome = queued.get(i).value() != null
+                    ? queued.get(i).value()
+                    : new RecallExecutor.Outcome<>(null, queued.get(i).status(), queued.get(i).elapsedMillis());
+            subAnswers.add(outcome.value() != null
+                    ? outcome.value().withTiming(outcome.status(), outcome.elapsedMillis())
+                    : new SubAnswer(subQueries.get(i), List.of(), null, outcome.status(), outcome.elapsedMillis()));
+        }
+        return subAnswers;
+    }
+
+    /**
+     * 检索并回答单个子查询
+     */
+    private SubAnswer answer(String subQuery) {
+        List<Document> documents = vectorStore.similaritySearch(subQuery);
+        String answer = chatClient.prompt()
+                .user(SUB_ANSWER_PROMPT.formatted(subQuery))
+                .advisors(RetrievalContext.of(documents))
+                .call()
+                .content();
+        return new SubAnswer(subQuery, documents, answer, RecallExecutor.Status.COMPLETED, 0L);
+    }
+
+    /**
+     * 单个子查询的执行结果
+     *
+     * @param subQuery 子查询
+     * @param documents 子查询检索到的文档
+     * @param answer 子查询的回答，超时或失败时为 null
+     * @param status 执行状态
+     * @param elapsedMillis 耗时（毫秒）
+     */
+    public record SubAnswer(String subQuery,
+                            List<Document> documents,
+                            String answer,
+                            RecallExecutor.Status status,
+                            long elapsedMillis) {
+
+        private SubAnswer withTiming(RecallExecutor.Status status, long elapsedMillis) {
+            return new SubAnswer(subQuery, documents, answer, status, elapsedMillis);
+        }
+    }
+
+    /**
+     * 查询分解的执行结果
+     *
+     * @param subAnswers 各子查询的执行结果
+     * @param answer 综合回答
+     */
+    public record Result(List<SubAnswer> subAnswers, String answer) {}
+}
@@ -0,0 +1,119 @@
+package dev.dong4j.ai.spring.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.embedding.EmbeddingResponseMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带持久化内容缓存的 EmbeddingModel 装饰器
+ *
+ * <p>每次 {@link #call(EmbeddingRequest)} 先按 (模型, 维度, 文本) 查询 {@link MappedEmbeddingCache}，
+ * 只把未命中的文本发给被装饰的模型，结果写回缓存后按原顺序拼装响应；全部命中时不发起请求。
+ * 向量检索和 {@code vectorStore.add} 的批量嵌入最终都经过 {@code call}，
+ * 因此重启后重新导入未变化的文档、重复出现的分块都不会再调用嵌入服务。
+ *
+ * <p>请求未指定模型或维度时使用构造时传入的默认值，保证同一段文本在不同入口得到相同的缓存键。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    /** 嵌入缓存命中 / 未命中计数的指标名 */
+    public static final String METRIC_NAME = "rag.embedding.cache";
+
+    private final EmbeddingModel delegate;
+    private final MappedEmbeddingCache cache;
+    private final String defaultModel;
+    private final Integer defaultDimensions;
+    private final Counter hits;
+    private final Counter misses;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate 被装饰的嵌入模型
+     * @param cache 持久化嵌入缓存
+     * @param defaultModel 请求未指定模型时使用的模型名称
+     * @param defaultDimensions 请求未指定维度时使用的维度，可为空
+     * @param meterRegistry 指标注册表
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate,
+                                 MappedEmbeddingCache cache,
+                                 String defaultModel,
+                                 Integer defaultDimensions,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.defaultModel = defaultModel;
+        this.defaultDimensions = defaultDimensions;
+        this.hits = Counter.builder(METRIC_NAME).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(METRIC_NAME).tag("result", "miss").register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        EmbeddingOptions options = request.getOptions();
+        String model = options != null && options.getModel() != null ? options.getModel() : defaultModel;
+        Integer dimensions = options != null && options.getDimensions() != null
+                ? options.getDimensions() : defaultDimensions;
+
+        float[][] vectors = new float[texts.size()][];
+        byte[][] keys = new byte[texts.size()][];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            keys[i] = MappedEmbeddingCache.key(model, dimensions == null ? 0 : dimensions, texts.get(i));
+            vectors[i] = cache.get(keys[i]).orElse(null);
+            if (vectors[i] == null) {
+                missing.add(i);
+            }
+        }
+        hits.increment(texts.size() - missing.size());
+        misses.increment(missing.size());
+
+        EmbeddingResponseMetadata metadata = new EmbeddingResponseMetadata();
+        if (!missing.isEmpty()) {
+            List<String> missingTexts = missing.stream().map(texts::get).toList();
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(missingTexts, options));
+            for (int j = 0; j < missing.size(); j++) {
+                int i = missing.get(j);
+                vectors[i] = response.getResults().get(j).getOutput();
+                cache.put(keys[i], vectors[i]);
+            }
+            metadata = response.getMetadata();
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(texts.size());
+        for (int i = 0; i < vectors.length; i++) {
+            embeddings.add(new Embedding(vectors[i], i));
+        }
+        return new EmbeddingResponse(embeddings, metadata);
+    }
+
+    /**
+     * 与 OpenAiEmbeddingModel 一样按 {@link MetadataMode#EMBED} 格式化文档内容，使单文档嵌入同样经过缓存
+     */
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
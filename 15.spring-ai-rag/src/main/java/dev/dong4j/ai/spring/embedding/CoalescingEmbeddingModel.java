@@ -0,0 +1,228 @@
+package dev.dong4j.ai.spring.embedding;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 合并并发单条嵌入调用的 EmbeddingModel 装饰器
+ *
+ * <p>每次 {@code similaritySearch(String)} 都会调用一次 {@link #embed(String)}，并发查询时每条查询各发一次嵌入请求。
+ * 这里把单条调用放入队列，由调度线程按「攒批窗口」合并：拿到第一条后最多再等待 linger 时间，
+ * 或攒满 maxBatchSize 条立即发出，一批文本通过一次 {@link EmbeddingModel#embed(List)} 请求完成，
+ * 结果按顺序分发给各调用方。同一批中重复的文本只嵌入一次。
+ *
+ * <p>低并发时单条调用最多多等待一个 linger 窗口（默认几毫秒），相对嵌入请求本身的网络延迟可以忽略；
+ * 高并发时请求数按批大小成倍下降，也降低了触发服务商限流的概率。
+ *
+ * <p>本身已经是批量的调用（{@link #call(EmbeddingRequest)}、文档批量嵌入等）直接透传给被装饰的模型，
+ * 单文档嵌入按单条文本参与合并。
+ *
+ * <p>调用方最多等待 timeout 时间，等待可被中断；超时或中断时放弃这次调用。{@link #destroy()} 之后新的调用直接失败，
+ * 队列中和调度线程已取出但尚未发出的调用同样以失败结束，不会让调用方一直等待。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class CoalescingEmbeddingModel implements EmbeddingModel, DisposableBean {
+
+    /** 合并后每批文本数的指标名，指标计数即实际发出的嵌入请求数 */
+    public static final String METRIC_NAME = "rag.embedding.batch.size";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final EmbeddingModel delegate;
+    private final long lingerNanos;
+    private final int maxBatchSize;
+    private final Duration timeout;
+    private final DistributionSummary batchSizes;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate 被装饰的嵌入模型
+     * @param linger 攒批窗口，收到第一条文本后最多等待的时间
+     * @param maxBatchSize 每批最多合并的文本数
+     * @param timeout 单条调用等待嵌入结果的最长时间
+     * @param meterRegistry 指标注册表
+     */
+    public CoalescingEmbeddingModel(EmbeddingModel delegate,
+                                    Duration linger,
+                                    int maxBatchSize,
+                                    Duration timeout,
+                                    MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.lingerNanos = linger.toNanos();
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.timeout = timeout;
+        this.batchSizes = DistributionSummary.builder(METRIC_NAME).register(meterRegistry);
+        this.dispatcher = Thread.ofVirtual().name("embedding-coalescer").start(this::dispatch);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        if (closed) {
+            throw closedException();
+        }
+        Pending pending = new Pending(text, new CompletableFuture<>());
+        queue.add(pending);
+        // 与 destroy 并发时，destroy 清空队列后才加入的调用由这里结束
+        if (closed && queue.remove(pending)) {
+            throw closedException();
+        }
+        try {
+            return pending.result().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("合并嵌入请求失败", e.getCause());
+        } catch (TimeoutException e) {
+            pending.result().cancel(false);
+            throw new IllegalStateException("等待嵌入结果超时（" + timeout + "）", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.result().cancel(false);
+            throw new IllegalStateException("等待嵌入结果时被中断", e);
+        }
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    /**
+     * 与 OpenAiEmbeddingModel 一样按 {@link MetadataMode#EMBED} 格式化文档内容，使单文档嵌入同样参与合并
+     */
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getFormattedContent(MetadataMode.EMBED));
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * 调度循环：阻塞等待第一条文本，然后在攒批窗口内尽量多取，交给虚拟线程发出请求
+     *
+     * <p>停止时已取出但尚未发出的一批以失败结束；线程池已关闭、无法发出的一批同样以失败结束。
+     */
+    private void dispatch() {
+        List<Pending> batch = new ArrayList<>();
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                List<Pending> taken = batch;
+                batch = new ArrayList<>();
+                try {
+                    executor.execute(() -> flush(taken));
+                } catch (RejectedExecutionException e) {
+                    fail(taken, closedException());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fail(batch, closedException());
+        }
+    }
+
+    /**
+     * 发出一批合并后的嵌入请求，相同文本只嵌入一次
+     */
+    private void flush(List<Pending> batch) {
+        Map<String, List<Pending>> byText = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            byText.computeIfAbsent(pending.text(), t -> new ArrayList<>(1)).add(pending);
+        }
+        List<String> texts = new ArrayList<>(byText.keySet());
+        try {
+            List<float[]> embeddings = delegate.embed(texts);
+            batchSizes.record(texts.size());
+            for (int i = 0; i < texts.size(); i++) {
+                for (Pending pending : byText.get(texts.get(i))) {
+                    pending.result().complete(embeddings.get(i));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("合并嵌入请求失败 ({} 条文本): {}", texts.size(), e.getMessage());
+            fail(batch, e);
+        } finally {
+            // 请求被中断等情况下没有拿到结果的调用同样以失败结束
+            fail(batch, closedException());
+        }
+    }
+
+    private static void fail(List<Pending> batch, RuntimeException cause) {
+        for (Pending pending : batch) {
+            pending.result().completeExceptionally(cause);
+        }
+    }
+
+    private static IllegalStateException closedException() {
+        return new IllegalStateException("嵌入请求合并已停止");
+    }
+
+    /**
+     * 停止调度：拒绝新的调用，队列中和调度线程已取出的调用以失败结束
+     */
+    @Override
+    public void destroy() {
+        closed = true;
+        dispatcher.interrupt();
+        try {
+            dispatcher.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        fail(remaining, closedException());
+    }
+
+    /**
+     * 等待合并的单条嵌入调用
+     */
+    private record Pending(String text, CompletableFuture<float[]> result) {}
+}
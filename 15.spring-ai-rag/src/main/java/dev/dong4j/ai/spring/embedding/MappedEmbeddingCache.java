@@ -0,0 +1,284 @@
+package dev.dong4j.ai.spring.embedding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于内存映射文件的持久化嵌入缓存
+ *
+ * <p>以 (模型, 维度, 文本内容) 的 SHA-256 摘要为键，向量按 float32 或 float16 紧凑存储在只追加的文件中：
+ * <pre>
+ * 文件头: magic(4) | version(4) | end(8)
+ * 记录:   key(32)  | precision(1) | dimensions(4) | vector(dimensions × 4 或 × 2)
+ * </pre>
+ * 文件头中的 {@code end} 在记录写完后才更新，进程崩溃时最多丢失最后一条未提交的记录。
+ * 启动时顺序扫描已提交的记录重建「键 → 偏移量」索引，向量本身留在映射文件中按需读取，
+ * 因此重启后无需重新调用嵌入服务，内存中也只保存索引。扫描时校验 {@code end} 与每条记录的精度、维度和长度，
+ * 遇到第一条不合法的记录即在此截断，之后的内容由新写入覆盖，损坏的文件不会导致启动失败。
+ *
+ * <p>映射区写满时按倍数扩容并重新映射；单个映射区受 {@link MappedByteBuffer} 限制最大 2GB，
+ * 超出后新向量不再写入缓存，已有条目仍可读取。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class MappedEmbeddingCache implements Closeable {
+
+    private static final int MAGIC = 0x52414745;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int END_OFFSET = 8;
+    private static final int KEY_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = KEY_SIZE + 1 + 4;
+    /** 记录中维度的合理上限，超出视为损坏 */
+    private static final int MAX_DIMENSIONS = 1 << 16;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final Path file;
+    private final Precision precision;
+    private final FileChannel channel;
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private MappedByteBuffer buffer;
+    private int end;
+    private boolean full;
+
+    /**
+     * 打开（或创建）缓存文件并重建索引
+     *
+     * @param file 缓存文件
+     * @param precision 新写入向量的存储精度
+     * @param initialCapacity 新建文件时的初始映射大小（字节）
+     */
+    public MappedEmbeddingCache(Path file, Precision precision, long initialCapacity) {
+        this.file = file;
+        this.precision = precision;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long capacity = Math.max(channel.size(), Math.max(initialCapacity, HEADER_SIZE));
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开嵌入缓存文件 " + file, e);
+        }
+        load();
+    }
+
+    /**
+     * 计算缓存键：模型、维度与文本内容的 SHA-256 摘要
+     *
+     * @param model 嵌入模型名称
+     * @param dimensions 向量维度，未指定时为 0
+     * @param text 文本内容
+     * @return 32 字节摘要
+     */
+    public static byte[] key(String model, int dimensions, String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((model + '\n' + dimensions + '\n').getBytes(StandardCharsets.UTF_8));
+            return digest.digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取缓存的向量
+     *
+     * @param key 缓存键
+     * @return 向量，未命中时为空
+     */
+    public Optional<float[]> get(byte[] key) {
+        Integer offset = index.get(HexFormat.of().formatHex(key));
+        if (offset == null) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            return Optional.of(readVector(offset));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 追加写入向量，已存在的键不会重复写入
+     *
+     * @param key 缓存键
+     * @param vector 向量
+     */
+    public void put(byte[] key, float[] vector) {
+        String hex = HexFormat.of().formatHex(key);
+        if (index.containsKey(hex)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            long required = RECORD_HEADER_SIZE + (long) vector.length * precision.bytes;
+            if (index.containsKey(hex) || !ensureCapacity(required)) {
+                return;
+            }
+            int offset = end;
+            buffer.put(offset, key);
+            buffer.put(offset + KEY_SIZE, (byte) precision.ordinal());
+            buffer.putInt(offset + KEY_SIZE + 1, vector.length);
+            int position = offset + RECORD_HEADER_SIZE;
+            for (float value : vector) {
+                if (precision == Precision.FLOAT16) {
+                    buffer.putShort(position, Float.floatToFloat16(value));
+                } else {
+                    buffer.putFloat(position, value);
+                }
+                position += precision.bytes;
+            }
+            end = position;
+            buffer.putLong(END_OFFSET, end);
+            index.put(hex, offset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 缓存的向量条数
+     *
+     * @return 条目数
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * 把映射区的修改刷到磁盘并关闭文件
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("关闭嵌入缓存文件失败: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 校验文件头并扫描已提交的记录重建索引；新文件或无法识别的文件从头初始化
+     */
+    private void load() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            if (buffer.getInt(0) != 0) {
+                log.warn("嵌入缓存文件 {} 格式无法识别，已重新初始化", file);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(END_OFFSET, HEADER_SIZE);
+        }
+        long committed = buffer.getLong(END_OFFSET);
+        if (committed < HEADER_SIZE || committed > buffer.capacity()) {
+            log.warn("嵌入缓存文件 {} 的提交位置 {} 不合法，按映射区大小截断扫描", file, committed);
+            committed = committed < HEADER_SIZE ? HEADER_SIZE : buffer.capacity();
+        }
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= committed) {
+            int ordinal = buffer.get(offset + KEY_SIZE);
+            int dimensions = buffer.getInt(offset + KEY_SIZE + 1);
+            if (ordinal < 0 || ordinal >= Precision.values().length || dimensions <= 0 || dimensions > MAX_DIMENSIONS) {
+                log.warn("嵌入缓存文件 {} 在偏移量 {} 处的记录不合法，之后的内容已丢弃", file, offset);
+                break;
+            }
+            long next = offset + RECORD_HEADER_SIZE + (long) dimensions * Precision.values()[ordinal].bytes;
+            if (next > committed) {
+                break;
+            }
+            byte[] key = new byte[KEY_SIZE];
+            buffer.get(offset, key);
+            index.putIfAbsent(HexFormat.of().formatHex(key), offset);
+            offset = (int) next;
+        }
+        end = offset;
+        buffer.putLong(END_OFFSET, end);
+        log.info("已加载嵌入缓存 {}: {} 条向量", file, index.size());
+    }
+
+    private float[] readVector(int offset) {
+        Precision stored = Precision.values()[buffer.get(offset + KEY_SIZE)];
+        float[] vector = new float[buffer.getInt(offset + KEY_SIZE + 1)];
+        int position = offset + RECORD_HEADER_SIZE;
+        for (int i = 0; i < vector.length; i++, position += stored.bytes) {
+            vector[i] = stored == Precision.FLOAT16
+                    ? Float.float16ToFloat(buffer.getShort(position))
+                    : buffer.getFloat(position);
+        }
+        return vector;
+    }
+
+    /**
+     * 确保映射区还能写入指定字节数，不足时扩容重新映射
+     *
+     * @return 超出单个映射区上限时返回 false
+     */
+    private boolean ensureCapacity(long required) {
+        if (end + required <= buffer.capacity()) {
+            return true;
+        }
+        long capacity = Math.min(Math.max((long) buffer.capacity() * 2, end + required), Integer.MAX_VALUE);
+        if (full || end + required > capacity) {
+            if (!full) {
+                full = true;
+                log.warn("嵌入缓存文件 {} 已达到映射上限，新向量不再写入缓存", file);
+            }
+            return false;
+        }
+        try {
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("嵌入缓存文件扩容失败 " + file, e);
+        }
+    }
+
+    /**
+     * 向量存储精度
+     */
+    public enum Precision {
+        /** 单精度，无损 */
+        FLOAT32(4),
+        /** 半精度，体积减半，余弦相似度的误差通常在 1e-3 以内 */
+        FLOAT16(2);
+
+        private final int bytes;
+
+        Precision(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
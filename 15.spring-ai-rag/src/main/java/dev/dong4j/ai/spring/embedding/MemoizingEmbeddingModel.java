@@ -0,0 +1,54 @@
+package dev.dong4j.ai.spring.embedding;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * 在请求内记住查询嵌入的 EmbeddingModel 装饰器
+ *
+ * <p>{@link #embed(String)} 是查询侧的入口（向量检索、语义缓存、推测检索都经过它），当前线程打开了
+ * {@link QueryEmbeddingMemo} 时同一文本只委托一次；文档入库走 {@link #call(EmbeddingRequest)} 与
+ * {@link #embed(Document)}，直接委托。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class MemoizingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate 被装饰的嵌入模型
+     */
+    public MemoizingEmbeddingModel(EmbeddingModel delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        QueryEmbeddingMemo memo = QueryEmbeddingMemo.current();
+        return memo != null ? memo.embed(text, delegate::embed) : delegate.embed(text);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+}
@@ -0,0 +1,156 @@
+package dev.dong4j.ai.spring.embedding;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * 请求内的查询嵌入备忘录
+ *
+ * <p>一次 RAG 请求里同一个查询往往被嵌入多次：多路召回的向量通道、查询扩展把原始查询作为第 0 个变体、
+ * 语义缓存按问题查缓存，每次都是一次远程嵌入调用。备忘录由 {@link QueryEmbeddingMemoFilter} 在请求开始时打开，
+ * 请求内 {@link MemoizingEmbeddingModel} 对同一文本只调用一次嵌入模型；多个通道并发嵌入同一文本时，
+ * 后到的等待先到的结果，而不是各自发起请求。
+ *
+ * <p>备忘录绑定在线程上，不会自动传给其它线程：并行执行的任务需通过 {@link #wrap(Callable)} 携带。
+ * 不使用 {@link InheritableThreadLocal}，以免请求期间创建的池化线程长期持有某个请求的备忘录。
+ * 没有打开备忘录时直接调用嵌入模型。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public final class QueryEmbeddingMemo {
+
+    private static final ThreadLocal<QueryEmbeddingMemo> CURRENT = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, CompletableFuture<float[]>> embeddings = new ConcurrentHashMap<>();
+
+    private QueryEmbeddingMemo() {
+    }
+
+    /**
+     * 在当前线程打开一个新的备忘录，已有备忘录时沿用
+     *
+     * @return 作用域，关闭时恢复打开前的状态
+     */
+    public static Scope open() {
+        QueryEmbeddingMemo previous = CURRENT.get();
+        return bind(previous != null ? previous : new QueryEmbeddingMemo());
+    }
+
+    /**
+     * 当前线程的备忘录
+     *
+     * @return 备忘录，未打开时返回 null
+     */
+    public static QueryEmbeddingMemo current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 当前线程的备忘录，未打开时新建一个不绑定线程的备忘录，供异步执行的多个阶段通过 {@link #wrap(QueryEmbeddingMemo, Callable)} 共用
+     *
+     * @return 备忘录
+     */
+    public static QueryEmbeddingMemo currentOrCreate() {
+        QueryEmbeddingMemo memo = CURRENT.get();
+        return memo != null ? memo : new QueryEmbeddingMemo();
+    }
+
+    /**
+     * 让任务在执行线程上沿用当前线程的备忘录
+     *
+     * @param task 任务
+     * @param <T> 返回值类型
+     * @return 包装后的任务，当前线程没有备忘录时原样返回
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        return wrap(CURRENT.get(), task);
+    }
+
+    /**
+     * 让任务在执行线程上使用指定的备忘录
+     *
+     * @param memo 备忘录，为 null 时不绑定
+     * @param task 任务
+     * @param <T> 返回值类型
+     * @return 包装后的任务，备忘录为 null 时原样返回
+     */
+    public static <T> Callable<T> wrap(QueryEmbeddingMemo memo, Callable<T> task) {
+        if (memo == null) {
+            return task;
+        }
+        return () -> {
+            Scope scope = bind(memo);
+            try {
+                return task.call();
+            } finally {
+                scope.close();
+            }
+        };
+    }
+
+    private static Scope bind(QueryEmbeddingMemo memo) {
+        QueryEmbeddingMemo previous = CURRENT.get();
+        CURRENT.set(memo);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * 读取文本的嵌入，首次出现时调用 embedder 计算；计算失败不会被记住，下次重新计算
+     *
+     * @param text 文本
+     * @param embedder 嵌入计算
+     * @return 嵌入向量副本
+     */
+    float[] embed(String text, Function<String, float[]> embedder) {
+        CompletableFuture<float[]> created = new CompletableFuture<>();
+        CompletableFuture<float[]> existing = embeddings.putIfAbsent(text, created);
+        if (existing == null) {
+            try {
+                created.complete(embedder.apply(text));
+            } catch (RuntimeException e) {
+                embeddings.remove(text, created);
+                created.completeExceptionally(e);
+                throw e;
+            }
+            existing = created;
+        }
+        try {
+            return existing.join().clone();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * 已记住的文本数
+     *
+     * @return 文本数
+     */
+    public int size() {
+        return embeddings.size();
+    }
+
+    /**
+     * 备忘录作用域
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
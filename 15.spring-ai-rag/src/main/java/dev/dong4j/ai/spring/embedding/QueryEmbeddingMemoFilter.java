@@ -0,0 +1,42 @@
+package dev.dong4j.ai.spring.embedding;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 为每个 RAG 请求打开 {@link QueryEmbeddingMemo}
+ *
+ * <p>只作用于 {@code /rag/} 下的接口，请求结束时备忘录随之丢弃。流式接口的检索在请求线程返回后才执行，
+ * 由 {@link dev.dong4j.ai.spring.stream.RagStreamer} 把备忘录带给检索和语义缓存查询。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class QueryEmbeddingMemoFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(request.getContextPath() + "/rag/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        QueryEmbeddingMemo.Scope scope = QueryEmbeddingMemo.open();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            scope.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package dev.dong4j.ai.spring.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 导入任务的运行状态
+ *
+ * <p>各阶段线程只更新计数器，读取进度时拼装为不可变的 {@link Progress} 快照。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class IngestionJob {
+
+    private final String id;
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong skippedLines = new AtomicLong();
+    private final AtomicLong chunksStored = new AtomicLong();
+    private final AtomicLong committedLines = new AtomicLong();
+    private volatile Status status = Status.RUNNING;
+    private volatile String error;
+
+    /**
+     * 构造函数
+     *
+     * @param id 任务 id
+     * @param committedLines 已经完成写入的源数据行数，续传时从该行之后开始
+     */
+    IngestionJob(String id, long committedLines) {
+        this.id = id;
+        this.linesRead.set(committedLines);
+        this.committedLines.set(committedLines);
+    }
+
+    String id() {
+        return id;
+    }
+
+    boolean isRunning() {
+        return status == Status.RUNNING;
+    }
+
+    void lineRead() {
+        linesRead.incrementAndGet();
+    }
+
+    void lineSkipped() {
+        skippedLines.incrementAndGet();
+    }
+
+    void chunksStored(int count, long committedLine) {
+        chunksStored.addAndGet(count);
+        committedLines.set(committedLine);
+    }
+
+    long committedLines() {
+        return committedLines.get();
+    }
+
+    void complete() {
+        status = Status.COMPLETED;
+    }
+
+    /**
+     * 标记任务失败，只保留第一个错误
+     */
+    synchronized void fail(Throwable e) {
+        if (status == Status.RUNNING) {
+            status = Status.FAILED;
+            error = String.valueOf(e.getMessage());
+        }
+    }
+
+    boolean isFailed() {
+        return status == Status.FAILED;
+    }
+
+    /**
+     * 当前进度快照
+     *
+     * @return 进度
+     */
+    public Progress progress() {
+        return new Progress(id, status, linesRead.get(), skippedLines.get(), chunksStored.get(),
+                committedLines.get(), error);
+    }
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        /** 正在导入 */
+        RUNNING,
+        /** 导入完成 */
+        COMPLETED,
+        /** 导入失败，可以续传 */
+        FAILED,
+        /** 任务未在运行（如服务重启），可以续传 */
+        INTERRUPTED
+    }
+
+    /**
+     * 导入进度
+     *
+     * @param jobId 任务 id
+     * @param status 任务状态
+     * @param linesRead 已读取的源数据行数
+     * @param skippedLines 因格式错误或缺少文本被跳过的行数
+     * @param chunksStored 本次运行已写入向量存储的分块数
+     * @param committedLines 已完整写入的源数据行数，续传从该行之后开始
+     * @param error 失败原因
+     */
+    public record Progress(String jobId,
+                           Status status,
+                           long linesRead,
+                           long skippedLines,
+                           long chunksStored,
+                           long committedLines,
+                           String error) {}
+}
@@ -0,0 +1,447 @@
+package dev.dong4j.ai.spring.ingest;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TextSplitter;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 流式批量导入流水线
+ *
+ * <p>NDJSON 源数据（每行一个 {@code {"id": ..., "text": ..., "metadata": {...}}}）按以下阶段导入：
+ * <pre>
+ * 解析 --[有界队列]--> 分块 --[有界队列]--> 攒批 + vectorStore.add（批量嵌入）
+ * </pre>
+ * 各阶段运行在独立的虚拟线程上，阶段之间是容量固定的阻塞队列：下游（嵌入调用）变慢时队列写满，
+ * 上游自然阻塞等待，内存占用只与队列容量和批大小有关，与源数据总量无关。
+ *
+ * <p>上传的数据先落盘到工作目录，请求线程不等待导入完成。每写入一批后把「已完整写入的源数据行数」
+ * 原子地写入检查点文件；任务失败或服务重启后可以按任务 id 续传，从检查点之后继续。
+ * 分块 id 由记录 id（或任务 id + 行号）和分块序号确定性生成，检查点所在行被部分写入时重复写入的分块会覆盖原值，
+ * 不会产生重复文档。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class IngestionPipeline implements DisposableBean {
+
+    /** 分块元数据中记录源数据行号的键 */
+    public static final String SOURCE_LINE_METADATA_KEY = "source_line";
+
+    private static final String SOURCE_SUFFIX = ".ndjson";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {};
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    private final VectorStore vectorStore;
+    private final ObjectMapper objectMapper;
+    private final TextSplitter splitter;
+    private final Path workDir;
+    private final int queueCapacity;
+    private final int batchSize;
+
+    /**
+     * 构造函数
+     *
+     * @param vectorStore 向量存储
+     * @param objectMapper JSON 解析器
+     * @param properties RAG 配置属性
+     */
+    @Autowired
+    public IngestionPipeline(VectorStore vectorStore, ObjectMapper objectMapper, RagProperties properties) {
+        this(vectorStore, objectMapper,
+                TokenTextSplitter.builder().withChunkSize(properties.ingest().chunkSize()).build(),
+                properties.ingest().workDir(), properties.ingest().queueCapacity(), properties.ingest().batchSize());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param vectorStore 向量存储
+     * @param objectMapper JSON 解析器
+     * @param splitter 分块器
+     * @param workDir 上传数据与检查点的工作目录
+     * @param queueCapacity 阶段之间队列的容量
+     * @param batchSize 每次写入向量存储（批量嵌入）的分块数
+     */
+    public IngestionPipeline(VectorStore vectorStore,
+                             ObjectMapper objectMapper,
+                             TextSplitter splitter,
+                             Path workDir,
+                             int queueCapacity,
+                             int batchSize) {
+        this.vectorStore = vectorStore;
+        this.objectMapper = objectMapper;
+        this.splitter = splitter;
+        this.workDir = workDir;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 提交导入任务：源数据落盘后在后台导入
+     *
+     * @param source NDJSON 源数据
+     * @return 任务初始进度
+     * @throws IOException 源数据落盘失败
+     */
+    public IngestionJob.Progress submit(InputStream source) throws IOException {
+        String jobId = UUID.randomUUID().toString();
+        Files.createDirectories(workDir);
+        Files.copy(source, sourceFile(jobId));
+        writeCheckpoint(jobId, 0L);
+        return start(jobId, 0L).progress();
+    }
+
+    /**
+     * 续传导入任务，任务仍在运行时直接返回当前进度
+     *
+     * @param jobId 任务 id
+     * @return 任务进度，任务不存在时为空
+     */
+    public Optional<IngestionJob.Progress> resume(String jobId) {
+        if (!isKnown(jobId)) {
+            return Optional.empty();
+        }
+        synchronized (jobs) {
+            IngestionJob job = jobs.get(jobId);
+            if (job == null || !job.isRunning()) {
+                job = start(jobId, readCheckpoint(jobId));
+            }
+            return Optional.of(job.progress());
+        }
+    }
+
+    /**
+     * 查询任务进度
+     *
+     * @param jobId 任务 id
+     * @return 任务进度，任务不存在时为空
+     */
+    public Optional<IngestionJob.Progress> progress(String jobId) {
+        IngestionJob job = jobs.get(jobId);
+        if (job != null) {
+            return Optional.of(job.progress());
+        }
+        if (!isKnown(jobId)) {
+            return Optional.empty();
+        }
+        long committed = readCheckpoint(jobId);
+        return Optional.of(new IngestionJob.Progress(
+                jobId, IngestionJob.Status.INTERRUPTED, committed, 0L, 0L, committed, null));
+    }
+
+    /**
+     * 在后台启动流水线
+     */
+    private IngestionJob start(String jobId, long committedLines) {
+        IngestionJob job = new IngestionJob(jobId, committedLines);
+        jobs.put(jobId, job);
+        executor.submit(() -> run(job));
+        return job;
+    }
+
+    /**
+     * 运行流水线：解析、分块各占一个虚拟线程，当前线程负责攒批写入
+     */
+    private void run(IngestionJob job) {
+        BlockingQueue<SourceRecord> records = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(queueCapacity);
+
+        Future<?> parser = executor.submit(() -> guard(job, () -> parse(job, records)));
+        Future<?> chunker = executor.submit(() -> guard(job, () -> chunk(job, records, chunks)));
+        try {
+            store(job, chunks);
+            if (!job.isFailed()) {
+                job.complete();
+                log.info("导入任务完成: {}", job.progress());
+            }
+        } catch (Exception e) {
+            job.fail(e);
+        } finally {
+            if (job.isFailed()) {
+                log.warn("导入任务失败，可通过任务 id 续传: {}", job.progress());
+                parser.cancel(true);
+                chunker.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * 解析阶段：逐行读取落盘的源数据，跳过检查点之前的行
+     *
+     * <p>读取失败时先标记任务失败再写入结束标记，让分块阶段退出，写入阶段看到结束标记时任务已是失败状态，
+     * 不会把检查点推进到失败行之后；被取消（中断）时下游已经停止消费，不再写入，
+     * 否则在写满的队列上会一直阻塞。
+     */
+    private void parse(IngestionJob job, BlockingQueue<SourceRecord> records) throws Exception {
+        long skip = job.committedLines();
+        long line = 0L;
+        try (BufferedReader reader = Files.newBufferedReader(sourceFile(job.id()), StandardCharsets.UTF_8)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (line <= skip) {
+                    continue;
+                }
+                job.lineRead();
+                SourceRecord record = parseLine(job, line, text);
+                if (record == null) {
+                    job.lineSkipped();
+                    continue;
+                }
+                records.put(record);
+            }
+        } catch (IOException | RuntimeException e) {
+            job.fail(e);
+            records.put(SourceRecord.end(line));
+            throw e;
+        }
+        records.put(SourceRecord.end(line));
+    }
+
+    /**
+     * 解析单行 NDJSON，格式错误或缺少文本时返回 null
+     */
+    private SourceRecord parseLine(IngestionJob job, long line, String text) {
+        if (text.isBlank()) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(text);
+            String content = node.path("text").asText("");
+            if (content.isBlank()) {
+                return null;
+            }
+            String id = node.hasNonNull("id") ? node.get("id").asText() : job.id() + ":" + line;
+            Map<String, Object> metadata = new HashMap<>();
+            if (node.path("metadata").isObject()) {
+                metadata.putAll(objectMapper.convertValue(node.get("metadata"), METADATA_TYPE));
+                // Document 不接受 null 元数据值
+                metadata.values().removeIf(Objects::isNull);
+            }
+            return new SourceRecord(id, content, metadata, line);
+        } catch (IOException e) {
+            log.debug("导入任务 {} 第 {} 行不是合法的 JSON: {}", job.id(), line, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 分块阶段：按 token 切分每条记录，为分块生成确定性 id
+     */
+    private void chunk(IngestionJob job, BlockingQueue<SourceRecord> records, BlockingQueue<Chunk> chunks)
+            throws InterruptedException {
+        try {
+            SourceRecord record;
+            while (!(record = records.take()).isEnd()) {
+                Document source = Document.builder().text(record.text()).metadata(record.metadata()).build();
+                List<Document> parts = splitter.split(source);
+                for (int i = 0; i < parts.size(); i++) {
+                    Document part = parts.get(i);
+                    Map<String, Object> metadata = new HashMap<>(part.getMetadata());
+                    metadata.put(SOURCE_LINE_METADATA_KEY, record.line());
+                    Document document = Document.builder()
+                            .id(chunkId(record.id(), i))
+                            .text(part.getText())
+                            .metadata(metadata)
+                            .build();
+                    chunks.put(new Chunk(document, record.line(), i == parts.size() - 1));
+                }
+            }
+            chunks.put(Chunk.end(record.line()));
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            job.fail(e);
+            chunks.put(Chunk.end(-1L));
+        }
+    }
+
+    /**
+     * 写入阶段：攒满一批后写入向量存储（一次批量嵌入调用），然后推进检查点
+     */
+    private void store(IngestionJob job, BlockingQueue<Chunk> chunks) throws InterruptedException {
+        List<Chunk> batch = new ArrayList<>(batchSize);
+        Chunk chunk;
+        while (!(chunk = chunks.take()).isEnd()) {
+            batch.add(chunk);
+            if (batch.size() >= batchSize) {
+                flush(job, batch);
+            }
+        }
+        if (job.isFailed()) {
+            return;
+        }
+        flush(job, batch);
+        // 所有行都已处理（含被跳过的行），检查点推进到源数据末尾
+        job.chunksStored(0, Math.max(job.committedLines(), chunk.line()));
+        writeCheckpoint(job.id(), job.committedLines());
+    }
+
+    /**
+     * 写入一批分块并推进检查点
+     */
+    private void flush(IngestionJob job, List<Chunk> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Document> documents = new ArrayList<>(batch.size());
+        for (Chunk chunk : batch) {
+            documents.add(chunk.document());
+        }
+        vectorStore.add(documents);
+
+        // 批次最后一个分块所在行如果还有分块未写入，该行不算完成
+        Chunk last = batch.getLast();
+        long committed = last.lastOfLine() ? last.line() : last.line() - 1;
+        job.chunksStored(documents.size(), Math.max(job.committedLines(), committed));
+        writeCheckpoint(job.id(), job.committedLines());
+        batch.clear();
+    }
+
+    /**
+     * 阶段线程异常时标记任务失败
+     */
+    private void guard(IngestionJob job, ThrowingRunnable stage) {
+        try {
+            stage.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            job.fail(e);
+        }
+    }
+
+    private boolean isKnown(String jobId) {
+        return isValidJobId(jobId) && Files.exists(sourceFile(jobId));
+    }
+
+    /**
+     * 任务 id 必须是 UUID，避免拼接出工作目录之外的路径
+     */
+    private static boolean isValidJobId(String jobId) {
+        try {
+            return UUID.fromString(jobId).toString().equals(jobId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String chunkId(String recordId, int index) {
+        return UUID.nameUUIDFromBytes((recordId + "#" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private Path sourceFile(String jobId) {
+        return workDir.resolve(jobId + SOURCE_SUFFIX);
+    }
+
+    private Path checkpointFile(String jobId) {
+        return workDir.resolve(jobId + CHECKPOINT_SUFFIX);
+    }
+
+    private long readCheckpoint(String jobId) {
+        try {
+            return Long.parseLong(Files.readString(checkpointFile(jobId)).trim());
+        } catch (IOException | NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换，避免进程中断时留下半截检查点
+     */
+    private void writeCheckpoint(String jobId, long committedLines) {
+        try {
+            Path tmp = workDir.resolve(jobId + CHECKPOINT_SUFFIX + ".tmp");
+            Files.writeString(tmp, Long.toString(committedLines));
+            Files.move(tmp, checkpointFile(jobId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 关闭流水线线程
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 可抛出受检异常的阶段任务
+     */
+    @FunctionalInterface
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    /**
+     * 解析后的源数据记录，text 为 null 表示数据结束
+     */
+    private record SourceRecord(String id, String text, Map<String, Object> metadata, long line) {
+
+        static SourceRecord end(long lastLine) {
+            return new SourceRecord(null, null, Map.of(), lastLine);
+        }
+
+        boolean isEnd() {
+            return text == null;
+        }
+    }
+
+    /**
+     * 待写入的分块，document 为 null 表示数据结束
+     */
+    private record Chunk(Document document, long line, boolean lastOfLine) {
+
+        static Chunk end(long lastLine) {
+            return new Chunk(null, lastLine, true);
+        }
+
+        boolean isEnd() {
+            return document == null;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package dev.dong4j.ai.spring.rerank;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.retrieval.KeywordTokenizer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 级联重排器
+ *
+ * <p>按代价从低到高依次尝试三个阶段：关键词覆盖率、向量检索分数、{@link LlmReranker}。每个阶段按自己的分数排序后，
+ * 计算第 topK 名与第 topK + 1 名之间的分差（边界分差），分差达到该阶段的阈值即说明 top-K 已经足够明确，
+ * 直接采用该阶段的结果，不再进入后面的阶段。只有前两个阶段都区分不开的「模糊」查询才调用 LLM 重排。
+ *
+ * <p>关键词覆盖率为查询词项（{@link KeywordTokenizer} 分词，去重）在文档中出现的比例，取值 0 到 1；
+ * 向量分数直接使用检索返回的余弦相似度。候选不超过 topK 时没有需要取舍的文档，按向量分数排序返回。
+ *
+ * <p>每次判定计入 {@code rag.rerank.cascade} 指标（标签 {@code stage=lexical|vector|llm}，
+ * {@code decision=accept|escalate}），各阶段的边界分差计入 {@code rag.rerank.cascade.margin} 分布。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class CascadeReranker {
+
+    /** 判定指标名 */
+    public static final String METRIC_NAME = "rag.rerank.cascade";
+
+    /** 重排结果中记录最终采用阶段的元数据键 */
+    public static final String STAGE_METADATA_KEY = "cascade_stage";
+
+    private final LlmReranker llmReranker;
+    private final double lexicalMargin;
+    private final double vectorMargin;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 构造函数
+     *
+     * @param llmReranker LLM 重排器
+     * @param properties RAG 配置属性
+     * @param meterRegistry 指标注册表
+     */
+    @Autowired
+    public CascadeReranker(LlmReranker llmReranker, RagProperties properties, MeterRegistry meterRegistry) {
+        this(llmReranker, properties.cascade().lexicalMargin(), properties.cascade().vectorMargin(), meterRegistry);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param llmReranker LLM 重排器
+     * @param lexicalMargin 关键词阶段提前结束所需的边界分差
+     * @param vectorMargin 向量阶段提前结束所需的边界分差
+     * @param meterRegistry 指标注册表
+     */
+    public CascadeReranker(LlmReranker llmReranker,
+                           double lexicalMargin,
+                           double vectorMargin,
+                           MeterRegistry meterRegistry) {
+        this.llmReranker = llmReranker;
+        this.lexicalMargin = lexicalMargin;
+        this.vectorMargin = vectorMargin;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 对候选文档做级联重排
+     *
+     * @param query 用户查询
+     * @param candidates 候选文档，score 为向量检索分数
+     * @param topK 返回的文档数量
+     * @return 按采用阶段的分数降序排列的文档，采用的阶段写入 {@link #STAGE_METADATA_KEY} 元数据
+     */
+    public List<Document> rerank(String query, List<Document> candidates, int topK) {
+        if (topK <= 0) {
+            return List.of();
+        }
+        double[] vectorScores = new double[candidates.size()];
+        for (int i = 0; i < candidates.size(); i++) {
+            Double score = candidates.get(i).getScore();
+            vectorScores[i] = score != null ? score : 0.0;
+        }
+        if (candidates.size() <= topK) {
+            record(Stage.VECTOR, Decision.ACCEPT);
+            return top(candidates, vectorScores, topK, Stage.VECTOR);
+        }
+
+        double[] lexicalScores = lexicalScores(query, candidates);
+        if (accept(Stage.LEXICAL, lexicalScores, topK, lexicalMargin)) {
+            return top(candidates, lexicalScores, topK, Stage.LEXICAL);
+        }
+        if (accept(Stage.VECTOR, vectorScores, topK, vectorMargin)) {
+            return top(candidates, vectorScores, topK, Stage.VECTOR);
+        }
+
+        record(Stage.LLM, Decision.ACCEPT);
+        List<Document> reranked = llmReranker.rerank(query, candidates, topK);
+        reranked.forEach(doc -> doc.getMetadata().put(STAGE_METADATA_KEY, Stage.LLM.tag));
+        return reranked;
+    }
+
+    /**
+     * 计算边界分差并记录判定
+     *
+     * @return 分差达到阈值时返回 true
+     */
+    private boolean accept(Stage stage, double[] scores, int topK, double threshold) {
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        // 升序数组中第 topK 名位于 n - topK，第 topK + 1 名位于 n - topK - 1
+        double margin = sorted[sorted.length - topK] - sorted[sorted.length - topK - 1];
+        DistributionSummary.builder(METRIC_NAME + ".margin").tag("stage", stage.tag).register(meterRegistry)
+                .record(margin);
+        boolean accepted = margin >= threshold;
+        record(stage, accepted ? Decision.ACCEPT : Decision.ESCALATE);
+        return accepted;
+    }
+
+    private void record(Stage stage, Decision decision) {
+        Counter.builder(METRIC_NAME).tag("stage", stage.tag).tag("decision", decision.tag).register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * 查询词项在各候选文档中的覆盖率
+     */
+    private static double[] lexicalScores(String query, List<Document> candidates) {
+        Set<String> terms = new HashSet<>(KeywordTokenizer.tokenize(query));
+        double[] scores = new double[candidates.size()];
+        if (terms.isEmpty()) {
+            return scores;
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            Set<String> tokens = new HashSet<>(KeywordTokenizer.tokenize(candidates.get(i).getText()));
+            int matched = 0;
+            for (String term : terms) {
+                if (tokens.contains(term)) {
+                    matched++;
+                }
+            }
+            scores[i] = matched / (double) terms.size();
+        }
+        return scores;
+    }
+
+    /**
+     * 按分数降序取前 topK 个文档，分数写入 score
+     */
+    private static List<Document> top(List<Document> candidates, double[] scores, int topK, Stage stage) {
+        List<Integer> order = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+
+        List<Document> result = new ArrayList<>(Math.min(topK, order.size()));
+        for (int i : order.subList(0, Math.min(topK, order.size()))) {
+            Document reranked = candidates.get(i).mutate().score(scores[i]).build();
+            reranked.getMetadata().put(STAGE_METADATA_KEY, stage.tag);
+            result.add(reranked);
+        }
+        return result;
+    }
+
+    /**
+     * 级联阶段
+     */
+    private enum Stage {
+        LEXICAL("lexical"), VECTOR("vector"), LLM("llm");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    /**
+     * 阶段判定结果
+     */
+    private enum Decision {
+        ACCEPT("accept"), ESCALATE("escalate");
+
+        private final String tag;
+
+        Decision(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package dev.dong4j.ai.spring.rerank;
+
+import dev.dong4j.ai.spring.cache.LruCache;
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * 基于 LLM 的窗口化重排器
+ *
+ * <p>候选文档按固定大小切分为多个窗口，每个窗口一次 LLM 调用，各窗口在
+ * {@link RecallExecutor} 上并行打分并共用同一个截止时间，因此重排延迟约等于单个窗口的耗时，
+ * 不随候选数量线性增长，也不会因为候选过多撑爆上下文窗口。
+ *
+ * <p>打分结果通过结构化输出解析，(查询, 文档内容指纹) 维度的分数写入有界 LRU 缓存，
+ * 重复的查询和文档不再调用 LLM；以内容指纹（见 {@link DocumentDeduplicator#keyOf(Document)}）而非 id 为键，
+ * 文档内容更新后旧分数自然失效，不同 id 的相同内容共用分数。
+ *
+ * <p>重排有截止时间（{@code rag.rerank.window-timeout}），慢的 LLM 不会拖垮 RAG 接口的延迟：
+ * 只要有候选在截止时间内没有拿到 LLM 分数（窗口超时、调用失败或漏评），整批结果回退为按原始检索分数排序，
+ * 不把 LLM 分数与检索分数混在一起比较；按时返回的分数仍写入缓存，下次同样的查询可直接命中。
+ * 每次重排的结果记为 {@link Outcome#RERANKED} 或 {@link Outcome#FALLBACK}，写入 {@link #OUTCOME_METADATA_KEY}
+ * 元数据并计入 {@code rag.rerank.outcome} 指标（标签 {@code outcome=reranked|fallback}）。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class LlmReranker {
+
+    /** 重排结果中记录重排分数的元数据键 */
+    public static final String SCORE_METADATA_KEY = "rerank_score";
+
+    /** 重排结果中记录重排结果类型的元数据键 */
+    public static final String OUTCOME_METADATA_KEY = "rerank_outcome";
+
+    /** 重排结果指标名 */
+    public static final String METRIC_NAME = "rag.rerank.outcome";
+
+    private static final String SCORING_PROMPT = """
+            你是检索结果的相关性评估器。请判断下面每个候选文档与查询的相关程度，
+            给出 0 到 1 之间的分数，1 表示完全相关，0 表示完全无关。
+
+            查询: %s
+
+            候选文档:
+            %s
+            为每个候选文档返回一条评分，index 为候选文档方括号中的编号。
+            """;
+
+    private final ChatClient chatClient;
+    private final RecallExecutor executor;
+    private final int windowSize;
+    private final Duration windowTimeout;
+    private final LruCache<ScoreKey, Double> scoreCache;
+    private final Counter rerankedCounter;
+    private final Counter fallbackCounter;
+
+    /**
+     * 构造函数
+     *
+     * @param chatClient 聊天客户端
+     * @param executor 并行执行器
+     * @param properties RAG 配置属性
+     * @param meterRegistry 指标注册表
+     */
+    @Autowired
+    public LlmReranker(ChatClient chatClient,
+                       RecallExecutor executor,
+                       RagProperties properties,
+                       MeterRegistry meterRegistry) {
+        this(chatClient, executor, properties.rerank().windowSize(), properties.rerank().windowTimeout(),
+                properties.rerank().cacheSize(), meterRegistry);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param chatClient 聊天客户端
+     * @param executor 并行执行器
+     * @param windowSize 每个窗口的候选文档数
+     * @param windowTimeout 重排截止时间，所有窗口共用
+     * @param cacheSize 打分缓存容量
+     * @param meterRegistry 指标注册表
+     */
+    public LlmReranker(ChatClient chatClient,
+                       RecallExecutor executor,
+                       int windowSize,
+                       Duration windowTimeout,
+                       int cacheSize,
+                       MeterRegistry meterRegistry) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("重排窗口大小必须大于 0");
+        }
+        this.chatClient = chatClient;
+        this.executor = executor;
+        this.windowSize = windowSize;
+        this.windowTimeout = windowTimeout;
+        this.scoreCache = new LruCache<>(cacheSize);
+        this.rerankedCounter = Counter.builder(METRIC_NAME).tag("outcome", "reranked").register(meterRegistry);
+        this.fallbackCounter = Counter.builder(METRIC_NAME).tag("outcome", "fallback").register(meterRegistry);
+    }
+
+    /**
+     * 对候选文档重排
+     *
+     * @param query 用户查询
+     * @param candidates 候选文档
+     * @param topK 返回的文档数量
+     * @return 按重排分数（回退时为原始检索分数）降序排列的文档，分数同时写入 score 和 {@link #SCORE_METADATA_KEY} 元数据，
+     *         结果类型写入 {@link #OUTCOME_METADATA_KEY} 元数据
+     */
+    public List<Document> rerank(String query, List<Document> candidates, int topK) {
+        double[] scores = new double[candidates.size()];
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Double cached = scoreCache.get(new ScoreKey(query, DocumentDeduplicator.keyOf(candidates.get(i))));
+            if (cached != null) {
+                scores[i] = cached;
+            } else {
+                pending.add(i);
+            }
+        }
+
+        Outcome outcome = Outcome.RERANKED;
+        if (!pending.isEmpty() && !scoreWindows(query, candidates, pending, scores)) {
+            outcome = Outcome.FALLBACK;
+            for (int i = 0; i < candidates.size(); i++) {
+                scores[i] = fallbackScore(candidates.get(i));
+            }
+        }
+        (outcome == Outcome.RERANKED ? rerankedCounter : fallbackCounter).increment();
+
+        List<Integer> order = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> scores[i]).reversed());
+
+        List<Document> result = new ArrayList<>(Math.min(topK, order.size()));
+        for (int i : order.subList(0, Math.min(topK, order.size()))) {
+            Document reranked = candidates.get(i).mutate().score(scores[i]).build();
+            reranked.getMetadata().put(SCORE_METADATA_KEY, scores[i]);
+            reranked.getMetadata().put(OUTCOME_METADATA_KEY, outcome.name());
+            result.add(reranked);
+        }
+        return result;
+    }
+
+    /**
+     * 将未命中缓存的候选切分为窗口并行打分，打分成功的结果写入 scores 和缓存
+     *
+     * @return 所有候选都在截止时间内拿到分数时返回 true
+     */
+    private boolean scoreWindows(String query, List<Document> candidates, List<Integer> pending, double[] scores) {
+        List<List<Integer>> windows = new ArrayList<>();
+        List<Callable<WindowScores>> tasks = new ArrayList<>();
+        for (int from = 0; from < pending.size(); from += windowSize) {
+            List<Integer> window = pending.subList(from, Math.min(from + windowSize, pending.size()));
+            windows.add(window);
+            tasks.add(() -> scoreWindow(query, candidates, window));
+        }
+
+        List<RecallExecutor.Outcome<WindowScores>> outcomes = executor.fanOut(tasks, windowTimeout);
+
+        boolean[] scored = new boolean[candidates.size()];
+        for (int w = 0; w < windows.size(); w++) {
+            WindowScores windowScores = outcomes.get(w).value();
+            if (windowScores == null || windowScores.scores() == null) {
+                continue;
+            }
+            List<Integer> window = windows.get(w);
+            for (DocumentScore documentScore : windowScores.scores()) {
+                if (documentScore.index() < 0 || documentScore.index() >= window.size()) {
+                    continue;
+                }
+                int candidate = window.get(documentScore.index());
+                double score = Math.clamp(documentScore.score(), 0.0, 1.0);
+                scores[candidate] = score;
+                scoreCache.put(new ScoreKey(query, DocumentDeduplicator.keyOf(candidates.get(candidate))), score);
+                scored[candidate] = true;
+            }
+        }
+        return pending.stream().allMatch(i -> scored[i]);
+    }
+
+    /**
+     * 调用 LLM 为单个窗口内的候选文档打分
+     */
+    private WindowScores scoreWindow(String query, List<Document> candidates, List<Integer> window) {
+        StringBuilder docs = new StringBuilder();
+        for (int i = 0; i < window.size(); i++) {
+            docs.append('[').append(i).append("] ").append(candidates.get(window.get(i)).getText()).append('\n');
+        }
+        return chatClient.prompt()
+                .user(SCORING_PROMPT.formatted(query, docs))
+                .call()
+                .entity(WindowScores.class);
+    }
+
+    /**
+     * LLM 未给出分数时使用原始检索分数
+     */
+    private static double fallbackScore(Document doc) {
+        return doc.getScore() != null ? doc.getScore() : 0.0;
+    }
+
+    /**
+     * 重排结果类型
+     */
+    public enum Outcome {
+        /** 所有候选都拿到了 LLM 分数 */
+        RERANKED,
+        /** 截止时间内未完成打分，按原始检索分数排序 */
+        FALLBACK
+    }
+
+    /**
+     * 打分缓存的键
+     */
+    private record ScoreKey(String query, long fingerprint) {}
+
+    /**
+     * 单个窗口的结构化打分结果
+     *
+     * @param scores 窗口内各候选文档的分数
+     */
+    record WindowScores(List<DocumentScore> scores) {}
+
+    /**
+     * 单个候选文档的分数
+     *
+     * @param index 候选文档在窗口内的编号
+     * @param score 相关性分数，0 到 1
+     */
+    record DocumentScore(int index, double score) {}
+}
@@ -0,0 +1,176 @@
+package dev.dong4j.ai.spring.rerank;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.vectorstore.VectorLookup;
+
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于嵌入向量的 MMR（Maximal Marginal Relevance）多样性选择器
+ *
+ * <p>每一步选出 mmr(d) = λ · rel(d) - (1 - λ) · max sim(d, 已选) 最大的候选。
+ * 相关性 rel 直接使用候选文档的检索分数，相似度 sim 为入库向量的余弦相似度。
+ *
+ * <p>实现要点：
+ * - 候选向量归一化后平铺在一个 float 数组中，余弦相似度退化为点积
+ * - 为每个候选维护「与已选集合的最大相似度」数组，每选中一个文档只需对剩余候选做一次点积扫描并更新该数组，
+ *   选择 k 个文档共 O(k · n · d)，不会重复计算已选文档之间的相似度
+ * - 点积循环使用多个独立累加器，便于 JIT 展开和流水线化
+ *
+ * <p>没有入库向量的候选按零向量处理，即不受多样性惩罚，只按相关性参与选择。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class MmrSelector {
+
+    /** 选择结果中记录 MMR 分数的元数据键 */
+    public static final String SCORE_METADATA_KEY = "mmr_score";
+
+    private final VectorLookup vectorLookup;
+    private final double lambda;
+
+    /**
+     * 构造函数
+     *
+     * @param vectorLookup 入库向量读取接口
+     * @param properties RAG 配置属性
+     */
+    @Autowired
+    public MmrSelector(VectorLookup vectorLookup, RagProperties properties) {
+        this(vectorLookup, properties.mmr().lambda());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param vectorLookup 入库向量读取接口
+     * @param lambda 相关性权重，1 表示只看相关性，0 表示只看多样性
+     */
+    public MmrSelector(VectorLookup vectorLookup, double lambda) {
+        this.vectorLookup = vectorLookup;
+        this.lambda = lambda;
+    }
+
+    /**
+     * 从候选文档中按 MMR 依次选出 k 个文档
+     *
+     * @param candidates 候选文档，score 为检索相关性
+     * @param k 选择数量
+     * @return 按选中顺序排列的文档，MMR 分数写入 {@link #SCORE_METADATA_KEY} 元数据
+     */
+    public List<Document> select(List<Document> candidates, int k) {
+        int n = candidates.size();
+        int limit = Math.min(k, n);
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        float[] vectors = null;
+        int dimensions = 0;
+        for (int i = 0; i < n; i++) {
+            float[] embedding = vectorLookup.findEmbedding(candidates.get(i).getId());
+            if (embedding == null) {
+                continue;
+            }
+            if (vectors == null) {
+                dimensions = embedding.length;
+                vectors = new float[n * dimensions];
+            }
+            if (embedding.length == dimensions) {
+                normalizeInto(embedding, vectors, i * dimensions);
+            }
+        }
+
+        float[] relevance = new float[n];
+        for (int i = 0; i < n; i++) {
+            Double score = candidates.get(i).getScore();
+            relevance[i] = score != null ? score.floatValue() : 0f;
+        }
+
+        float[] maxSimilarity = new float[n];
+        boolean[] selected = new boolean[n];
+        List<Document> result = new ArrayList<>(limit);
+
+        for (int step = 0; step < limit; step++) {
+            int best = -1;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                float mmr = (float) (lambda * relevance[i] - (1 - lambda) * maxSimilarity[i]);
+                if (mmr > bestScore) {
+                    bestScore = mmr;
+                    best = i;
+                }
+            }
+
+            selected[best] = true;
+            Document chosen = candidates.get(best).mutate().build();
+            chosen.getMetadata().put(SCORE_METADATA_KEY, (double) bestScore);
+            result.add(chosen);
+
+            // 只对剩余候选做一次扫描，更新各自与已选集合的最大相似度
+            if (vectors != null && step + 1 < limit) {
+                int chosenOffset = best * dimensions;
+                for (int i = 0; i < n; i++) {
+                    if (!selected[i]) {
+                        float similarity = dot(vectors, chosenOffset, i * dimensions, dimensions);
+                        if (similarity > maxSimilarity[i]) {
+                            maxSimilarity[i] = similarity;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 将向量归一化后写入平铺数组的指定位置，零向量保持为零
+     */
+    private static void normalizeInto(float[] source, float[] target, int offset) {
+        double norm = 0;
+        for (float value : source) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < source.length; i++) {
+            target[offset + i] = source[i] * scale;
+        }
+    }
+
+    /**
+     * 平铺数组中两个向量的点积，四路累加以减少循环携带依赖
+     */
+    private static float dot(float[] vectors, int a, int b, int dimensions) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int bound = dimensions - 3; i < bound; i += 4) {
+            s0 += vectors[a + i] * vectors[b + i];
+            s1 += vectors[a + i + 1] * vectors[b + i + 1];
+            s2 += vectors[a + i + 2] * vectors[b + i + 2];
+            s3 += vectors[a + i + 3] * vectors[b + i + 3];
+        }
+        for (; i < dimensions; i++) {
+            s0 += vectors[a + i] * vectors[b + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
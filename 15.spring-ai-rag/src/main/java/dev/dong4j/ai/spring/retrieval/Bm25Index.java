@@ -0,0 +1,555 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * BM25 关键词倒排索引
+ *
+ * <p>作为向量检索之外的第二路召回通道，弥补向量检索对专有名词、精确关键词不敏感的问题。
+ * 检索过程只访问内存中的倒排表，不调用嵌入模型。
+ *
+ * <p>实现要点：
+ * - 每个词项的倒排表使用原生 int 数组保存文档序号和词频，避免装箱
+ * - 文档以递增序号存储，删除时只打墓碑标记并扣减统计量，查询时跳过；{@link #compact()} 重排序号并回收墓碑
+ * - 写操作（新增/删除）互斥，读操作（检索）可并发；压缩在锁外构建新索引，只在最后替换时短暂持有写锁
+ *
+ * <p>打分公式：
+ * score(q, d) = Σ idf(t) · tf · (k1 + 1) / (tf + k1 · (1 - b + b · |d| / avgdl))，
+ * 其中 idf(t) = ln(1 + (N - df + 0.5) / (df + 0.5))。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class Bm25Index {
+
+    /** 检索结果中记录 BM25 分数的元数据键 */
+    public static final String SCORE_METADATA_KEY = "bm25_score";
+
+    /** 压缩时每次在读锁内复制的文档数或词项数 */
+    private static final int COMPACTION_CHUNK = 1024;
+    /** 剩余未复制的文档不超过该值时获取写锁补齐 */
+    private static final int COMPACTION_CATCH_UP = 64;
+
+    private final float k1;
+    private final float b;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<String, Postings> postings = new HashMap<>();
+    private Map<String, Integer> ordinalById = new HashMap<>();
+
+    private Document[] documents = new Document[64];
+    private int[] docLengths = new int[64];
+    private boolean[] deleted = new boolean[64];
+    private int size;
+    private int liveCount;
+    private long totalLength;
+
+    /**
+     * 构造函数
+     *
+     * @param properties RAG 配置属性
+     */
+    @Autowired
+    public Bm25Index(RagProperties properties) {
+        this(properties.bm25().k1(), properties.bm25().b());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param k1 词频饱和参数
+     * @param b 文档长度归一化参数
+     */
+    public Bm25Index(float k1, float b) {
+        this.k1 = k1;
+        this.b = b;
+    }
+
+    /**
+     * 增量添加文档，已存在相同 id 的文档会被替换
+     *
+     * @param docs 待索引文档
+     */
+    public void add(List<Document> docs) {
+        lock.writeLock().lock();
+        try {
+            for (Document doc : docs) {
+                if (doc.getText() == null) {
+                    continue;
+                }
+                Integer previous = ordinalById.get(doc.getId());
+                if (previous != null) {
+                    removeOrdinal(previous);
+                }
+                addDocument(doc);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按 id 删除文档
+     *
+     * @param ids 文档 id 列表
+     */
+    public void remove(Collection<String> ids) {
+        lock.writeLock().lock();
+        try {
+            for (String id : ids) {
+                Integer ordinal = ordinalById.remove(id);
+                if (ordinal != null) {
+                    removeOrdinal(ordinal);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 关键词检索
+     *
+     * @param query 查询语句
+     * @param topK 返回的文档数量
+     * @return 按 BM25 分数降序排列的文档，分数同时写入 score 和 {@link #SCORE_METADATA_KEY} 元数据
+     */
+    public List<Document> search(String query, int topK) {
+        LinkedHashSet<String> terms = new LinkedHashSet<>(KeywordTokenizer.tokenize(query));
+        if (terms.isEmpty() || topK <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (liveCount == 0) {
+                return List.of();
+            }
+
+            float avgDocLength = (float) totalLength / liveCount;
+            float[] scores = new float[size];
+            int[] touched = new int[16];
+            int touchedCount = 0;
+
+            for (String term : terms) {
+                Postings termPostings = postings.get(term);
+                if (termPostings == null || termPostings.live == 0) {
+                    continue;
+                }
+                float idf = (float) Math.log(1.0 + (liveCount - termPostings.live + 0.5) / (termPostings.live + 0.5));
+                for (int i = 0; i < termPostings.size; i++) {
+                    int ordinal = termPostings.docs[i];
+                    if (deleted[ordinal]) {
+                        continue;
+                    }
+                    int tf = termPostings.freqs[i];
+                    float norm = k1 * (1 - b + b * docLengths[ordinal] / avgDocLength);
+                    if (scores[ordinal] == 0f) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = ordinal;
+                    }
+                    scores[ordinal] += idf * tf * (k1 + 1) / (tf + norm);
+                }
+            }
+
+            return topDocuments(scores, touched, touchedCount, topK);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 回收已删除文档：存活文档按原顺序重新分配连续序号，倒排表去掉已删除的条目，不再有存活文档的词项整体移除
+     *
+     * <p>新索引在锁外构建：先分块在读锁内复制文档和倒排表，按新序号改写，期间的检索和写入照常进行；
+     * 构建期间追加的文档分块分词补入，剩余不多时获取写锁补齐最后几个文档、补上构建期间的删除，然后替换引用。
+     * 已有文档只重映射序号，不重新分词。压缩后检索时的打分数组大小回到存活文档数。
+     *
+     * @return 回收的文档数
+     */
+    public int compact() {
+        Map<String, Postings> source;
+        List<String> terms;
+        int snapshotSize;
+        lock.readLock().lock();
+        try {
+            if (size == liveCount) {
+                return 0;
+            }
+            source = postings;
+            terms = new ArrayList<>(postings.keySet());
+            snapshotSize = size;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Compaction compaction = new Compaction(new Bm25Index(k1, b), snapshotSize);
+        // 快照内的文档：只复制引用和长度
+        while (compaction.copied < snapshotSize) {
+            lock.readLock().lock();
+            try {
+                if (postings != source) {
+                    return 0;
+                }
+                int to = Math.min(snapshotSize, compaction.copied + COMPACTION_CHUNK);
+                for (int ordinal = compaction.copied; ordinal < to; ordinal++) {
+                    if (!deleted[ordinal]) {
+                        compaction.copy(ordinal, documents[ordinal], docLengths[ordinal]);
+                    }
+                }
+                compaction.copied = to;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // 快照内的倒排条目：序号递增，复制快照边界之前的前缀，锁外按新序号改写
+        for (int from = 0; from < terms.size(); from += COMPACTION_CHUNK) {
+            List<String> chunk = terms.subList(from, Math.min(terms.size(), from + COMPACTION_CHUNK));
+            List<int[][]> copies = new ArrayList<>(chunk.size());
+            lock.readLock().lock();
+            try {
+                if (postings != source) {
+                    return 0;
+                }
+                for (String term : chunk) {
+                    copies.add(postings.get(term).prefix(snapshotSize));
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                compaction.remapPostings(chunk.get(i), copies.get(i)[0], copies.get(i)[1]);
+            }
+        }
+
+        // 构建期间追加的文档：读锁内取文档，锁外分词写入
+        while (true) {
+            List<Integer> ordinals = new ArrayList<>();
+            List<Document> docs = new ArrayList<>();
+            lock.readLock().lock();
+            try {
+                if (postings != source) {
+                    return 0;
+                }
+                if (size - compaction.copied <= COMPACTION_CATCH_UP) {
+                    break;
+                }
+                int to = Math.min(size, compaction.copied + COMPACTION_CHUNK);
+                for (int ordinal = compaction.copied; ordinal < to; ordinal++) {
+                    if (!deleted[ordinal]) {
+                        ordinals.add(ordinal);
+                        docs.add(documents[ordinal]);
+                    }
+                }
+                compaction.copied = to;
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (int i = 0; i < ordinals.size(); i++) {
+                compaction.insert(ordinals.get(i), docs.get(i));
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (postings != source) {
+                return 0;
+            }
+            for (int ordinal = compaction.copied; ordinal < size; ordinal++) {
+                if (!deleted[ordinal]) {
+                    compaction.insert(ordinal, documents[ordinal]);
+                }
+            }
+            compaction.copied = size;
+            // 构建期间被删除或被同 id 替换的文档
+            for (int ordinal = 0; ordinal < size; ordinal++) {
+                if (deleted[ordinal]) {
+                    compaction.delete(ordinal);
+                }
+            }
+            Bm25Index target = compaction.target;
+            int reclaimed = size - target.size;
+            postings = target.postings;
+            ordinalById = target.ordinalById;
+            documents = target.documents;
+            docLengths = target.docLengths;
+            deleted = target.deleted;
+            size = target.size;
+            liveCount = target.liveCount;
+            totalLength = target.totalLength;
+            return reclaimed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 当前索引中的有效文档数
+     *
+     * @return 文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 为新文档分配序号并写入倒排表
+     */
+    private void addDocument(Document doc) {
+        List<String> tokens = KeywordTokenizer.tokenize(doc.getText());
+        Map<String, Integer> termFreqs = new HashMap<>();
+        for (String token : tokens) {
+            termFreqs.merge(token, 1, Integer::sum);
+        }
+
+        int ordinal = appendDocument(doc, tokens.size());
+        for (Map.Entry<String, Integer> entry : termFreqs.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), key -> new Postings()).add(ordinal, entry.getValue());
+        }
+    }
+
+    /**
+     * 为文档分配序号并累加统计量，不写入倒排表
+     */
+    private int appendDocument(Document doc, int length) {
+        int ordinal = size++;
+        if (ordinal == documents.length) {
+            int capacity = documents.length * 2;
+            documents = Arrays.copyOf(documents, capacity);
+            docLengths = Arrays.copyOf(docLengths, capacity);
+            deleted = Arrays.copyOf(deleted, capacity);
+        }
+        documents[ordinal] = doc;
+        docLengths[ordinal] = length;
+        ordinalById.put(doc.getId(), ordinal);
+        liveCount++;
+        totalLength += length;
+        return ordinal;
+    }
+
+    /**
+     * 打墓碑标记并扣减文档频率等统计量
+     */
+    private void removeOrdinal(int ordinal) {
+        if (deleted[ordinal]) {
+            return;
+        }
+        deleted[ordinal] = true;
+        liveCount--;
+        totalLength -= docLengths[ordinal];
+        for (String term : new LinkedHashSet<>(KeywordTokenizer.tokenize(documents[ordinal].getText()))) {
+            Postings termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.live--;
+            }
+        }
+        documents[ordinal] = null;
+    }
+
+    /**
+     * 使用大小为 topK 的最小堆选出得分最高的文档
+     */
+    private List<Document> topDocuments(float[] scores, int[] touched, int touchedCount, int topK) {
+        int capacity = Math.min(topK, touchedCount);
+        int[] heapDocs = new int[capacity];
+        float[] heapScores = new float[capacity];
+        int heapSize = 0;
+
+        for (int i = 0; i < touchedCount; i++) {
+            int ordinal = touched[i];
+            float score = scores[ordinal];
+            if (heapSize < capacity) {
+                heapDocs[heapSize] = ordinal;
+                heapScores[heapSize] = score;
+                siftUp(heapDocs, heapScores, heapSize++);
+            } else if (score > heapScores[0]) {
+                heapDocs[0] = ordinal;
+                heapScores[0] = score;
+                siftDown(heapDocs, heapScores, heapSize);
+            }
+        }
+
+        // 依次弹出堆顶（当前最小值），从后往前填充即为降序
+        Document[] result = new Document[heapSize];
+        for (int n = heapSize; n > 0; n--) {
+            Document source = documents[heapDocs[0]];
+            float score = heapScores[0];
+            Document hit = Document.builder()
+                    .id(source.getId())
+                    .text(source.getText())
+                    .metadata(source.getMetadata())
+                    .score((double) score)
+                    .build();
+            hit.getMetadata().put(SCORE_METADATA_KEY, score);
+            result[n - 1] = hit;
+
+            heapDocs[0] = heapDocs[n - 1];
+            heapScores[0] = heapScores[n - 1];
+            siftDown(heapDocs, heapScores, n - 1);
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * 一次压缩中正在构建的新索引及旧序号到新序号的映射
+     */
+    private static final class Compaction {
+
+        private final Bm25Index target;
+        /** 旧序号 → 新序号，未复制的旧序号为 -1 */
+        private int[] remap;
+        /** 旧索引中已处理到的序号 */
+        private int copied;
+
+        private Compaction(Bm25Index target, int capacity) {
+            this.target = target;
+            this.remap = new int[Math.max(1, capacity)];
+            Arrays.fill(remap, -1);
+        }
+
+        /**
+         * 复制快照内的文档，倒排条目随后由 {@link #remapPostings} 补上
+         */
+        private void copy(int source, Document doc, int length) {
+            remap[source] = target.appendDocument(doc, length);
+        }
+
+        /**
+         * 按新序号改写快照内的倒排条目，去掉已删除的文档
+         */
+        private void remapPostings(String term, int[] docs, int[] freqs) {
+            Postings termPostings = null;
+            for (int i = 0; i < docs.length; i++) {
+                int ordinal = remap[docs[i]];
+                if (ordinal < 0) {
+                    continue;
+                }
+                if (termPostings == null) {
+                    termPostings = target.postings.computeIfAbsent(term, key -> new Postings());
+                }
+                termPostings.add(ordinal, freqs[i]);
+            }
+        }
+
+        /**
+         * 分词写入构建期间追加的文档
+         */
+        private void insert(int source, Document doc) {
+            if (source >= remap.length) {
+                int length = remap.length;
+                remap = Arrays.copyOf(remap, Math.max(source + 1, length * 2));
+                Arrays.fill(remap, length, remap.length, -1);
+            }
+            remap[source] = target.size;
+            target.addDocument(doc);
+        }
+
+        private void delete(int source) {
+            if (source >= remap.length || remap[source] < 0) {
+                return;
+            }
+            int ordinal = remap[source];
+            if (target.deleted[ordinal]) {
+                return;
+            }
+            target.ordinalById.remove(target.documents[ordinal].getId(), ordinal);
+            target.removeOrdinal(ordinal);
+        }
+    }
+
+    private static void siftUp(int[] docs, float[] scores, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                break;
+            }
+            swap(docs, scores, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] docs, float[] scores, int size) {
+        int index = 0;
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                break;
+            }
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[index] <= scores[smallest]) {
+                break;
+            }
+            swap(docs, scores, index, smallest);
+            index = smallest;
+        }
+    }
+
+    private static void swap(int[] docs, float[] scores, int i, int j) {
+        int doc = docs[i];
+        docs[i] = docs[j];
+        docs[j] = doc;
+        float score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    /**
+     * 单个词项的倒排表：文档序号与词频并列存放在原生 int 数组中
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int[] freqs = new int[4];
+        private int size;
+        /** 未被删除的文档数，即文档频率 df */
+        private int live;
+
+        private void add(int ordinal, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = ordinal;
+            freqs[size] = freq;
+            size++;
+            live++;
+        }
+
+        /**
+         * 复制序号小于 limit 的条目，条目按序号递增排列，即复制一个前缀
+         *
+         * @return 文档序号数组和词频数组
+         */
+        private int[][] prefix(int limit) {
+            int length = 0;
+            while (length < size && docs[length] < limit) {
+                length++;
+            }
+            return new int[][] {Arrays.copyOf(docs, length), Arrays.copyOf(freqs, length)};
+        }
+    }
+}
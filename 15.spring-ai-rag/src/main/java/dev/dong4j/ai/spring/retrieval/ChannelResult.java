@@ -0,0 +1,33 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 单个召回通道的执行结果
+ *
+ * <p>超时或失败的通道 documents 为空列表，调用方可以直接参与融合而无需判空。
+ *
+ * @param name 通道名称
+ * @param documents 检索到的文档
+ * @param status 执行状态
+ * @param elapsedMillis 通道耗时（毫秒），超时的通道记为截止时间
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public record ChannelResult(String name, List<Document> documents, RecallExecutor.Status status, long elapsedMillis) {
+
+    /**
+     * 提取各通道的文档列表，保持通道顺序
+     *
+     * @param results 通道结果
+     * @return 各通道的文档列表
+     */
+    public static List<List<Document>> documentsOf(List<ChannelResult> results) {
+        return results.stream().map(ChannelResult::documents).toList();
+    }
+}
@@ -0,0 +1,109 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import org.springframework.ai.document.ContentFormatter;
+import org.springframework.ai.document.DefaultContentFormatter;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文档去重工具
+ *
+ * <p>以 64 位内容指纹作为文档身份：入库时计算一次并写入 {@link #FINGERPRINT_METADATA_KEY} 元数据，
+ * 检索结果会带回该元数据，去重时只需比较 long 值，不再对全文重复计算哈希或保留全文副本。
+ * 缺少指纹的文档（例如未经过入库流程的临时文档）按正文现算一次作为兜底。
+ *
+ * <p>指纹基于正文而非 id，因此同一段内容重复入库（id 不同）也会被合并。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public final class DocumentDeduplicator {
+
+    /** 内容指纹的元数据键 */
+    public static final String FINGERPRINT_METADATA_KEY = "content_fingerprint";
+
+    /** 嵌入和推理时都不输出指纹元数据，避免内部字段干扰向量和提示词 */
+    private static final ContentFormatter CONTENT_FORMATTER = DefaultContentFormatter.builder()
+            .withExcludedEmbedMetadataKeys(FINGERPRINT_METADATA_KEY)
+            .withExcludedInferenceMetadataKeys(FINGERPRINT_METADATA_KEY)
+            .build();
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private DocumentDeduplicator() {
+    }
+
+    /**
+     * 按出现顺序合并多路结果，内容相同的文档只保留第一次出现的那一份
+     *
+     * @param channels 各路检索结果
+     * @return 去重后的文档列表
+     */
+    public static List<Document> distinct(List<List<Document>> channels) {
+        int total = 0;
+        for (List<Document> channel : channels) {
+            total += channel.size();
+        }
+
+        List<Document> result = new ArrayList<>(total);
+        LongHashSet seen = new LongHashSet(total);
+        for (List<Document> channel : channels) {
+            for (Document doc : channel) {
+                if (seen.add(keyOf(doc))) {
+                    result.add(doc);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取文档的内容指纹，元数据中没有时按正文现算
+     *
+     * @param doc 文档
+     * @return 64 位内容指纹
+     */
+    public static long keyOf(Document doc) {
+        if (doc.getMetadata().get(FINGERPRINT_METADATA_KEY) instanceof Number fingerprint) {
+            return fingerprint.longValue();
+        }
+        return fingerprint(doc.getText());
+    }
+
+    /**
+     * 入库前为文档写入内容指纹
+     *
+     * @param doc 文档
+     */
+    public static void stamp(Document doc) {
+        doc.getMetadata().put(FINGERPRINT_METADATA_KEY, fingerprint(doc.getText()));
+        doc.setContentFormatter(CONTENT_FORMATTER);
+    }
+
+    /**
+     * 计算文本的 64 位指纹（FNV-1a，末尾做一次位混合以改善低位分布）
+     *
+     * @param text 文本
+     * @return 64 位指纹
+     */
+    public static long fingerprint(String text) {
+        if (text == null) {
+            return 0L;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
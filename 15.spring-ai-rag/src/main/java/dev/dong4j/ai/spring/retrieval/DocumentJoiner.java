@@ -0,0 +1,201 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 多路召回结果融合器
+ *
+ * <p>实现 Reciprocal Rank Fusion（RRF）及其加权版本：
+ * score(d) = Σ w_c / (k + rank_c(d))，rank 从 1 开始，文档未出现在某一路时该路不贡献分数。
+ * RRF 只依赖排名而不依赖各路的原始分数，因此可以直接融合向量相似度、BM25 等量纲不同的通道。
+ *
+ * <p>融合时按排名深度逐层扫描各路结果（k 路归并），累加每个文档的得分，
+ * 再用容量为 topK 的最小堆选出最终结果，整体复杂度 O(n log k)，不对全部候选排序。
+ * 扫描到一定深度后，尚未出现的文档即使在剩余各路都排在当前深度，得分也追不上当前第 topK 名，
+ * 此后不再登记新文档，只给已登记的文档继续累加得分，候选集合不会增长到全部文档的并集。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class DocumentJoiner {
+
+    /** 融合结果中记录 RRF 分数的元数据键 */
+    public static final String SCORE_METADATA_KEY = "rrf_score";
+
+    private final int rrfK;
+
+    /**
+     * 构造函数
+     *
+     * @param properties RAG 配置属性
+     */
+    @Autowired
+    public DocumentJoiner(RagProperties properties) {
+        this(properties.fusion().rrfK());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param rrfK RRF 平滑常数，越大排名靠后的文档权重衰减越慢
+     */
+    public DocumentJoiner(int rrfK) {
+        this.rrfK = rrfK;
+    }
+
+    /**
+     * 标准 RRF 融合，各路权重相同
+     *
+     * @param channels 各路召回结果，每一路按相关性降序排列
+     * @param topK 返回的文档数量
+     * @return 按 RRF 分数降序排列的文档
+     */
+    public List<Document> reciprocalRankFusion(List<List<Document>> channels, int topK) {
+        double[] weights = new double[channels.size()];
+        Arrays.fill(weights, 1.0);
+        return weightedReciprocalRankFusion(channels, weights, topK);
+    }
+
+    /**
+     * 加权 RRF 融合
+     *
+     * @param channels 各路召回结果，每一路按相关性降序排列
+     * @param weights 各路权重，长度与 channels 一致，不能为负
+     * @param topK 返回的文档数量
+     * @return 按加权 RRF 分数降序排列的文档，分数同时写入 score 和 {@link #SCORE_METADATA_KEY} 元数据
+     */
+    public List<Document> weightedReciprocalRankFusion(List<List<Document>> channels, double[] weights, int topK) {
+        if (weights.length != channels.size()) {
+            throw new IllegalArgumentException("权重数量与召回通道数量不一致");
+        }
+        for (double weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("召回通道权重不能为负: " + weight);
+            }
+        }
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        int maxDepth = 0;
+        for (List<Document> channel : channels) {
+            maxDepth = Math.max(maxDepth, channel.size());
+        }
+
+        // 按排名深度逐层归并各路结果，累加每个文档的 RRF 得分
+        Map<String, Candidate> candidates = new HashMap<>();
+        boolean admitting = true;
+        int nextCheck = 1;
+        for (int depth = 0; depth < maxDepth; depth++) {
+            double rankScore = 1.0 / (rrfK + depth + 1);
+            for (int c = 0; c < channels.size(); c++) {
+                List<Document> channel = channels.get(c);
+                if (depth >= channel.size()) {
+                    continue;
+                }
+                Document doc = channel.get(depth);
+                Candidate candidate = admitting
+                        ? candidates.computeIfAbsent(doc.getId(), id -> new Candidate(doc, candidates.size()))
+                        : candidates.get(doc.getId());
+                if (candidate != null) {
+                    candidate.score += weights[c] * rankScore;
+                }
+            }
+            // 深度每翻一倍检查一次，检查的总开销与最后一次相当
+            if (admitting && depth + 1 == nextCheck) {
+                nextCheck *= 2;
+                admitting = candidates.size() < topK
+                        || kthScore(candidates.values(), topK) < unseenBound(channels, weights, depth + 1);
+            }
+        }
+
+        return selectTop(candidates.values(), topK);
+    }
+
+    /**
+     * 前 depth 层都没有出现的文档可能得到的最高分：在每一路剩余结果中都排在第 depth + 1 名
+     */
+    private double unseenBound(List<List<Document>> channels, double[] weights, int depth) {
+        double bound = 0;
+        for (int c = 0; c < channels.size(); c++) {
+            if (channels.get(c).size() > depth) {
+                bound += weights[c] / (rrfK + depth + 1);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * 当前第 topK 名的累计得分；得分只增不减，它是最终第 topK 名得分的下界
+     */
+    private static double kthScore(Collection<Candidate> candidates, int topK) {
+        PriorityQueue<Double> heap = new PriorityQueue<>(topK);
+        for (Candidate candidate : candidates) {
+            if (heap.size() < topK) {
+                heap.offer(candidate.score);
+            } else if (candidate.score > heap.peek()) {
+                heap.poll();
+                heap.offer(candidate.score);
+            }
+        }
+        return heap.peek();
+    }
+
+    /**
+     * 使用容量为 topK 的最小堆选出得分最高的候选，同分时先出现的文档优先
+     */
+    private List<Document> selectTop(Iterable<Candidate> candidates, int topK) {
+        Comparator<Candidate> worstFirst = Comparator.<Candidate>comparingDouble(c -> c.score)
+                .thenComparing(Comparator.comparingInt((Candidate c) -> c.order).reversed());
+
+        PriorityQueue<Candidate> heap = new PriorityQueue<>(topK, worstFirst);
+        for (Candidate candidate : candidates) {
+            if (heap.size() < topK) {
+                heap.offer(candidate);
+            } else if (worstFirst.compare(candidate, heap.peek()) > 0) {
+                heap.poll();
+                heap.offer(candidate);
+            }
+        }
+
+        Document[] result = new Document[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            Candidate candidate = heap.poll();
+            Document fused = candidate.document.mutate().score(candidate.score).build();
+            fused.getMetadata().put(SCORE_METADATA_KEY, candidate.score);
+            result[i] = fused;
+        }
+        return new ArrayList<>(Arrays.asList(result));
+    }
+
+    /**
+     * 融合过程中的候选文档
+     */
+    private static final class Candidate {
+        private final Document document;
+        private final int order;
+        private double score;
+
+        private Candidate(Document document, int order) {
+            this.document = document;
+            this.order = order;
+        }
+    }
+}
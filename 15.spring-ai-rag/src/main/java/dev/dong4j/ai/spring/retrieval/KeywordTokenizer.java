@@ -0,0 +1,96 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 关键词分词器
+ *
+ * <p>面向中英混合文本的轻量分词，供 BM25 关键词索引使用：
+ * - 拉丁字母、数字连续段作为一个词，统一转小写
+ * - 中日韩文字连续段切成相邻二元组（bigram），单个汉字保留为一元词
+ * - 标点、空白等其它字符作为分隔符
+ *
+ * <p>二元组切分不依赖词典，对中文的召回效果接近常用的 CJK Bigram 分析器。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public final class KeywordTokenizer {
+
+    private KeywordTokenizer() {}
+
+    /**
+     * 对文本进行分词
+     *
+     * @param text 待分词文本
+     * @return 词项列表，保留重复词项以便统计词频
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                int end = i;
+                while (end < length && isCjk(text.codePointAt(end))) {
+                    end += Character.charCount(text.codePointAt(end));
+                }
+                appendBigrams(text, i, end, tokens);
+                i = end;
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int end = i;
+                while (end < length) {
+                    int cp = text.codePointAt(end);
+                    if (!Character.isLetterOrDigit(cp) || isCjk(cp)) {
+                        break;
+                    }
+                    end += Character.charCount(cp);
+                }
+                tokens.add(text.substring(i, end).toLowerCase(Locale.ROOT));
+                i = end;
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * 将一段连续的 CJK 文字切分为二元组
+     */
+    private static void appendBigrams(String text, int start, int end, List<String> tokens) {
+        int first = start;
+        int second = first + Character.charCount(text.codePointAt(first));
+        if (second >= end) {
+            tokens.add(text.substring(first, end));
+            return;
+        }
+        while (second < end) {
+            int next = second + Character.charCount(text.codePointAt(second));
+            tokens.add(text.substring(first, next));
+            first = second;
+            second = next;
+        }
+    }
+
+    /**
+     * 判断字符是否为中日韩文字
+     */
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
@@ -0,0 +1,124 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import java.util.Arrays;
+
+/**
+ * 原生 long 哈希集合
+ *
+ * <p>开放寻址 + 线性探测，键直接存放在 long 数组中，插入和查找都不装箱。
+ * 0 作为空槽标记，键本身为 0 时单独记录。非线程安全，适合在单次请求内作为临时集合使用。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public final class LongHashSet {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * 构造函数
+     *
+     * @param expectedSize 预期元素数量，据此分配容量以避免扩容
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param key 键
+     * @return 集合中原本不存在该键时返回 true
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * 判断元素是否存在
+     *
+     * @param key 键
+     * @return 存在时返回 true
+     */
+    public boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * 当前元素数量
+     *
+     * @return 元素数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 清空集合，保留已分配的容量
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        containsZero = false;
+        size = 0;
+    }
+
+    private int slot(long key) {
+        // 混合高低位，避免低位相近的键聚集在同一段槽位
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void rehash(int capacity) {
+        long[] old = keys;
+        keys = new long[capacity];
+        mask = capacity - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int slot = slot(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 召回通道
+ *
+ * <p>描述多路召回中的一路检索：通道名称 + 一次检索动作。
+ * 检索动作由 {@link RecallExecutor} 在虚拟线程上并行执行。
+ *
+ * @param name 通道名称，用于结果展示
+ * @param retriever 检索动作
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public record RecallChannel(String name, Supplier<List<Document>> retriever) {
+
+    /**
+     * 创建基于向量检索的召回通道，使用默认的 topK
+     *
+     * @param name 通道名称
+     * @param vectorStore 向量存储
+     * @param query 检索语句
+     * @return 召回通道
+     */
+    public static RecallChannel vector(String name, VectorStore vectorStore, String query) {
+        return vector(name, vectorStore, SearchRequest.builder().query(query).build());
+    }
+
+    /**
+     * 创建基于向量检索的召回通道
+     *
+     * @param name 通道名称
+     * @param vectorStore 向量存储
+     * @param request 检索请求
+     * @return 召回通道
+     */
+    public static RecallChannel vector(String name, VectorStore vectorStore, SearchRequest request) {
+        return new RecallChannel(name, () -> vectorStore.similaritySearch(request));
+    }
+
+    /**
+     * 创建基于 BM25 关键词检索的召回通道
+     *
+     * @param name 通道名称
+     * @param keywordIndex BM25 关键词索引
+     * @param query 检索语句
+     * @param topK 返回的文档数量
+     * @return 召回通道
+     */
+    public static RecallChannel keyword(String name, Bm25Index keywordIndex, String query, int topK) {
+        return new RecallChannel(name, () -> keywordIndex.search(query, topK));
+    }
+}
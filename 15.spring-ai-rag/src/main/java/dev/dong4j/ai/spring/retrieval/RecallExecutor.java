@@ -0,0 +1,187 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.embedding.QueryEmbeddingMemo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 多路召回执行器
+ *
+ * <p>各检索通道共享的并行执行器：每个通道运行在独立的虚拟线程上，
+ * 所有通道同时开始，并共用同一个截止时间。截止时间到达后仍未返回的通道会被取消，
+ * 只合并按时返回的结果。因此召回延迟取决于最慢的一路（且不超过截止时间），
+ * 而不是所有通道延迟之和。
+ *
+ * <p>任务沿用提交线程的 {@link QueryEmbeddingMemo}，各通道对同一查询只嵌入一次。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class RecallExecutor implements DisposableBean {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Duration channelTimeout;
+
+    /**
+     * 构造函数
+     *
+     * @param properties RAG 配置属性
+     */
+    @Autowired
+    public RecallExecutor(RagProperties properties) {
+        this(properties.recall().channelTimeout());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param channelTimeout 单个召回通道的默认截止时间
+     */
+    public RecallExecutor(Duration channelTimeout) {
+        this.channelTimeout = channelTimeout;
+    }
+
+    /**
+     * 使用默认截止时间并行执行所有召回通道
+     *
+     * @param channels 召回通道
+     * @return 各通道结果，顺序与入参一致
+     */
+    public List<ChannelResult> recall(List<RecallChannel> channels) {
+        return recall(channels, channelTimeout);
+    }
+
+    /**
+     * 并行执行所有召回通道
+     *
+     * @param channels 召回通道
+     * @param timeout 每个通道的截止时间
+     * @return 各通道结果，顺序与入参一致
+     */
+    public List<ChannelResult> recall(List<RecallChannel> channels, Duration timeout) {
+        List<Callable<List<Document>>> tasks = new ArrayList<>(channels.size());
+        for (RecallChannel channel : channels) {
+            tasks.add(() -> channel.retriever().get());
+        }
+
+        List<Outcome<List<Document>>> outcomes = fanOut(tasks, timeout);
+
+        List<ChannelResult> results = new ArrayList<>(channels.size());
+        for (int i = 0; i < channels.size(); i++) {
+            Outcome<List<Document>> outcome = outcomes.get(i);
+            List<Document> documents = outcome.value() != null ? outcome.value() : List.of();
+            results.add(new ChannelResult(
+                    channels.get(i).name(), documents, outcome.status(), outcome.elapsedMillis()));
+        }
+        return results;
+    }
+
+    /**
+     * 在虚拟线程上并行执行一组任务，所有任务共用同一个截止时间
+     *
+     * <p>超时的任务会被取消（中断），失败的任务记录日志后返回空值，
+     * 两者都不会影响其它任务的结果。
+     *
+     * @param tasks 任务列表
+     * @param timeout 截止时间
+     * @param <T> 任务返回值类型
+     * @return 各任务的执行结果，顺序与入参一致
+     */
+    public <T> List<Outcome<T>> fanOut(List<? extends Callable<T>> tasks, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+
+        List<Future<Timed<T>>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            Callable<T> memoized = QueryEmbeddingMemo.wrap(task);
+            futures.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                T value = memoized.call();
+                return new Timed<>(value, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }));
+        }
+
+        List<Outcome<T>> outcomes = new ArrayList<>(tasks.size());
+        for (Future<Timed<T>> future : futures) {
+            outcomes.add(await(future, deadline, timeout));
+        }
+        return outcomes;
+    }
+
+    /**
+     * 等待单个任务完成，最多等到截止时间
+     */
+    private <T> Outcome<T> await(Future<Timed<T>> future, long deadline, Duration timeout) {
+        try {
+            Timed<T> timed = future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return new Outcome<>(timed.value(), Status.COMPLETED, timed.elapsedMillis());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return new Outcome<>(null, Status.TIMEOUT, timeout.toMillis());
+        } catch (ExecutionException e) {
+            log.warn("并行任务执行失败: {}", e.getCause().getMessage());
+            return new Outcome<>(null, Status.FAILED, 0L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new Outcome<>(null, Status.FAILED, 0L);
+        }
+    }
+
+    /**
+     * 关闭虚拟线程执行器
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 任务执行状态
+     */
+    public enum Status {
+        /** 按时完成 */
+        COMPLETED,
+        /** 超过截止时间被取消 */
+        TIMEOUT,
+        /** 执行异常 */
+        FAILED
+    }
+
+    /**
+     * 单个任务的执行结果
+     *
+     * @param value 返回值，超时或失败时为 null
+     * @param status 执行状态
+     * @param elapsedMillis 任务耗时（毫秒）
+     * @param <T> 返回值类型
+     */
+    public record Outcome<T>(T value, Status status, long elapsedMillis) {}
+
+    /**
+     * 带耗时的返回值
+     */
+    private record Timed<T>(T value, long elapsedMillis) {}
+}
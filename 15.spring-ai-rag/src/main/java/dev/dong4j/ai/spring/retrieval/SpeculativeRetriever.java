@@ -0,0 +1,173 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * 推测检索器
+ *
+ * <p>查询改写需要一次 LLM 调用，改写完成后再检索会让两段延迟叠加。推测检索在改写的同时
+ * 直接用原始查询检索（并计算原始查询的嵌入），改写返回后比较改写前后查询的余弦相似度：
+ * <ul>
+ *     <li>相似度不低于阈值：改写没有改变检索意图，直接复用推测检索的结果</li>
+ *     <li>相似度低于阈值：用改写后的查询重新检索</li>
+ * </ul>
+ * 命中时端到端延迟约为 max(改写, 检索) 加一次嵌入调用，而不是改写与检索之和。
+ *
+ * <p>改写失败或超时按原始查询处理，直接使用推测检索的结果；推测检索失败时退化为改写后检索。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class SpeculativeRetriever {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final RecallExecutor recallExecutor;
+    private final EmbeddingModel embeddingModel;
+    private final double similarityThreshold;
+    private final Duration timeout;
+
+    /**
+     * 构造函数
+     *
+     * @param recallExecutor 并行执行器
+     * @param embeddingModel 嵌入模型
+     * @param properties RAG 配置属性
+     */
+    @Autowired
+    public SpeculativeRetriever(RecallExecutor recallExecutor,
+                                EmbeddingModel embeddingModel,
+                                RagProperties properties) {
+        this(recallExecutor, embeddingModel,
+                properties.speculative().similarityThreshold(), properties.speculative().timeout());
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param recallExecutor 并行执行器
+     * @param embeddingModel 嵌入模型
+     * @param similarityThreshold 复用推测结果所需的最低余弦相似度
+     * @param timeout 改写与推测检索的截止时间
+     */
+    public SpeculativeRetriever(RecallExecutor recallExecutor,
+                                EmbeddingModel embeddingModel,
+                                double similarityThreshold,
+                                Duration timeout) {
+        this.recallExecutor = recallExecutor;
+        this.embeddingModel = embeddingModel;
+        this.similarityThreshold = similarityThreshold;
+        this.timeout = timeout;
+    }
+
+    /**
+     * 改写查询的同时用原始查询推测检索
+     *
+     * @param query 原始查询
+     * @param rewriter 查询改写逻辑
+     * @param search 检索逻辑
+     * @return 改写后的查询与最终采用的检索结果
+     */
+    public Result retrieve(String query, Function<String, String> rewriter, Function<String, List<Document>> search) {
+        Callable<Object> rewrite = () -> rewriter.apply(query);
+        Callable<Object> speculate = () -> new Speculation(embeddingModel.embed(query), search.apply(query));
+        List<RecallExecutor.Outcome<Object>> outcomes = recallExecutor.fanOut(List.of(rewrite, speculate), timeout);
+
+        String rewritten = (String) outcomes.get(0).value();
+        Speculation speculation = (Speculation) outcomes.get(1).value();
+
+        if (rewritten == null || rewritten.isBlank()) {
+            log.warn("查询改写未按时返回 [{}]，使用原始查询的检索结果", outcomes.get(0).status());
+            List<Document> documents = speculation != null ? speculation.documents() : search.apply(query);
+            return new Result(query, documents, true, Double.NaN);
+        }
+        if (speculation == null) {
+            return new Result(rewritten, search.apply(rewritten), false, Double.NaN);
+        }
+
+        double similarity = cosine(speculation.embedding(), embeddingModel.embed(rewritten));
+        if (similarity >= similarityThreshold) {
+            return new Result(rewritten, speculation.documents(), true, similarity);
+        }
+        return new Result(rewritten, search.apply(rewritten), false, similarity);
+    }
+
+    /**
+     * 先改写再检索的顺序执行方式，结果形式与推测检索一致，便于对比
+     *
+     * @param query 原始查询
+     * @param rewriter 查询改写逻辑
+     * @param search 检索逻辑
+     * @return 改写后的查询与其检索结果
+     */
+    public static Result sequential(String query,
+                                    Function<String, String> rewriter,
+                                    Function<String, List<Document>> search) {
+        String rewritten = rewriter.apply(query);
+        return new Result(rewritten, search.apply(rewritten), false, Double.NaN);
+    }
+
+    /**
+     * 余弦相似度
+     */
+    private static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0.0;
+        }
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0.0 || normB == 0.0 ? 0.0 : dot / Math.sqrt(normA * normB);
+    }
+
+    /**
+     * 推测检索的结果
+     *
+     * @param rewrittenQuery 改写后的查询，改写失败时为原始查询
+     * @param documents 最终采用的检索结果
+     * @param reused 是否复用了原始查询的推测检索结果
+     * @param similarity 改写前后查询的余弦相似度，未计算时为 NaN
+     */
+    public record Result(String rewrittenQuery, List<Document> documents, boolean reused, double similarity) {
+
+        /**
+         * 检索方式说明
+         *
+         * @return 本次采用的检索结果来源
+         */
+        public String describe() {
+            if (Double.isNaN(similarity)) {
+                return reused ? "改写未按时返回，使用原始查询的检索结果" : "改写后检索";
+            }
+            return reused
+                    ? String.format("推测检索命中（改写前后相似度 %.4f），复用原始查询的检索结果", similarity)
+                    : String.format("改写偏离原始查询（相似度 %.4f），改写后重新检索", similarity);
+        }
+    }
+
+    /**
+     * 原始查询的嵌入与检索结果
+     */
+    private record Speculation(float[] embedding, List<Document> documents) {}
+}
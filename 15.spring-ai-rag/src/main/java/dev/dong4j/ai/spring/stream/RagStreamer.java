@@ -0,0 +1,109 @@
+package dev.dong4j.ai.spring.stream;
+
+import dev.dong4j.ai.spring.advisor.RetrievalContext;
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.embedding.QueryEmbeddingMemo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * RAG 流式响应构建器
+ *
+ * <p>把「检索 + 生成」组织为 SSE 事件流，首字节不再等待整段回答生成完毕：
+ * <ol>
+ *     <li>{@value #RETRIEVAL_EVENT}：检索（及融合、重排）完成后立即推送，每个文档一个事件</li>
+ *     <li>{@value #TOKEN_EVENT}：模型生成的增量文本，逐段推送</li>
+ *     <li>{@value #DONE_EVENT}：生成结束</li>
+ * </ol>
+ * 任一环节失败时推送 {@value #ERROR_EVENT} 事件后结束，不会让客户端一直等待。
+ *
+ * <p>检索逻辑通常是阻塞调用（向量检索、查询改写等），在弹性线程池上执行；
+ * 检索结果通过 {@link RetrievalContext} 交给生成阶段，不会重复检索。
+ * 检索和语义缓存查询都在请求线程返回后才执行，两者共用组装事件流时取得的 {@link QueryEmbeddingMemo}，
+ * 问题在一次请求内只嵌入一次。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class RagStreamer {
+
+    /** 检索结果事件 */
+    public static final String RETRIEVAL_EVENT = "retrieval";
+
+    /** 生成文本事件 */
+    public static final String TOKEN_EVENT = "token";
+
+    /** 结束事件 */
+    public static final String DONE_EVENT = "done";
+
+    /** 错误事件 */
+    public static final String ERROR_EVENT = "error";
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final ChatClient chatClient;
+
+    /**
+     * 构造函数
+     *
+     * @param chatClient 聊天客户端
+     */
+    public RagStreamer(ChatClient chatClient) {
+        this.chatClient = chatClient;
+    }
+
+    /**
+     * 先推送检索结果，再流式推送基于这些结果生成的回答
+     *
+     * @param query 用户问题
+     * @param cacheScope 语义缓存作用域，与对应的同步接口保持一致以共享缓存
+     * @param retrieval 检索逻辑，返回作为生成上下文的文档
+     * @return SSE 事件流
+     */
+    public Flux<ServerSentEvent<String>> stream(String query, String cacheScope, Callable<List<Document>> retrieval) {
+        QueryEmbeddingMemo memo = QueryEmbeddingMemo.currentOrCreate();
+        return Mono.fromCallable(QueryEmbeddingMemo.wrap(memo, retrieval))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(documents -> Flux.concat(
+                        Flux.fromIterable(documents).index().map(doc -> retrievalEvent(doc.getT1(), doc.getT2())),
+                        chatClient.prompt()
+                                .user(query)
+                                .advisors(RetrievalContext.of(documents))
+                                .advisors(SemanticCacheAdvisor.scope(cacheScope, memo))
+                                .stream()
+                                .content()
+                                .map(token -> event(TOKEN_EVENT, token)),
+                        Mono.just(event(DONE_EVENT, ""))))
+                .onErrorResume(e -> {
+                    log.warn("RAG 流式响应失败: {}", e.getMessage());
+                    return Mono.just(event(ERROR_EVENT, String.valueOf(e.getMessage())));
+                });
+    }
+
+    private static ServerSentEvent<String> retrievalEvent(long index, Document doc) {
+        return ServerSentEvent.<String>builder()
+                .event(RETRIEVAL_EVENT)
+                .id(String.valueOf(index + 1))
+                .data(doc.getText())
+                .build();
+    }
+
+    private static ServerSentEvent<String> event(String name, String data) {
+        return ServerSentEvent.<String>builder().event(name).data(data).build();
+    }
+}
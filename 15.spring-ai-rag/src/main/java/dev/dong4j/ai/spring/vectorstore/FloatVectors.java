@@ -0,0 +1,203 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按节点顺序追加存放的 float32 向量
+ *
+ * <p>{@link Heap} 把向量连续放在堆内固定大小的 {@code float[]} 分段中；{@link Mapped} 放在堆外的内存映射临时文件中，
+ * 由操作系统按需换入换出，量化模式下用它保存只在重排时才读取的原始向量。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+interface FloatVectors {
+
+    /** 每个堆内分段容纳的节点数 */
+    int SEGMENT_SIZE = 1024;
+
+    /**
+     * 追加向量
+     *
+     * @param vector 向量
+     */
+    void add(float[] vector);
+
+    /**
+     * 读取向量
+     *
+     * @param node 节点 id
+     * @return 向量副本
+     */
+    float[] get(int node);
+
+    /**
+     * 与节点向量的点积
+     *
+     * @param query 查询向量
+     * @param node 节点 id
+     * @return 点积
+     */
+    float dot(float[] query, int node);
+
+    /**
+     * 堆内占用的字节数
+     *
+     * @return 字节数
+     */
+    long heapBytes();
+
+    /**
+     * 释放存储占用的资源，之后不能再访问
+     */
+    void close();
+
+    /**
+     * 堆内分段存储
+     */
+    final class Heap implements FloatVectors {
+
+        private final int dimensions;
+        private final List<float[]> segments = new ArrayList<>();
+        private int size;
+
+        Heap(int dimensions) {
+            this.dimensions = dimensions;
+        }
+
+        @Override
+        public void add(float[] vector) {
+            if (size % SEGMENT_SIZE == 0) {
+                segments.add(new float[SEGMENT_SIZE * dimensions]);
+            }
+            System.arraycopy(vector, 0, segments.get(size / SEGMENT_SIZE), (size % SEGMENT_SIZE) * dimensions,
+                    dimensions);
+            size++;
+        }
+
+        @Override
+        public float[] get(int node) {
+            float[] vector = new float[dimensions];
+            System.arraycopy(segments.get(node / SEGMENT_SIZE), (node % SEGMENT_SIZE) * dimensions, vector, 0,
+                    dimensions);
+            return vector;
+        }
+
+        @Override
+        public float dot(float[] query, int node) {
+            float[] segment = segments.get(node / SEGMENT_SIZE);
+            int offset = (node % SEGMENT_SIZE) * dimensions;
+            float dot = 0;
+            for (int i = 0; i < dimensions; i++) {
+                dot += query[i] * segment[offset + i];
+            }
+            return dot;
+        }
+
+        @Override
+        public long heapBytes() {
+            return (long) segments.size() * SEGMENT_SIZE * dimensions * Float.BYTES;
+        }
+
+        @Override
+        public void close() {
+            segments.clear();
+        }
+    }
+
+    /**
+     * 堆外内存映射存储，按块扩展临时文件，{@link #close()} 时删除
+     */
+    final class Mapped implements FloatVectors {
+
+        /** 每个映射块的目标大小 */
+        private static final int CHUNK_BYTES = 64 << 20;
+
+        private final int dimensions;
+        private final int vectorsPerChunk;
+        private final Path file;
+        private final FileChannel channel;
+        private final List<MappedByteBuffer> chunks = new ArrayList<>();
+        private int size;
+
+        Mapped(int dimensions) {
+            this.dimensions = dimensions;
+            this.vectorsPerChunk = Math.max(1, CHUNK_BYTES / (dimensions * Float.BYTES));
+            try {
+                this.file = Files.createTempFile("rag-vectors-", ".bin");
+                this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("无法创建向量映射文件", e);
+            }
+        }
+
+        @Override
+        public void add(float[] vector) {
+            if (size % vectorsPerChunk == 0) {
+                long chunkBytes = (long) vectorsPerChunk * dimensions * Float.BYTES;
+                try {
+                    chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, chunks.size() * chunkBytes, chunkBytes));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("向量映射文件扩容失败", e);
+                }
+            }
+            MappedByteBuffer chunk = chunks.get(size / vectorsPerChunk);
+            int offset = (size % vectorsPerChunk) * dimensions * Float.BYTES;
+            for (int i = 0; i < dimensions; i++) {
+                chunk.putFloat(offset + i * Float.BYTES, vector[i]);
+            }
+            size++;
+        }
+
+        @Override
+        public float[] get(int node) {
+            float[] vector = new float[dimensions];
+            chunks.get(node / vectorsPerChunk)
+                    .slice((node % vectorsPerChunk) * dimensions * Float.BYTES, dimensions * Float.BYTES)
+                    .asFloatBuffer()
+                    .get(vector);
+            return vector;
+        }
+
+        @Override
+        public float dot(float[] query, int node) {
+            MappedByteBuffer chunk = chunks.get(node / vectorsPerChunk);
+            int offset = (node % vectorsPerChunk) * dimensions * Float.BYTES;
+            float dot = 0;
+            for (int i = 0; i < dimensions; i++) {
+                dot += query[i] * chunk.getFloat(offset + i * Float.BYTES);
+            }
+            return dot;
+        }
+
+        @Override
+        public long heapBytes() {
+            return 0;
+        }
+
+        /**
+         * 关闭并删除映射文件，已映射的内存在缓冲区被回收时释放
+         */
+        @Override
+        public void close() {
+            chunks.clear();
+            try {
+                channel.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("无法删除向量映射文件 " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,471 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * HNSW（Hierarchical Navigable Small World）近似最近邻索引
+ *
+ * <p>按 Malkov &amp; Yashunin 的论文实现：每个节点随机分配层数（层数越高节点越少），查询从最高层的入口点开始
+ * 逐层贪心下降，在第 0 层用宽度为 ef 的束搜索收集候选，复杂度随数据量对数增长。
+ * 插入时用同样的搜索找到 efConstruction 个候选，再以启发式规则挑选 M 个邻居（偏向不同方向的邻居，
+ * 避免聚簇内部的冗余连接），并双向连边，邻居数超限时按同样规则裁剪。
+ *
+ * <p>向量入库时归一化，相似度即点积（等价于余弦相似度）。原始向量按节点顺序连续存放在 {@link FloatVectors} 中，
+ * 不为每个向量单独分配对象；邻接表同样用定长 {@code int[]} 保存。
+ *
+ * <p>启用量化（见 {@link VectorQuantization}）时，建图与搜索只使用 {@link VectorCodes} 中的紧凑编码，
+ * 原始向量移到堆外映射文件；查询先在编码上找出 k × rescoreFactor 个候选，再用原始向量重新打分取前 k 个。
+ *
+ * <p>节点 id 从 0 开始连续分配且不回收，删除由调用方通过 {@code accept} 过滤。本类不是线程安全的，
+ * 并发访问由调用方加锁。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class HnswIndex {
+
+    private static final Comparator<Neighbor> BEST_FIRST =
+            Comparator.comparingDouble(Neighbor::similarity).reversed();
+    private static final Comparator<Neighbor> WORST_FIRST =
+            Comparator.comparingDouble(Neighbor::similarity);
+
+    private final int dimensions;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelFactor;
+    private final SplittableRandom random;
+    private final VectorQuantization quantization;
+    private final int rescoreFactor;
+    private final FloatVectors vectors;
+    private final VectorCodes codes;
+    /** 节点 → 层 → 邻居数组，数组第 0 位是邻居数量 */
+    private final List<int[][]> links = new ArrayList<>();
+    private int size;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * 构造函数
+     *
+     * @param dimensions 向量维度
+     * @param m 每个节点在第 1 层及以上的最大邻居数，第 0 层为 2M
+     * @param efConstruction 插入时的候选集大小
+     * @param seed 层数分配使用的随机种子
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction, long seed) {
+        this(dimensions, m, efConstruction, seed, VectorQuantization.NONE, 1);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param dimensions 向量维度
+     * @param m 每个节点在第 1 层及以上的最大邻居数，第 0 层为 2M
+     * @param efConstruction 插入时的候选集大小
+     * @param seed 层数分配使用的随机种子
+     * @param quantization 量化方式
+     * @param rescoreFactor 量化时用原始向量重排的候选数是 k 的多少倍
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction, long seed,
+                     VectorQuantization quantization, int rescoreFactor) {
+        if (m < 2) {
+            throw new IllegalArgumentException("HNSW 参数 M 不能小于 2: " + m);
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelFactor = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+        this.quantization = quantization;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+        this.vectors = quantization == VectorQuantization.NONE
+                ? new FloatVectors.Heap(dimensions)
+                : new FloatVectors.Mapped(dimensions);
+        this.codes = VectorCodes.create(quantization, dimensions, vectors);
+    }
+
+    /**
+     * 插入向量
+     *
+     * @param vector 向量，入库时归一化，不修改传入的数组
+     * @return 节点 id
+     */
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("向量维度不匹配: 期望 " + dimensions + "，实际 " + vector.length);
+        }
+        int node = size;
+        float[] normalized = normalize(vector);
+        vectors.add(normalized);
+        codes.add(normalized);
+        int level = randomLevel();
+        int[][] layers = new int[level + 1][];
+        for (int layer = 0; layer <= level; layer++) {
+            layers[layer] = new int[(layer == 0 ? maxM0 : m) + 1];
+        }
+        links.add(layers);
+        size++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+        VectorCodes.Scorer scorer = codes.scorer(normalized);
+        int current = entryPoint;
+        for (int layer = maxLevel; layer > level; layer--) {
+            current = greedy(scorer, current, layer);
+        }
+        List<Neighbor> entryPoints = List.of(new Neighbor(current, scorer.score(current)));
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<Neighbor> candidates = searchLayer(scorer, entryPoints, efConstruction, layer, null);
+            for (Neighbor neighbor : selectNeighbors(candidates, m)) {
+                connect(node, neighbor.node(), layer);
+                connect(neighbor.node(), node, layer);
+            }
+            entryPoints = candidates;
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+        return node;
+    }
+
+    /**
+     * 近似最近邻查询
+     *
+     * @param query 查询向量，无需归一化
+     * @param k 返回的结果数
+     * @param ef 第 0 层的候选集大小，越大召回率越高、越慢，实际取值不小于 k
+     * @param accept 节点过滤条件，只影响结果集不影响图的遍历，可为 null
+     * @return 按相似度降序排列的最多 k 个节点
+     */
+    public List<Neighbor> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("查询向量维度不匹配: 期望 " + dimensions + "，实际 " + query.length);
+        }
+        float[] normalized = normalize(query);
+        VectorCodes.Scorer scorer = codes.scorer(normalized);
+        int current = entryPoint;
+        for (int layer = maxLevel; layer > 0; layer--) {
+            current = greedy(scorer, current, layer);
+        }
+        List<Neighbor> entryPoints = List.of(new Neighbor(current, scorer.score(current)));
+        int candidates = codes.exact() ? k : k * rescoreFactor;
+        List<Neighbor> results = searchLayer(scorer, entryPoints, Math.max(ef, candidates), 0, accept);
+        if (!codes.exact()) {
+            results = rescore(normalized, results.subList(0, Math.min(candidates, results.size())));
+        }
+        return results.size() > k ? results.subList(0, k) : results;
+    }
+
+    /**
+     * 对给定节点逐一计算精确相似度，用于过滤条件很严格、候选很少的查询；此时图搜索会在大量不满足条件的节点上
+     * 徒劳地计算相似度，而暴力扫描只计算候选本身
+     *
+     * @param query 查询向量，无需归一化
+     * @param k 返回的结果数
+     * @param nodes 候选节点
+     * @return 按相似度降序排列的最多 k 个节点
+     */
+    public List<Neighbor> scan(float[] query, int k, BitSet nodes) {
+        if (k <= 0) {
+            return List.of();
+        }
+        if (query.length != dimensions) {
+            throw new IllegalArgumentException("查询向量维度不匹配: 期望 " + dimensions + "，实际 " + query.length);
+        }
+        float[] normalized = normalize(query);
+        PriorityQueue<Neighbor> results = new PriorityQueue<>(WORST_FIRST);
+        for (int node = nodes.nextSetBit(0); node >= 0 && node < size; node = nodes.nextSetBit(node + 1)) {
+            offer(results, new Neighbor(node, vectors.dot(normalized, node)), k);
+        }
+        List<Neighbor> sorted = new ArrayList<>(results);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * 读取节点的归一化向量
+     *
+     * @param node 节点 id
+     * @return 向量副本
+     */
+    public float[] vector(int node) {
+        return vectors.get(node);
+    }
+
+    /**
+     * 节点总数（包括调用方已删除的节点）
+     *
+     * @return 节点数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 向量维度
+     *
+     * @return 维度
+     */
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * 量化方式
+     *
+     * @return 量化方式
+     */
+    public VectorQuantization quantization() {
+        return quantization;
+    }
+
+    /**
+     * 向量在堆内占用的字节数（原始向量与量化编码，不含图结构）
+     *
+     * @return 字节数
+     */
+    public long vectorHeapBytes() {
+        return vectors.heapBytes() + codes.heapBytes();
+    }
+
+    /**
+     * 每个节点在第 1 层及以上的最大邻居数
+     *
+     * @return M
+     */
+    public int m() {
+        return m;
+    }
+
+    /**
+     * 释放原始向量占用的资源（量化时是堆外映射文件），之后不能再访问本索引
+     */
+    public void close() {
+        vectors.close();
+    }
+
+    int entryPoint() {
+        return entryPoint;
+    }
+
+    int maxLevel() {
+        return maxLevel;
+    }
+
+    /**
+     * 节点的邻接表，供快照写出
+     *
+     * @return 层 → 邻居数组，数组第 0 位是邻居数量
+     */
+    int[][] links(int node) {
+        return links.get(node);
+    }
+
+    /**
+     * 从快照恢复节点，按节点顺序调用；量化编码由原始向量重新生成
+     *
+     * @param vector 已归一化的向量
+     * @param layers 邻接表，数组容量须与 M 匹配
+     */
+    void restoreNode(float[] vector, int[][] layers) {
+        vectors.add(vector);
+        codes.add(vector);
+        links.add(layers);
+        size++;
+    }
+
+    /**
+     * 从快照恢复入口点，所有节点恢复完成后调用
+     *
+     * @param entryPoint 入口节点
+     * @param maxLevel 最高层
+     */
+    void restoreEntryPoint(int entryPoint, int maxLevel) {
+        this.entryPoint = entryPoint;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * 单层束搜索
+     *
+     * @return 按相似度降序排列的最多 ef 个被 accept 接受的节点
+     */
+    private List<Neighbor> searchLayer(VectorCodes.Scorer scorer, List<Neighbor> entryPoints, int ef, int layer,
+                                       IntPredicate accept) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Neighbor> candidates = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<Neighbor> results = new PriorityQueue<>(WORST_FIRST);
+        for (Neighbor entry : entryPoints) {
+            visited.set(entry.node());
+            candidates.add(entry);
+            if (accept == null || accept.test(entry.node())) {
+                offer(results, entry, ef);
+            }
+        }
+        while (!candidates.isEmpty()) {
+            Neighbor candidate = candidates.poll();
+            if (results.size() >= ef && candidate.similarity() < results.peek().similarity()) {
+                break;
+            }
+            int[] neighbors = links.get(candidate.node())[layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                int next = neighbors[i];
+                if (visited.get(next)) {
+                    continue;
+                }
+                visited.set(next);
+                float similarity = scorer.score(next);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Neighbor neighbor = new Neighbor(next, similarity);
+                    candidates.add(neighbor);
+                    if (accept == null || accept.test(next)) {
+                        offer(results, neighbor, ef);
+                    }
+                }
+            }
+        }
+        List<Neighbor> sorted = new ArrayList<>(results);
+        sorted.sort(BEST_FIRST);
+        return sorted;
+    }
+
+    private static void offer(PriorityQueue<Neighbor> results, Neighbor neighbor, int ef) {
+        results.add(neighbor);
+        if (results.size() > ef) {
+            results.poll();
+        }
+    }
+
+    /**
+     * 在单层上贪心移动到离查询最近的节点
+     */
+    private int greedy(VectorCodes.Scorer scorer, int start, int layer) {
+        int current = start;
+        float best = scorer.score(current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbors = links.get(current)[layer];
+            for (int i = 1; i <= neighbors[0]; i++) {
+                float similarity = scorer.score(neighbors[i]);
+                if (similarity > best) {
+                    best = similarity;
+                    current = neighbors[i];
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 启发式邻居选择：候选与已选邻居的相似度高于与基准节点的相似度时视为冗余方向，
+     * 优先跳过；不足 max 个时再用被跳过的候选补齐
+     *
+     * @param candidates 按与基准节点相似度降序排列的候选
+     */
+    private List<Neighbor> selectNeighbors(List<Neighbor> candidates, int max) {
+        List<Neighbor> selected = new ArrayList<>(max);
+        List<Neighbor> pruned = new ArrayList<>();
+        for (Neighbor candidate : candidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            VectorCodes.Scorer scorer = codes.scorer(candidate.node());
+            boolean diverse = true;
+            for (Neighbor chosen : selected) {
+                if (scorer.score(chosen.node()) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : pruned).add(candidate);
+        }
+        for (int i = 0; i < pruned.size() && selected.size() < max; i++) {
+            selected.add(pruned.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * 添加一条从 from 指向 to 的边，邻居数超限时重新挑选
+     */
+    private void connect(int from, int to, int layer) {
+        int[] neighbors = links.get(from)[layer];
+        int capacity = neighbors.length - 1;
+        if (neighbors[0] < capacity) {
+            neighbors[++neighbors[0]] = to;
+            return;
+        }
+        VectorCodes.Scorer base = codes.scorer(from);
+        List<Neighbor> candidates = new ArrayList<>(capacity + 1);
+        for (int i = 1; i <= neighbors[0]; i++) {
+            candidates.add(new Neighbor(neighbors[i], base.score(neighbors[i])));
+        }
+        candidates.add(new Neighbor(to, base.score(to)));
+        candidates.sort(BEST_FIRST);
+        List<Neighbor> selected = selectNeighbors(candidates, capacity);
+        neighbors[0] = selected.size();
+        for (int i = 0; i < selected.size(); i++) {
+            neighbors[i + 1] = selected.get(i).node();
+        }
+    }
+
+    private int randomLevel() {
+        return (int) Math.floor(-Math.log(1 - random.nextDouble()) * levelFactor);
+    }
+
+    /**
+     * 用原始向量重新计算候选的相似度并排序
+     */
+    private List<Neighbor> rescore(float[] query, List<Neighbor> candidates) {
+        List<Neighbor> rescored = new ArrayList<>(candidates.size());
+        for (Neighbor candidate : candidates) {
+            rescored.add(new Neighbor(candidate.node(), vectors.dot(query, candidate.node())));
+        }
+        rescored.sort(BEST_FIRST);
+        return rescored;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float[] normalized = new float[vector.length];
+        if (norm == 0) {
+            return normalized;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * scale;
+        }
+        return normalized;
+    }
+
+    /**
+     * 查询结果
+     *
+     * @param node 节点 id
+     * @param similarity 与查询的余弦相似度
+     */
+    public record Neighbor(int node, float similarity) {}
+}
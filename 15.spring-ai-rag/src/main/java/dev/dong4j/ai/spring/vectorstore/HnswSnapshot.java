@@ -0,0 +1,330 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.document.Document;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HNSW 向量存储的二进制快照
+ *
+ * <p>SimpleVectorStore 以 JSON 保存向量，写入慢、解析更慢，体积是原始向量的数倍。快照按块保存（大端序）：
+ * <pre>
+ * 文件头    magic | version | dimensions | m | nodeCount | entryPoint | maxLevel | liveCount
+ *           | vectorOffset | graphOffset | metadataOffset | idIndexOffset
+ * 向量块    nodeCount × dimensions 个 float32，即索引内已归一化的向量
+ * 图块      每个节点: level，然后每层 count 与 count 个邻居
+ * 元数据块  每个节点: 文本与 JSON 元数据，已删除节点为空
+ * id 索引块 liveCount 个 (文档 id, 节点)
+ * </pre>
+ * 快照同时保存 HNSW 图，加载时不需要重新建图；量化编码不入快照，加载时由原始向量重新生成。向量块和图块按 64 MB
+ * 分段内存映射读取，百万级向量的加载耗时主要取决于磁盘读取速度。读取时校验块偏移、节点层数与邻居数，
+ * 文件损坏时抛出 {@link IOException} 而不是加载出错乱的图。写入先写临时文件再原子替换，写到一半崩溃不会破坏旧快照。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+final class HnswSnapshot {
+
+    private static final int MAGIC = 0x52414753;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8 * Integer.BYTES + 4 * Long.BYTES;
+    private static final int CHUNK_BYTES = 64 << 20;
+    private static final int MAX_LEVEL = 64;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {};
+
+    private HnswSnapshot() {
+    }
+
+    /**
+     * 写出快照
+     *
+     * @param file 快照文件
+     * @param contents 快照内容
+     * @throws IOException 写入失败
+     */
+    static void write(Path file, Contents contents) throws IOException {
+        HnswIndex index = contents.index();
+        int nodes = index.size();
+        int dimensions = index.dimensions();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(HEADER_SIZE);
+
+            long vectorOffset = channel.position();
+            DataOutputStream out = stream(channel);
+            for (int node = 0; node < nodes; node++) {
+                for (float value : index.vector(node)) {
+                    out.writeFloat(value);
+                }
+            }
+            out.flush();
+
+            long graphOffset = channel.position();
+            out = stream(channel);
+            for (int node = 0; node < nodes; node++) {
+                int[][] layers = index.links(node);
+                out.writeInt(layers.length - 1);
+                for (int[] neighbors : layers) {
+                    for (int i = 0; i <= neighbors[0]; i++) {
+                        out.writeInt(neighbors[i]);
+                    }
+                }
+            }
+            out.flush();
+
+            long metadataOffset = channel.position();
+            out = stream(channel);
+            for (Document document : contents.documents()) {
+                if (document == null) {
+                    writeBytes(out, new byte[0]);
+                    writeBytes(out, new byte[0]);
+                } else {
+                    writeBytes(out, document.getText().getBytes(StandardCharsets.UTF_8));
+                    writeBytes(out, OBJECT_MAPPER.writeValueAsBytes(document.getMetadata()));
+                }
+            }
+            out.flush();
+
+            long idIndexOffset = channel.position();
+            out = stream(channel);
+            for (Map.Entry<String, Integer> entry : contents.nodesById().entrySet()) {
+                writeBytes(out, entry.getKey().getBytes(StandardCharsets.UTF_8));
+                out.writeInt(entry.getValue());
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC).putInt(VERSION).putInt(dimensions).putInt(index.m())
+                    .putInt(nodes).putInt(index.entryPoint()).putInt(index.maxLevel())
+                    .putInt(contents.nodesById().size())
+                    .putLong(vectorOffset).putLong(graphOffset).putLong(metadataOffset).putLong(idIndexOffset)
+                    .flip();
+            channel.position(0);
+            writeFully(channel, header);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 读取快照
+     *
+     * @param file 快照文件
+     * @param efConstruction 后续插入时的候选集大小
+     * @param seed 后续插入使用的随机种子
+     * @param quantization 量化方式，量化编码由快照中的原始向量重新生成
+     * @param rescoreFactor 量化时重排的候选倍数
+     * @return 快照内容
+     * @throws IOException 读取失败或文件格式不正确
+     */
+    static Contents read(Path file, int efConstruction, long seed, VectorQuantization quantization,
+                         int rescoreFactor) throws IOException {
+        return read(file, efConstruction, seed, quantization, rescoreFactor, CHUNK_BYTES);
+    }
+
+    /**
+     * 读取快照，向量块和图块按 chunkBytes 分段映射
+     *
+     * @param chunkBytes 每段映射的最大字节数，必须是 4 的倍数
+     * @see #read(Path, int, long, VectorQuantization, int)
+     */
+    static Contents read(Path file, int efConstruction, long seed, VectorQuantization quantization,
+                         int rescoreFactor, int chunkBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("不是向量存储快照文件: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("不是向量存储快照文件: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("不支持的快照版本 " + version + ": " + file);
+            }
+            int dimensions = header.getInt();
+            int m = header.getInt();
+            int nodes = header.getInt();
+            int entryPoint = header.getInt();
+            int maxLevel = header.getInt();
+            int live = header.getInt();
+            long vectorOffset = header.getLong();
+            long graphOffset = header.getLong();
+            long metadataOffset = header.getLong();
+            long idIndexOffset = header.getLong();
+
+            check(dimensions > 0 && m > 0 && nodes >= 0 && live >= 0 && live <= nodes, file, "文件头");
+            check(nodes == 0 ? entryPoint == -1 : entryPoint >= 0 && entryPoint < nodes, file, "入口节点");
+            check(maxLevel >= -1 && maxLevel <= MAX_LEVEL, file, "最大层数");
+            check(vectorOffset == HEADER_SIZE
+                    && graphOffset - vectorOffset == (long) nodes * dimensions * Float.BYTES
+                    && graphOffset <= metadataOffset && metadataOffset <= idIndexOffset && idIndexOffset <= size,
+                    file, "块偏移");
+
+            HnswIndex index = new HnswIndex(dimensions, m, efConstruction, seed, quantization, rescoreFactor);
+            try {
+                MappedInts vectors = new MappedInts(channel, vectorOffset, graphOffset, chunkBytes);
+                MappedInts graph = new MappedInts(channel, graphOffset, metadataOffset, chunkBytes);
+                for (int node = 0; node < nodes; node++) {
+                    float[] vector = new float[dimensions];
+                    for (int i = 0; i < dimensions; i++) {
+                        vector[i] = Float.intBitsToFloat(vectors.next(file));
+                    }
+                    int level = graph.next(file);
+                    check(level >= 0 && level <= maxLevel, file, "节点层数");
+                    int[][] layers = new int[level + 1][];
+                    for (int layer = 0; layer <= level; layer++) {
+                        int capacity = layer == 0 ? m * 2 : m;
+                        int count = graph.next(file);
+                        check(count >= 0 && count <= capacity, file, "邻居数");
+                        layers[layer] = new int[capacity + 1];
+                        layers[layer][0] = count;
+                        for (int i = 1; i <= count; i++) {
+                            int neighbor = graph.next(file);
+                            check(neighbor >= 0 && neighbor < nodes, file, "邻居节点");
+                            layers[layer][i] = neighbor;
+                        }
+                    }
+                    index.restoreNode(vector, layers);
+                }
+                index.restoreEntryPoint(entryPoint, maxLevel);
+
+                DataInputStream in = stream(channel, metadataOffset);
+                List<String> texts = new ArrayList<>(nodes);
+                List<byte[]> metadata = new ArrayList<>(nodes);
+                for (int node = 0; node < nodes; node++) {
+                    texts.add(new String(readBytes(in, idIndexOffset - metadataOffset, file), StandardCharsets.UTF_8));
+                    metadata.add(readBytes(in, idIndexOffset - metadataOffset, file));
+                }
+
+                in = stream(channel, idIndexOffset);
+                Map<String, Integer> nodesById = new HashMap<>(live * 2);
+                List<Document> documents = new ArrayList<>(nodes);
+                for (int node = 0; node < nodes; node++) {
+                    documents.add(null);
+                }
+                for (int i = 0; i < live; i++) {
+                    String id = new String(readBytes(in, size - idIndexOffset, file), StandardCharsets.UTF_8);
+                    int node = in.readInt();
+                    check(node >= 0 && node < nodes && documents.get(node) == null, file, "id 索引");
+                    nodesById.put(id, node);
+                    documents.set(node, Document.builder()
+                            .id(id)
+                            .text(texts.get(node))
+                            .metadata(OBJECT_MAPPER.readValue(metadata.get(node), METADATA_TYPE))
+                            .build());
+                }
+
+                return new Contents(index, documents, nodesById);
+            } catch (IOException | RuntimeException e) {
+                index.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 校验快照内容，不满足时按文件损坏处理
+     */
+    private static void check(boolean valid, Path file, String part) throws IOException {
+        if (!valid) {
+            throw new IOException("向量存储快照已损坏（" + part + "不合法）: " + file);
+        }
+    }
+
+    private static DataOutputStream stream(FileChannel channel) {
+        return new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+    }
+
+    private static DataInputStream stream(FileChannel channel, long position) throws IOException {
+        channel.position(position);
+        return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in, long limit, Path file) throws IOException {
+        int length = in.readInt();
+        check(length >= 0 && length <= limit, file, "数据长度");
+        byte[] bytes = in.readNBytes(length);
+        check(bytes.length == length, file, "数据长度");
+        return bytes;
+    }
+
+    /**
+     * 分段映射的 int 序列
+     *
+     * <p>单次 {@link FileChannel#map} 最多映射 2 GB，百万级 1024 维向量的向量块约 4 GB，因此按段映射，
+     * 读完一段再映射下一段，已读完的段交给 GC 回收。
+     */
+    private static final class MappedInts {
+
+        private final FileChannel channel;
+        private final long end;
+        private final int chunkBytes;
+        private long next;
+        private ByteBuffer chunk = ByteBuffer.allocate(0);
+
+        MappedInts(FileChannel channel, long start, long end, int chunkBytes) {
+            this.channel = channel;
+            this.next = start;
+            this.end = end;
+            this.chunkBytes = chunkBytes;
+        }
+
+        int next(Path file) throws IOException {
+            if (chunk.remaining() < Integer.BYTES) {
+                check(end - next >= Integer.BYTES, file, "块长度");
+                long length = Math.min(chunkBytes, end - next) & ~(Integer.BYTES - 1L);
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, next, length);
+                next += length;
+            }
+            return chunk.getInt();
+        }
+    }
+
+    /**
+     * 快照内容
+     *
+     * @param index HNSW 索引
+     * @param documents 按节点排列的文档，已删除的节点为 null
+     * @param nodesById 未删除文档的 id → 节点
+     */
+    record Contents(HnswIndex index, List<Document> documents, Map<String, Integer> nodesById) {}
+}
@@ -0,0 +1,679 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.observation.conventions.VectorStoreProvider;
+import org.springframework.ai.observation.conventions.VectorStoreSimilarityMetric;
+import org.springframework.ai.vectorstore.AbstractVectorStoreBuilder;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionConverter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.ai.vectorstore.observation.AbstractObservationVectorStore;
+import org.springframework.ai.vectorstore.observation.VectorStoreObservationContext;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * 基于 HNSW 图索引的内存向量存储
+ *
+ * <p>SimpleVectorStore 每次查询都要与全部向量逐一计算相似度，耗时随知识库线性增长；
+ * 这里用 {@link HnswIndex} 做近似最近邻检索，查询耗时随数据量对数增长。
+ * 检索语义与 SimpleVectorStore 保持一致：余弦相似度、{@code topK} 截断、{@code similarityThreshold} 过滤、
+ * 元数据过滤表达式（同样转换为 SpEL 求值），返回文档的 score 为相似度，metadata 中带 {@code distance}。
+ *
+ * <p>写入时通过 {@link EmbeddingModel#embed(List, EmbeddingOptions, org.springframework.ai.embedding.BatchingStrategy)}
+ * 批量计算嵌入，而不是逐个文档调用嵌入模型。重复写入同一 id 会替换旧文档（内容未变时直接跳过）；删除只把节点标记为已删除，
+ * 节点仍参与图的遍历以保持连通性，但不再出现在结果中。
+ *
+ * <p>元数据过滤先在 {@link MetadataBitmapIndex} 上求出候选节点集合，再计算相似度：候选很少时直接逐一打分，
+ * 否则在图搜索中只接受候选节点；位图不支持的表达式回退到逐个文档的 SpEL 求值。
+ *
+ * <p>可选 int8 或二值量化（见 {@link VectorQuantization}），降低向量的堆内存占用，召回损失由原始向量重排弥补。
+ *
+ * <p>查询持有读锁、写入持有写锁，嵌入计算在锁外完成。内容可以保存为二进制快照（见 {@link HnswSnapshot}），
+ * 重启后直接加载，无需重新嵌入和建图。已删除的节点由 {@link #compact()} 回收，
+ * 后台触发见 {@link VectorStoreCompactor}。量化时原始向量保存在临时映射文件中，由 {@link #destroy()} 删除。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class HnswVectorStore extends AbstractObservationVectorStore implements VectorLookup, DisposableBean {
+
+    /** 压缩时每次在读锁内复制的节点数 */
+    private static final int COMPACTION_CHUNK = 1024;
+    /** 剩余未复制的节点不超过该值时获取写锁补齐 */
+    private static final int COMPACTION_CATCH_UP = 64;
+
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final long seed;
+    private final VectorQuantization quantization;
+    private final int rescoreFactor;
+    private final int bruteForceThreshold;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExpressionParser expressionParser = new SpelExpressionParser();
+    private final FilterExpressionConverter filterExpressionConverter =
+            new SimpleVectorStoreFilterExpressionConverter();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private List<Document> documents = new ArrayList<>();
+    private Map<String, Integer> nodesById = new HashMap<>();
+    private BitSet deleted = new BitSet();
+    private MetadataBitmapIndex metadataIndex = new MetadataBitmapIndex();
+    private HnswIndex index;
+
+    /**
+     * 构造函数
+     *
+     * @param builder 构建器
+     */
+    protected HnswVectorStore(HnswVectorStoreBuilder builder) {
+        super(builder);
+        this.m = builder.m;
+        this.efConstruction = builder.efConstruction;
+        this.efSearch = builder.efSearch;
+        this.seed = builder.seed;
+        this.quantization = builder.quantization;
+        this.rescoreFactor = builder.rescoreFactor;
+        this.bruteForceThreshold = builder.bruteForceThreshold;
+    }
+
+    /**
+     * 创建构建器
+     *
+     * @param embeddingModel 嵌入模型
+     * @return 构建器
+     */
+    public static HnswVectorStoreBuilder builder(EmbeddingModel embeddingModel) {
+        return new HnswVectorStoreBuilder(embeddingModel);
+    }
+
+    @Override
+    public void doAdd(List<Document> documents) {
+        documents = changed(documents);
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings =
+                embeddingModel.embed(documents, EmbeddingOptions.builder().build(), batchingStrategy);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                float[] embedding = embeddings.get(i);
+                if (index == null) {
+                    index = new HnswIndex(embedding.length, m, efConstruction, seed, quantization, rescoreFactor);
+                }
+                Document document = documents.get(i);
+                int node = index.add(embedding);
+                this.documents.add(document);
+                metadataIndex.add(node, document.getMetadata());
+                Integer previous = nodesById.put(document.getId(), node);
+                if (previous != null) {
+                    deleted.set(previous);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void doDelete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer node = nodesById.remove(id);
+                if (node != null) {
+                    deleted.set(node);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void doDelete(Filter.Expression filterExpression) {
+        lock.writeLock().lock();
+        try {
+            IntPredicate filter = compileFilter(filterExpression);
+            nodesById.values().removeIf(node -> {
+                boolean matches = filter.test(node);
+                if (matches) {
+                    deleted.set(node);
+                }
+                return matches;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查找元数据满足过滤表达式的文档 id，过滤语义与 {@link #delete(Filter.Expression)} 相同
+     *
+     * @param filterExpression 过滤表达式
+     * @return 匹配的文档 id
+     */
+    public List<String> findIds(Filter.Expression filterExpression) {
+        lock.readLock().lock();
+        try {
+            IntPredicate filter = compileFilter(filterExpression);
+            return nodesById.entrySet().stream()
+                    .filter(entry -> filter.test(entry.getValue()))
+                    .map(Map.Entry::getKey)
+                    .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Document> doSimilaritySearch(SearchRequest request) {
+        return similaritySearch(request, embeddingModel.embed(request.getQuery()));
+    }
+
+    /**
+     * 用已计算好的查询向量检索，不调用嵌入模型，其余语义与 {@link #similaritySearch(SearchRequest)} 相同
+     *
+     * @param request 检索请求，其中的 query 不再使用
+     * @param query 查询向量
+     * @return 按相似度降序排列的文档
+     */
+    public List<Document> similaritySearch(SearchRequest request, float[] query) {
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return List.of();
+            }
+            List<HnswIndex.Neighbor> neighbors;
+            if (!request.hasFilterExpression()) {
+                neighbors = index.search(query, request.getTopK(), efSearch, node -> !deleted.get(node));
+            } else {
+                BitSet candidates = metadataIndex.evaluate(request.getFilterExpression());
+                if (candidates == null) {
+                    Predicate<Map<String, Object>> filter = metadataFilter(request.getFilterExpression());
+                    neighbors = index.search(query, request.getTopK(), efSearch,
+                            node -> !deleted.get(node) && filter.test(documents.get(node).getMetadata()));
+                } else {
+                    candidates.andNot(deleted);
+                    neighbors = candidates.cardinality() <= bruteForceThreshold
+                            ? index.scan(query, request.getTopK(), candidates)
+                            : index.search(query, request.getTopK(), efSearch, candidates::get);
+                }
+            }
+            List<Document> results = new ArrayList<>();
+            for (HnswIndex.Neighbor neighbor : neighbors) {
+                if (neighbor.similarity() >= request.getSimilarityThreshold()) {
+                    results.add(toDocument(documents.get(neighbor.node()), neighbor.similarity()));
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把当前内容写入二进制快照，写入期间查询不受影响，写入操作等待快照完成
+     *
+     * @param file 快照文件
+     * @throws IOException 写入失败
+     */
+    public void save(Path file) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return;
+            }
+            List<Document> live = new ArrayList<>(documents.size());
+            for (int node = 0; node < documents.size(); node++) {
+                live.add(deleted.get(node) ? null : documents.get(node));
+            }
+            HnswSnapshot.write(file, new HnswSnapshot.Contents(index, live, nodesById));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 用二进制快照替换当前内容
+     *
+     * @param file 快照文件
+     * @return 快照中的文档
+     * @throws IOException 读取失败或文件格式不正确
+     */
+    public List<Document> load(Path file) throws IOException {
+        HnswSnapshot.Contents contents = HnswSnapshot.read(file, efConstruction, seed, quantization, rescoreFactor);
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.close();
+            }
+            index = contents.index();
+            documents.clear();
+            documents.addAll(contents.documents());
+            nodesById.clear();
+            nodesById.putAll(contents.nodesById());
+            deleted.clear();
+            deleted.set(0, documents.size());
+            nodesById.values().forEach(deleted::clear);
+            metadataIndex.clear();
+            for (int node = 0; node < documents.size(); node++) {
+                Document document = documents.get(node);
+                metadataIndex.add(node, document != null ? document.getMetadata() : null);
+            }
+            return nodesById.values().stream().map(documents::get).toList();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 回收已删除的节点：把存活文档按原顺序插入一个新索引，完成后原子替换当前索引
+     *
+     * <p>新索引在锁外构建，期间查询和写入照常进行。存活节点分块在读锁内复制；构建期间新写入的节点在追平阶段补上，
+     * 剩余不多时才获取写锁补齐最后几个节点，并按删除位图同步构建期间被删除或替换的文档，然后替换引用。
+     * 写锁的持有时间只与构建期间的变更量有关，与知识库大小无关。同一时间只有一个压缩在运行。
+     *
+     * @return 回收的节点数；没有可回收的节点、已有压缩在运行、或期间内容被快照整体替换时返回 0
+     */
+    public int compact() {
+        if (!compacting.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            return doCompact();
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * 关闭当前索引并清空内容，量化时删除原始向量的临时映射文件；正在进行的压缩发现索引被替换后自行放弃
+     */
+    @Override
+    public void destroy() {
+        lock.writeLock().lock();
+        try {
+            if (index != null) {
+                index.close();
+                index = null;
+            }
+            documents = new ArrayList<>();
+            nodesById = new HashMap<>();
+            deleted = new BitSet();
+            metadataIndex = new MetadataBitmapIndex();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 已删除但尚未被压缩回收的节点数
+     *
+     * @return 节点数
+     */
+    public int tombstones() {
+        lock.readLock().lock();
+        try {
+            return index != null ? index.size() - nodesById.size() : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 读取文档的向量
+     *
+     * @param documentId 文档 id
+     * @return 入库时归一化后的向量副本，余弦相似度与原始向量一致；文档不存在时返回 null
+     */
+    @Override
+    public float[] findEmbedding(String documentId) {
+        lock.readLock().lock();
+        try {
+            Integer node = nodesById.get(documentId);
+            return node != null ? index.vector(node) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前存储的文档数（不含已删除的文档）
+     *
+     * @return 文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodesById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public VectorStoreObservationContext.Builder createObservationContextBuilder(String operationName) {
+        lock.readLock().lock();
+        try {
+            return VectorStoreObservationContext.builder(VectorStoreProvider.SIMPLE.value(), operationName)
+                    .dimensions(index != null ? index.dimensions() : null)
+                    .collectionName("in-memory-hnsw")
+                    .similarityMetric(VectorStoreSimilarityMetric.COSINE.value());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 去掉与已存储文档 id、正文、元数据都相同的文档，重复写入同一内容不会留下墓碑
+     *
+     * <p>元数据比较前两侧都经过 {@link #normalize(Object)}：快照以 JSON 保存元数据，加载后 Long 可能变为 Integer、
+     * Float 变为 Double，不能直接比较 {@link Map#equals(Object)}。
+     *
+     * @param documents 待写入文档
+     * @return 新增或内容有变化、需要实际写入的文档
+     */
+    public List<Document> changed(List<Document> documents) {
+        lock.readLock().lock();
+        try {
+            return documents.stream().filter(document -> {
+                Integer node = nodesById.get(document.getId());
+                if (node == null) {
+                    return true;
+                }
+                Document stored = this.documents.get(node);
+                return !Objects.equals(stored.getText(), document.getText())
+                        || !normalize(stored.getMetadata()).equals(normalize(document.getMetadata()));
+            }).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 规范化元数据值：整数统一为 Long，Float 按十进制表示转为 Double，Map 与集合逐项处理
+     */
+    private static Object normalize(Object value) {
+        return switch (value) {
+            case Byte number -> number.longValue();
+            case Short number -> number.longValue();
+            case Integer number -> number.longValue();
+            case Float number -> Double.valueOf(number.toString());
+            case Map<?, ?> map -> {
+                Map<Object, Object> normalized = new HashMap<>(map.size() * 2);
+                map.forEach((key, item) -> normalized.put(key, normalize(item)));
+                yield normalized;
+            }
+            case Collection<?> items -> items.stream().map(HnswVectorStore::normalize).toList();
+            case null, default -> value;
+        };
+    }
+
+    private int doCompact() {
+        HnswIndex source;
+        lock.readLock().lock();
+        try {
+            source = index;
+            if (source == null || source.size() == nodesById.size()) {
+                return 0;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Compaction compaction = new Compaction(
+                new HnswIndex(source.dimensions(), m, efConstruction, seed, quantization, rescoreFactor));
+        try {
+            while (true) {
+                List<Integer> nodes = new ArrayList<>();
+                List<float[]> vectors = new ArrayList<>();
+                List<Document> copies = new ArrayList<>();
+                lock.readLock().lock();
+                try {
+                    if (index != source) {
+                        compaction.target.close();
+                        return 0;
+                    }
+                    if (source.size() - compaction.copied <= COMPACTION_CATCH_UP) {
+                        break;
+                    }
+                    int to = Math.min(source.size(), compaction.copied + COMPACTION_CHUNK);
+                    for (int node = compaction.copied; node < to; node++) {
+                        if (!deleted.get(node)) {
+                            nodes.add(node);
+                            vectors.add(source.vector(node));
+                            copies.add(documents.get(node));
+                        }
+                    }
+                    compaction.copied = to;
+                } finally {
+                    lock.readLock().unlock();
+                }
+                for (int i = 0; i < nodes.size(); i++) {
+                    compaction.insert(nodes.get(i), vectors.get(i), copies.get(i));
+                }
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (index != source) {
+                    compaction.target.close();
+                    return 0;
+                }
+                for (int node = compaction.copied; node < source.size(); node++) {
+                    if (!deleted.get(node)) {
+                        compaction.insert(node, source.vector(node), documents.get(node));
+                    }
+                }
+                compaction.copied = source.size();
+                // 构建期间被删除或被同 id 替换的节点
+                for (int node = deleted.nextSetBit(0); node >= 0; node = deleted.nextSetBit(node + 1)) {
+                    compaction.delete(node);
+                }
+                index = compaction.target;
+                documents = compaction.documents;
+                nodesById = compaction.nodesById;
+                deleted = compaction.deleted;
+                metadataIndex = compaction.metadataIndex;
+                source.close();
+                return source.size() - index.size();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            compaction.target.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 优先用元数据位图求值，位图不支持的表达式回退到 SpEL；调用方须持有锁
+     */
+    private IntPredicate compileFilter(Filter.Expression filterExpression) {
+        BitSet matches = metadataIndex.evaluate(filterExpression);
+        if (matches != null) {
+            return matches::get;
+        }
+        Predicate<Map<String, Object>> filter = metadataFilter(filterExpression);
+        return node -> filter.test(documents.get(node).getMetadata());
+    }
+
+    /**
+     * 把过滤表达式转换为 SpEL，与 SimpleVectorStore 的求值方式一致
+     */
+    private Predicate<Map<String, Object>> metadataFilter(Filter.Expression filterExpression) {
+        Expression expression = expressionParser.parseExpression(
+                filterExpressionConverter.convertExpression(filterExpression));
+        return metadata -> {
+            StandardEvaluationContext context = new StandardEvaluationContext();
+            context.setVariable("metadata", metadata);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        };
+    }
+
+    private static Document toDocument(Document document, double similarity) {
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.put(DocumentMetadata.DISTANCE.value(), 1 - similarity);
+        return Document.builder()
+                .id(document.getId())
+                .text(document.getText())
+                .metadata(metadata)
+                .score(similarity)
+                .build();
+    }
+
+    /**
+     * 一次压缩中正在构建的新索引及旧节点到新节点的映射
+     */
+    private static final class Compaction {
+
+        private final HnswIndex target;
+        private final List<Document> documents = new ArrayList<>();
+        private final Map<String, Integer> nodesById = new HashMap<>();
+        private final BitSet deleted = new BitSet();
+        private final MetadataBitmapIndex metadataIndex = new MetadataBitmapIndex();
+        /** 旧节点 → 新节点，未复制的旧节点为 -1 */
+        private int[] remap = new int[0];
+        /** 旧索引中已处理到的节点 */
+        private int copied;
+
+        private Compaction(HnswIndex target) {
+            this.target = target;
+        }
+
+        private void insert(int source, float[] vector, Document document) {
+            int node = target.add(vector);
+            if (source >= remap.length) {
+                int length = remap.length;
+                remap = Arrays.copyOf(remap, Math.max(source + 1, length * 2));
+                Arrays.fill(remap, length, remap.length, -1);
+            }
+            remap[source] = node;
+            documents.add(document);
+            nodesById.put(document.getId(), node);
+            metadataIndex.add(node, document.getMetadata());
+        }
+
+        private void delete(int source) {
+            if (source >= remap.length || remap[source] < 0) {
+                return;
+            }
+            int node = remap[source];
+            deleted.set(node);
+            nodesById.remove(documents.get(node).getId(), node);
+        }
+    }
+
+    /**
+     * HnswVectorStore 构建器
+     */
+    public static class HnswVectorStoreBuilder extends AbstractVectorStoreBuilder<HnswVectorStoreBuilder> {
+
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+        private long seed = 42;
+        private VectorQuantization quantization = VectorQuantization.NONE;
+        private int rescoreFactor = 4;
+        private int bruteForceThreshold = 2048;
+
+        private HnswVectorStoreBuilder(EmbeddingModel embeddingModel) {
+            super(embeddingModel);
+        }
+
+        /**
+         * @param m 每个节点的最大邻居数（第 0 层为 2M），越大召回率越高、内存占用越大
+         * @return 构建器
+         */
+        public HnswVectorStoreBuilder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * @param efConstruction 插入时的候选集大小，越大图质量越好、写入越慢
+         * @return 构建器
+         */
+        public HnswVectorStoreBuilder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * @param efSearch 查询时的候选集大小，越大召回率越高、查询越慢，实际取值不小于 topK
+         * @return 构建器
+         */
+        public HnswVectorStoreBuilder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * @param seed 层数分配使用的随机种子，固定种子使索引结构可复现
+         * @return 构建器
+         */
+        public HnswVectorStoreBuilder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param quantization 向量量化方式，量化后图在紧凑编码上构建和搜索，原始向量移到堆外
+         * @return 构建器
+         */
+        public HnswVectorStoreBuilder quantization(VectorQuantization quantization) {
+            this.quantization = quantization;
+            return this;
+        }
+
+        /**
+         * @param rescoreFactor 量化时先取 topK 的多少倍候选，再用原始向量重新打分，量化越粗需要越大
+         * @return 构建器
+         */
+        public HnswVectorStoreBuilder rescoreFactor(int rescoreFactor) {
+            this.rescoreFactor = rescoreFactor;
+            return this;
+        }
+
+        /**
+         * @param bruteForceThreshold 过滤后的候选数不超过该值时直接逐一计算相似度，不走图搜索
+         * @return 构建器
+         */
+        public HnswVectorStoreBuilder bruteForceThreshold(int bruteForceThreshold) {
+            this.bruteForceThreshold = bruteForceThreshold;
+            return this;
+        }
+
+        @Override
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import dev.dong4j.ai.spring.advisor.ContextPacker;
+import dev.dong4j.ai.spring.retrieval.Bm25Index;
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 同步维护关键词索引的向量存储装饰器
+ *
+ * <p>写入 {@link HnswVectorStore} 的同时增量更新 {@link Bm25Index}，保证两路召回看到同一份知识库；
+ * 检索和按 id 读取向量的请求直接委托给底层向量存储。
+ *
+ * <p>写入前为每个文档写入内容指纹（见 {@link DocumentDeduplicator}）和正文 token 数（见 {@link ContextPacker#stamp}），
+ * 检索结果因此自带去重键，打包生成上下文时也无需重新估算 token 数。
+ * 只有新增或内容有变化的文档（见 {@link HnswVectorStore#changed(List)}）才写入两个索引并递增
+ * {@link KnowledgeBaseVersion}：重复导入同一批文档不会重建关键词索引条目，也不会让依赖知识库内容的缓存失效。
+ * 删除后同样递增版本号；按过滤表达式删除时先解析出匹配的文档 id，再按 id 同时从两个索引删除。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public class KeywordIndexedVectorStore implements VectorStore, VectorLookup {
+
+    private final HnswVectorStore delegate;
+    private final Bm25Index keywordIndex;
+    private final KnowledgeBaseVersion knowledgeBaseVersion;
+    private final ContextPacker contextPacker;
+
+    /**
+     * 构造函数
+     *
+     * @param delegate 底层 HNSW 向量存储
+     * @param keywordIndex BM25 关键词索引
+     * @param knowledgeBaseVersion 知识库版本号
+     * @param contextPacker 上下文打包器，用于写入 token 数
+     */
+    public KeywordIndexedVectorStore(HnswVectorStore delegate,
+                                     Bm25Index keywordIndex,
+                                     KnowledgeBaseVersion knowledgeBaseVersion,
+                                     ContextPacker contextPacker) {
+        this.delegate = delegate;
+        this.keywordIndex = keywordIndex;
+        this.knowledgeBaseVersion = knowledgeBaseVersion;
+        this.contextPacker = contextPacker;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        for (Document document : documents) {
+            DocumentDeduplicator.stamp(document);
+            contextPacker.stamp(document);
+        }
+        List<Document> changed = delegate.changed(documents);
+        if (changed.isEmpty()) {
+            return;
+        }
+        delegate.add(changed);
+        keywordIndex.add(changed);
+        knowledgeBaseVersion.bump();
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        delegate.delete(idList);
+        keywordIndex.remove(idList);
+        knowledgeBaseVersion.bump();
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        // 先解析出匹配的 id 再按 id 删除，两个索引删除同一批文档
+        List<String> ids = delegate.findIds(filterExpression);
+        if (ids.isEmpty()) {
+            return;
+        }
+        delete(ids);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        return delegate.similaritySearch(request);
+    }
+
+    @Override
+    public float[] findEmbedding(String documentId) {
+        return delegate.findEmbedding(documentId);
+    }
+
+    @Override
+    public <T> Optional<T> getNativeClient() {
+        return delegate.getNativeClient();
+    }
+}
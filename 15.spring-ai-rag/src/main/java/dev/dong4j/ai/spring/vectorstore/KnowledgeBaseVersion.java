@@ -0,0 +1,41 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 知识库版本号
+ *
+ * <p>向量存储每次写入或删除文档都会递增版本号。依赖知识库内容的缓存（如语义答案缓存）
+ * 记录写入时的版本，读取时版本不一致即视为失效。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class KnowledgeBaseVersion {
+
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * 当前版本号
+     *
+     * @return 版本号
+     */
+    public long current() {
+        return version.get();
+    }
+
+    /**
+     * 知识库内容发生变化后递增版本号
+     *
+     * @return 新的版本号
+     */
+    public long bump() {
+        return version.incrementAndGet();
+    }
+}
@@ -0,0 +1,262 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import dev.dong4j.ai.spring.retrieval.DocumentDeduplicator;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * 元数据倒排位图索引
+ *
+ * <p>为每个元数据 key/value 记录包含它的节点集合，把 {@link Filter.Expression} 编译成位图的与、或、非运算，
+ * 在计算任何向量相似度之前就得到候选节点集合，代替逐个文档对过滤表达式求值。
+ *
+ * <p>节点 id 单调递增，倒排表直接用有序 {@code int[]} 追加保存，高基数的 key（如 title、source）不会为每个取值
+ * 分配整段位图；求值时才把涉及的倒排表展开为 {@link BitSet}。比较语义与 SimpleVectorStore 的 SpEL 求值一致：
+ * 数值按大小比较（不区分 Integer/Long/Double），字符串按字典序比较，缺少 key 的文档在 SpEL 中视为 null，
+ * 满足 {@code !=}、{@code <}、{@code <=} 与 {@code NOT IN}。数值统一规范化为去掉末尾零的 {@link BigDecimal}，
+ * 超过 2^53 的 Long 也能精确比较。
+ *
+ * <p>只索引字符串、数值与布尔值；表达式中出现其它类型的值时 {@link #evaluate} 返回 null，由调用方回退到 SpEL 求值。
+ * 每个文档取值都不同、不会用于过滤的内部 key（内容指纹）不建索引，引用它们的表达式同样回退到 SpEL 求值。
+ * 删除不更新倒排表，由调用方与删除位图求差。本类不是线程安全的，并发访问由调用方加锁。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+final class MetadataBitmapIndex {
+
+    /** 不建索引的 key */
+    private static final Set<String> UNINDEXED_KEYS = Set.of(DocumentDeduplicator.FINGERPRINT_METADATA_KEY);
+
+    /** key → 取值 → 倒排表 */
+    private final Map<String, Map<Object, Postings>> values = new HashMap<>();
+    /** key → 值不为 null 的节点 */
+    private final Map<String, Postings> present = new HashMap<>();
+    private int size;
+
+    /**
+     * 追加节点的元数据，节点 id 须按顺序连续传入
+     *
+     * @param node 节点 id
+     * @param metadata 元数据，null 表示该节点没有文档
+     */
+    void add(int node, Map<String, Object> metadata) {
+        if (metadata != null) {
+            metadata.forEach((key, value) -> {
+                if (value == null || UNINDEXED_KEYS.contains(key)) {
+                    return;
+                }
+                present.computeIfAbsent(key, k -> new Postings()).add(node);
+                Object normalized = normalize(value);
+                if (normalized != null) {
+                    values.computeIfAbsent(key, k -> new HashMap<>())
+                            .computeIfAbsent(normalized, v -> new Postings())
+                            .add(node);
+                }
+            });
+        }
+        size = node + 1;
+    }
+
+    /**
+     * 清空索引
+     */
+    void clear() {
+        values.clear();
+        present.clear();
+        size = 0;
+    }
+
+    /**
+     * 求出满足过滤表达式的节点
+     *
+     * @param expression 过滤表达式
+     * @return 满足条件的节点（可能包含已删除的节点）；表达式无法用位图求值时返回 null
+     */
+    BitSet evaluate(Filter.Expression expression) {
+        try {
+            return eval(expression);
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private BitSet eval(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return eval(group.content());
+        }
+        if (!(operand instanceof Filter.Expression expression)) {
+            throw new UnsupportedOperationException(String.valueOf(operand));
+        }
+        return switch (expression.type()) {
+            case AND -> {
+                BitSet result = eval(expression.left());
+                result.and(eval(expression.right()));
+                yield result;
+            }
+            case OR -> {
+                BitSet result = eval(expression.left());
+                result.or(eval(expression.right()));
+                yield result;
+            }
+            case NOT -> complement(eval(expression.left()));
+            case EQ -> equalTo(key(expression), value(expression));
+            case NE -> complement(equalTo(key(expression), value(expression)));
+            case IN -> in(key(expression), expression.right());
+            case NIN -> complement(in(key(expression), expression.right()));
+            case GT -> compare(key(expression), value(expression), c -> c > 0, false);
+            case GTE -> compare(key(expression), value(expression), c -> c >= 0, false);
+            case LT -> compare(key(expression), value(expression), c -> c < 0, true);
+            case LTE -> compare(key(expression), value(expression), c -> c <= 0, true);
+            case ISNULL -> complement(bits(present.get(key(expression))));
+            case ISNOTNULL -> bits(present.get(key(expression)));
+        };
+    }
+
+    private BitSet equalTo(String key, Object value) {
+        Map<Object, Postings> postings = values.get(key);
+        return bits(postings != null ? postings.get(value) : null);
+    }
+
+    private BitSet in(String key, Filter.Operand operand) {
+        if (!(operand instanceof Filter.Value(Collection<?> list))) {
+            throw new UnsupportedOperationException(String.valueOf(operand));
+        }
+        BitSet result = new BitSet(size);
+        for (Object value : list) {
+            result.or(equalTo(key, normalizeOperand(value)));
+        }
+        return result;
+    }
+
+    /**
+     * 范围比较，遍历 key 的所有取值；同一个 key 的取值数远小于文档数
+     *
+     * @param matchesMissing 缺少该 key 的文档是否满足条件（SpEL 中 null 小于任何值）
+     */
+    private BitSet compare(String key, Object value, IntPredicate accept, boolean matchesMissing) {
+        BitSet result = new BitSet(size);
+        Map<Object, Postings> postings = values.getOrDefault(key, Map.of());
+        for (Map.Entry<Object, Postings> entry : postings.entrySet()) {
+            Object candidate = entry.getKey();
+            int comparison;
+            if (candidate instanceof BigDecimal number && value instanceof BigDecimal bound) {
+                comparison = number.compareTo(bound);
+            } else if (candidate instanceof String text && value instanceof String bound) {
+                comparison = text.compareTo(bound);
+            } else {
+                continue;
+            }
+            if (accept.test(comparison)) {
+                entry.getValue().or(result);
+            }
+        }
+        if (matchesMissing) {
+            result.or(complement(bits(present.get(key))));
+        }
+        return result;
+    }
+
+    private BitSet complement(BitSet bits) {
+        bits.flip(0, size);
+        return bits;
+    }
+
+    private BitSet bits(Postings postings) {
+        BitSet bits = new BitSet(size);
+        if (postings != null) {
+            postings.or(bits);
+        }
+        return bits;
+    }
+
+    private static String key(Filter.Expression expression) {
+        if (!(expression.left() instanceof Filter.Key(String key))) {
+            throw new UnsupportedOperationException(String.valueOf(expression.left()));
+        }
+        // 文本过滤表达式中带特殊字符的 key 需要加引号
+        if (key.length() >= 2 && (key.startsWith("'") && key.endsWith("'")
+                || key.startsWith("\"") && key.endsWith("\""))) {
+            key = key.substring(1, key.length() - 1);
+        }
+        if (UNINDEXED_KEYS.contains(key)) {
+            throw new UnsupportedOperationException("未建索引的 key: " + key);
+        }
+        return key;
+    }
+
+    private static Object value(Filter.Expression expression) {
+        if (!(expression.right() instanceof Filter.Value(Object value))) {
+            throw new UnsupportedOperationException(String.valueOf(expression.right()));
+        }
+        return normalizeOperand(value);
+    }
+
+    private static Object normalizeOperand(Object value) {
+        Object normalized = normalize(value);
+        if (normalized == null) {
+            throw new UnsupportedOperationException("不支持位图过滤的值类型: " + value);
+        }
+        return normalized;
+    }
+
+    /**
+     * 数值统一为去掉末尾零的 BigDecimal，使 Integer、Long、Double 取值可以相等比较，且大整数不丢失精度
+     *
+     * @return 规范化后的值，无法索引的类型（含 NaN 与无穷大）返回 null
+     */
+    private static Object normalize(Object value) {
+        return switch (value) {
+            case String text -> text;
+            case Boolean bool -> bool;
+            case Byte number -> BigDecimal.valueOf(number).stripTrailingZeros();
+            case Short number -> BigDecimal.valueOf(number).stripTrailingZeros();
+            case Integer number -> BigDecimal.valueOf(number).stripTrailingZeros();
+            case Long number -> BigDecimal.valueOf(number).stripTrailingZeros();
+            case BigInteger number -> new BigDecimal(number).stripTrailingZeros();
+            case BigDecimal number -> number.stripTrailingZeros();
+            case Float number -> Float.isFinite(number) ? new BigDecimal(number.toString()).stripTrailingZeros() : null;
+            case Double number -> Double.isFinite(number) ? BigDecimal.valueOf(number).stripTrailingZeros() : null;
+            case Number number -> normalize(number.doubleValue());
+            case null, default -> null;
+        };
+    }
+
+    /**
+     * 单调递增的有序节点 id 列表
+     */
+    private static final class Postings {
+
+        private int[] nodes = new int[4];
+        private int count;
+
+        void add(int node) {
+            if (count > 0 && nodes[count - 1] == node) {
+                return;
+            }
+            if (count == nodes.length) {
+                nodes = Arrays.copyOf(nodes, count * 2);
+            }
+            nodes[count++] = node;
+        }
+
+        void or(BitSet target) {
+            for (int i = 0; i < count; i++) {
+                target.set(nodes[i]);
+            }
+        }
+    }
+}
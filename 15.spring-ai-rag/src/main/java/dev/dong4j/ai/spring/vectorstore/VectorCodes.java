@@ -0,0 +1,286 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HNSW 图遍历时使用的向量编码
+ *
+ * <p>图的构建和搜索只通过 {@link Scorer} 计算相似度，编码决定了相似度的精度与内存占用：
+ * <ul>
+ *   <li>{@link Exact}：直接使用 float32 原始向量</li>
+ *   <li>{@link Int8}：每个分量按向量自身的最大绝对值线性量化为 int8，另存一个缩放系数，约为原始大小的 1/4</li>
+ *   <li>{@link Binary}：每个分量只保留符号位，相似度由汉明距离估算，为原始大小的 1/32</li>
+ * </ul>
+ * 入库向量都已归一化。量化编码的相似度只用于找候选，最终排序由 {@link HnswIndex} 用原始向量重新打分。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+abstract class VectorCodes {
+
+    /** 每个分段容纳的节点数 */
+    static final int SEGMENT_SIZE = 1024;
+
+    protected final int dimensions;
+
+    VectorCodes(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    /**
+     * 按量化方式创建编码
+     *
+     * @param quantization 量化方式
+     * @param dimensions 向量维度
+     * @param exact 原始向量，{@link VectorQuantization#NONE} 时直接用于打分
+     * @return 向量编码
+     */
+    static VectorCodes create(VectorQuantization quantization, int dimensions, FloatVectors exact) {
+        return switch (quantization) {
+            case NONE -> new Exact(dimensions, exact);
+            case INT8 -> new Int8(dimensions);
+            case BINARY -> new Binary(dimensions);
+        };
+    }
+
+    /**
+     * 追加已归一化向量的编码
+     *
+     * @param vector 已归一化的向量
+     */
+    abstract void add(float[] vector);
+
+    /**
+     * 与查询向量的相似度打分器
+     *
+     * @param query 已归一化的查询向量
+     * @return 打分器
+     */
+    abstract Scorer scorer(float[] query);
+
+    /**
+     * 与已入库节点的相似度打分器，用于建图时的邻居选择
+     *
+     * @param node 节点 id
+     * @return 打分器
+     */
+    abstract Scorer scorer(int node);
+
+    /**
+     * 打分是否精确，精确时不需要重排
+     *
+     * @return 是否精确
+     */
+    abstract boolean exact();
+
+    /**
+     * 堆内占用的字节数
+     *
+     * @return 字节数
+     */
+    abstract long heapBytes();
+
+    /**
+     * 计算与某个节点的（近似）余弦相似度
+     */
+    @FunctionalInterface
+    interface Scorer {
+
+        /**
+         * @param node 节点 id
+         * @return 相似度
+         */
+        float score(int node);
+    }
+
+    /**
+     * 不量化，直接使用原始向量
+     */
+    static final class Exact extends VectorCodes {
+
+        private final FloatVectors vectors;
+
+        Exact(int dimensions, FloatVectors vectors) {
+            super(dimensions);
+            this.vectors = vectors;
+        }
+
+        @Override
+        void add(float[] vector) {
+            // 原始向量由 FloatVectors 保存
+        }
+
+        @Override
+        Scorer scorer(float[] query) {
+            return node -> vectors.dot(query, node);
+        }
+
+        @Override
+        Scorer scorer(int node) {
+            return scorer(vectors.get(node));
+        }
+
+        @Override
+        boolean exact() {
+            return true;
+        }
+
+        @Override
+        long heapBytes() {
+            return 0;
+        }
+    }
+
+    /**
+     * int8 标量量化
+     */
+    static final class Int8 extends VectorCodes {
+
+        private final List<byte[]> codes = new ArrayList<>();
+        private final List<float[]> scales = new ArrayList<>();
+        private int size;
+
+        Int8(int dimensions) {
+            super(dimensions);
+        }
+
+        @Override
+        void add(float[] vector) {
+            if (size % SEGMENT_SIZE == 0) {
+                codes.add(new byte[SEGMENT_SIZE * dimensions]);
+                scales.add(new float[SEGMENT_SIZE]);
+            }
+            scales.get(size / SEGMENT_SIZE)[size % SEGMENT_SIZE] =
+                    encode(vector, codes.get(size / SEGMENT_SIZE), (size % SEGMENT_SIZE) * dimensions);
+            size++;
+        }
+
+        @Override
+        Scorer scorer(float[] query) {
+            byte[] encoded = new byte[dimensions];
+            float scale = encode(query, encoded, 0);
+            return node -> score(encoded, 0, scale, node);
+        }
+
+        @Override
+        Scorer scorer(int node) {
+            byte[] segment = codes.get(node / SEGMENT_SIZE);
+            int offset = (node % SEGMENT_SIZE) * dimensions;
+            float scale = scales.get(node / SEGMENT_SIZE)[node % SEGMENT_SIZE];
+            return other -> score(segment, offset, scale, other);
+        }
+
+        @Override
+        boolean exact() {
+            return false;
+        }
+
+        @Override
+        long heapBytes() {
+            return (long) codes.size() * SEGMENT_SIZE * (dimensions + Float.BYTES);
+        }
+
+        private float score(byte[] query, int queryOffset, float queryScale, int node) {
+            byte[] segment = codes.get(node / SEGMENT_SIZE);
+            int offset = (node % SEGMENT_SIZE) * dimensions;
+            int dot = 0;
+            for (int i = 0; i < dimensions; i++) {
+                dot += query[queryOffset + i] * segment[offset + i];
+            }
+            return dot * queryScale * scales.get(node / SEGMENT_SIZE)[node % SEGMENT_SIZE];
+        }
+
+        /**
+         * 按最大绝对值把向量线性映射到 [-127, 127]
+         *
+         * @return 缩放系数，code × scale 还原分量
+         */
+        private float encode(float[] vector, byte[] target, int offset) {
+            float max = 0;
+            for (float value : vector) {
+                max = Math.max(max, Math.abs(value));
+            }
+            if (max == 0) {
+                return 0;
+            }
+            float scale = max / 127;
+            for (int i = 0; i < dimensions; i++) {
+                target[offset + i] = (byte) Math.round(vector[i] / scale);
+            }
+            return scale;
+        }
+    }
+
+    /**
+     * 1-bit 二值量化
+     */
+    static final class Binary extends VectorCodes {
+
+        private final int words;
+        private final List<long[]> codes = new ArrayList<>();
+        private int size;
+
+        Binary(int dimensions) {
+            super(dimensions);
+            this.words = (dimensions + Long.SIZE - 1) / Long.SIZE;
+        }
+
+        @Override
+        void add(float[] vector) {
+            if (size % SEGMENT_SIZE == 0) {
+                codes.add(new long[SEGMENT_SIZE * words]);
+            }
+            encode(vector, codes.get(size / SEGMENT_SIZE), (size % SEGMENT_SIZE) * words);
+            size++;
+        }
+
+        @Override
+        Scorer scorer(float[] query) {
+            long[] encoded = new long[words];
+            encode(query, encoded, 0);
+            return node -> score(encoded, 0, node);
+        }
+
+        @Override
+        Scorer scorer(int node) {
+            long[] segment = codes.get(node / SEGMENT_SIZE);
+            int offset = (node % SEGMENT_SIZE) * words;
+            return other -> score(segment, offset, other);
+        }
+
+        @Override
+        boolean exact() {
+            return false;
+        }
+
+        @Override
+        long heapBytes() {
+            return (long) codes.size() * SEGMENT_SIZE * words * Long.BYTES;
+        }
+
+        /**
+         * 符号位不同的分量比例 h 对应夹角约为 hπ，相似度估算为 cos(hπ)
+         */
+        private float score(long[] query, int queryOffset, int node) {
+            long[] segment = codes.get(node / SEGMENT_SIZE);
+            int offset = (node % SEGMENT_SIZE) * words;
+            int hamming = 0;
+            for (int i = 0; i < words; i++) {
+                hamming += Long.bitCount(query[queryOffset + i] ^ segment[offset + i]);
+            }
+            return (float) Math.cos(Math.PI * hamming / dimensions);
+        }
+
+        private void encode(float[] vector, long[] target, int offset) {
+            for (int i = 0; i < dimensions; i++) {
+                if (vector[i] > 0) {
+                    target[offset + i / Long.SIZE] |= 1L << (i % Long.SIZE);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+/**
+ * 按文档 id 读取已入库向量
+ *
+ * <p>供需要在检索之后继续使用文档向量的组件（如 MMR 多样性重排）直接读取入库时算好的嵌入，
+ * 避免对候选文档重新调用嵌入模型。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public interface VectorLookup {
+
+    /**
+     * 读取文档的嵌入向量
+     *
+     * @param documentId 文档 id
+     * @return 嵌入向量，文档不存在时返回 null；调用方不得修改返回的数组
+     */
+    float[] findEmbedding(String documentId);
+}
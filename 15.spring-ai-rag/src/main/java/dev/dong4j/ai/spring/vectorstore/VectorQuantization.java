@@ -0,0 +1,25 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+/**
+ * 向量量化方式
+ *
+ * <p>量化后 HNSW 图在紧凑编码上构建和搜索，原始向量移到堆外内存映射文件中，只在重排候选时读取，
+ * 堆内存占用随之下降。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+public enum VectorQuantization {
+
+    /** 不量化，float32 向量保存在堆内 */
+    NONE,
+
+    /** int8 标量量化，约为 float32 的 1/4 */
+    INT8,
+
+    /** 1-bit 二值量化，为 float32 的 1/32，召回率依赖更多候选的重排，rescoreFactor 通常需要 10 以上 */
+    BINARY
+}
@@ -0,0 +1,92 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.retrieval.Bm25Index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 向量存储的后台压缩
+ *
+ * <p>删除和按 id 替换文档只在 {@link HnswVectorStore} 中留下墓碑，节点仍占用内存并参与图的遍历。
+ * 这里定期检查墓碑数量，数量与占比都达到阈值时调用 {@link HnswVectorStore#compact()} 重建索引，
+ * 避免长时间运行的实例被已删除的向量逐渐占满。压缩期间查询和写入照常进行。
+ *
+ * <p>{@link Bm25Index} 的墓碑与向量存储同步产生，随后一并调用 {@link Bm25Index#compact()} 回收。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class VectorStoreCompactor implements InitializingBean, DisposableBean {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final HnswVectorStore vectorStore;
+    private final Bm25Index keywordIndex;
+    private final RagProperties.Compaction properties;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 构造函数
+     *
+     * @param vectorStore HNSW 向量存储
+     * @param keywordIndex BM25 关键词索引
+     * @param properties RAG 配置
+     */
+    public VectorStoreCompactor(HnswVectorStore vectorStore, Bm25Index keywordIndex, RagProperties properties) {
+        this.vectorStore = vectorStore;
+        this.keywordIndex = keywordIndex;
+        this.properties = properties.compaction();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.enabled()) {
+            return;
+        }
+        long interval = properties.interval().toMillis();
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofVirtual().name("vector-store-compactor").factory());
+        scheduler.scheduleWithFixedDelay(this::compactIfNeeded, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 墓碑数量与占比都达到阈值时压缩
+     */
+    void compactIfNeeded() {
+        int tombstones = vectorStore.tombstones();
+        int total = tombstones + vectorStore.size();
+        if (tombstones < properties.minTombstones() || tombstones < total * properties.tombstoneRatio()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            int reclaimed = vectorStore.compact();
+            int keywordReclaimed = keywordIndex.compact();
+            log.info("向量存储压缩完成: 回收 {} 个节点、{} 个关键词索引文档，剩余 {} 个文档，耗时 {} ms",
+                    reclaimed, keywordReclaimed, vectorStore.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (RuntimeException e) {
+            // 异常会终止周期任务，这里吞掉，下个周期重试
+            log.warn("向量存储压缩失败: {}", e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
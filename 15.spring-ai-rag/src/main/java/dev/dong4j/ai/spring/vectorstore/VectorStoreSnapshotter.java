@@ -0,0 +1,112 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.retrieval.Bm25Index;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 向量存储快照的加载与保存
+ *
+ * <p>启动时如果快照文件存在，加载到 {@link HnswVectorStore} 并用其中的文档重建 BM25 关键词索引；
+ * 关闭时如果知识库自加载以来有变化，把内容写回快照。
+ *
+ * <p>快照加载失败时以空知识库启动，但不能让关闭时的保存用空知识库覆盖它：读不出来的文件可能只是版本或实现问题，
+ * 内容仍然完整。加载失败的快照会被改名移到一边（{@code <文件名>.corrupt-<时间戳>}）留待排查；
+ * 改名也失败时本次运行不再保存快照。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class VectorStoreSnapshotter implements InitializingBean, DisposableBean {
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final HnswVectorStore vectorStore;
+    private final Bm25Index keywordIndex;
+    private final KnowledgeBaseVersion knowledgeBaseVersion;
+    private final RagProperties.Snapshot properties;
+    private long savedVersion;
+    private boolean saveDisabled;
+
+    /**
+     * 构造函数
+     *
+     * @param vectorStore HNSW 向量存储
+     * @param keywordIndex BM25 关键词索引
+     * @param knowledgeBaseVersion 知识库版本号
+     * @param properties RAG 配置
+     */
+    public VectorStoreSnapshotter(HnswVectorStore vectorStore,
+                                  Bm25Index keywordIndex,
+                                  KnowledgeBaseVersion knowledgeBaseVersion,
+                                  RagProperties properties) {
+        this.vectorStore = vectorStore;
+        this.keywordIndex = keywordIndex;
+        this.knowledgeBaseVersion = knowledgeBaseVersion;
+        this.properties = properties.snapshot();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Path file = properties.file();
+        if (!properties.enabled() || !Files.exists(file)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            List<Document> documents = vectorStore.load(file);
+            keywordIndex.add(documents);
+            savedVersion = knowledgeBaseVersion.bump();
+            log.info("已加载向量存储快照 {}: {} 个文档，耗时 {} ms",
+                    file, documents.size(), (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.error("加载向量存储快照 {} 失败，以空知识库启动: {}", file, e.getMessage(), e);
+            quarantine(file);
+        }
+    }
+
+    /**
+     * 把加载失败的快照移到一边，移动失败时停止保存，保证它不会被覆盖
+     */
+    private void quarantine(Path file) {
+        Path moved = file.resolveSibling(file.getFileName() + ".corrupt-" + System.currentTimeMillis());
+        try {
+            Files.move(file, moved);
+            log.error("已将无法加载的快照移至 {}", moved);
+        } catch (IOException e) {
+            saveDisabled = true;
+            log.error("无法移走快照 {}，本次运行不再保存快照以免覆盖: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * 知识库有变化时把内容写回快照
+     */
+    @Override
+    public void destroy() {
+        if (!properties.enabled() || saveDisabled || knowledgeBaseVersion.current() == savedVersion) {
+            return;
+        }
+        try {
+            vectorStore.save(properties.file());
+            log.info("已保存向量存储快照 {}: {} 个文档", properties.file(), vectorStore.size());
+        } catch (IOException e) {
+            log.warn("保存向量存储快照 {} 失败: {}", properties.file(), e.getMessage());
+        }
+    }
+}
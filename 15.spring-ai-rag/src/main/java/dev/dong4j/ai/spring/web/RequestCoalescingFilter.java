@@ -0,0 +1,178 @@
+package dev.dong4j.ai.spring.web;
+
+import dev.dong4j.ai.spring.cache.QueryTransformCache;
+import dev.dong4j.ai.spring.config.RagProperties;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 合并并发的相同 RAG 请求
+ *
+ * <p>热门问题往往在同一时刻被反复提交，每个请求都会各自执行查询扩展、检索和生成。这里以
+ * 「请求路径 + 规范化后的参数」为键，同一时刻只让第一个请求（leader）执行流水线，其余相同请求等待它完成，
+ * 直接复用它的状态码、内容类型和响应体。请求完成后键即被移除，不做结果缓存：之后到达的请求重新执行。
+ *
+ * <p>只作用于 {@code /rag/} 下的 GET 请求；流式接口（{@code /stream} 结尾）的响应是逐步写出的，
+ * 以及配置中排除的有副作用的接口，不参与合并。leader 抛出异常或转为异步处理时，等待者各自执行；
+ * 等待超过 {@code rag.coalescing.wait-timeout} 时也各自执行。合并情况计入 {@code rag.request.coalescing}
+ * 指标（标签 {@code role=leader|follower}）。
+ *
+ * @author ogromwang
+ * @version 1.0.0
+ * @email mailto:ogromwang@gmail.com
+ * @date 2025.11.29
+ * @since 1.0.0
+ */
+@Component
+public class RequestCoalescingFilter extends OncePerRequestFilter {
+
+    /** 合并指标名 */
+    public static final String METRIC_NAME = "rag.request.coalescing";
+
+    private final RagProperties.Coalescing properties;
+    private final ConcurrentMap<String, CompletableFuture<CapturedResponse>> inFlight = new ConcurrentHashMap<>();
+    private final Counter leaders;
+    private final Counter followers;
+
+    /**
+     * 构造函数
+     *
+     * @param properties RAG 配置属性
+     * @param meterRegistry 指标注册表
+     */
+    @Autowired
+    public RequestCoalescingFilter(RagProperties properties, MeterRegistry meterRegistry) {
+        this(properties.coalescing(), meterRegistry);
+    }
+
+    /**
+     * 构造函数
+     *
+     * @param properties 请求合并配置
+     * @param meterRegistry 指标注册表
+     */
+    public RequestCoalescingFilter(RagProperties.Coalescing properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.leaders = Counter.builder(METRIC_NAME).tag("role", "leader").register(meterRegistry);
+        this.followers = Counter.builder(METRIC_NAME).tag("role", "follower").register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!properties.enabled() || !HttpMethod.GET.matches(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/rag/") || path.endsWith("/stream") || properties.excludedPaths().contains(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = key(request);
+        CompletableFuture<CapturedResponse> created = new CompletableFuture<>();
+        CompletableFuture<CapturedResponse> existing = inFlight.putIfAbsent(key, created);
+        if (existing == null) {
+            leaders.increment();
+            lead(key, created, request, response, chain);
+            return;
+        }
+
+        CapturedResponse shared = await(existing);
+        if (shared == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        followers.increment();
+        response.setStatus(shared.status());
+        if (shared.contentType() != null) {
+            response.setContentType(shared.contentType());
+        }
+        response.setContentLength(shared.body().length);
+        response.getOutputStream().write(shared.body());
+    }
+
+    private void lead(String key, CompletableFuture<CapturedResponse> result, HttpServletRequest request,
+                      HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        try {
+            chain.doFilter(request, wrapper);
+            if (request.isAsyncStarted()) {
+                result.complete(null);
+            } else {
+                result.complete(new CapturedResponse(
+                        wrapper.getStatus(), wrapper.getContentType(), wrapper.getContentAsByteArray()));
+            }
+        } catch (ServletException | IOException | RuntimeException e) {
+            result.complete(null);
+            throw e;
+        } finally {
+            // 先移除再写回：写回期间到达的请求不再复用这次结果
+            inFlight.remove(key, result);
+            if (!request.isAsyncStarted()) {
+                wrapper.copyBodyToResponse();
+            }
+        }
+    }
+
+    /**
+     * 等待 leader 的响应
+     *
+     * @return leader 的响应，leader 失败、转为异步或等待超时时返回 null
+     */
+    private CapturedResponse await(CompletableFuture<CapturedResponse> leader) throws ServletException {
+        try {
+            return leader.get(properties.waitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("等待合并请求时被中断", e);
+        }
+    }
+
+    /**
+     * 合并键：请求路径 + 按名称排序、规范化后的参数
+     */
+    private static String key(HttpServletRequest request) {
+        StringBuilder key = new StringBuilder(request.getRequestURI());
+        Map<String, String[]> parameters = new TreeMap<>(request.getParameterMap());
+        for (Map.Entry<String, String[]> parameter : parameters.entrySet()) {
+            key.append('\n').append(parameter.getKey()).append('=');
+            List<String> values = Arrays.stream(parameter.getValue()).map(QueryTransformCache::normalize).toList();
+            key.append(String.join("\u0000", values));
+        }
+        return key.toString();
+    }
+
+    /**
+     * leader 的响应
+     *
+     * @param status 状态码
+     * @param contentType 内容类型
+     * @param body 响应体
+     */
+    private record CapturedResponse(int status, String contentType, byte[] body) {}
+}
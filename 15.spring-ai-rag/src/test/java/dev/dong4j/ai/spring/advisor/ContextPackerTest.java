@@ -0,0 +1,45 @@
+package dev.dong4j.ai.spring.advisor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.List;
+
+/**
+ * 上下文打包测试，覆盖按排序在 token 预算内装箱、跳过放不下的文档、去掉重复句子并缓存 token 数。
+ */
+class ContextPackerTest {
+
+    private final TokenCountEstimator estimator = new JTokkitTokenCountEstimator();
+
+    @Test
+    void packsHighestRankedDocumentsWithinBudget() {
+        Document first = doc("a", "Spring AI provides a portable vector store API. It also supports RAG advisors.");
+        Document duplicate = doc("b", "Spring AI provides a portable vector store API. Reranking improves precision.");
+        Document large = doc("c", "Chunk overlap keeps context across boundaries. ".repeat(40));
+        Document small = doc("d", "HNSW is an approximate nearest neighbour index.");
+        int budget = estimator.estimate(first.getText()) + estimator.estimate("Reranking improves precision.")
+                + estimator.estimate(small.getText());
+
+        List<Document> packed = new ContextPacker(estimator, budget, 0.8, new SimpleMeterRegistry())
+                .pack(List.of(first, duplicate, large, small));
+
+        assertEquals(List.of("a", "b", "d"), packed.stream().map(Document::getId).toList());
+        assertEquals("Reranking improves precision.", packed.get(1).getText(), "与已选文档重复的句子被去掉");
+        int used = packed.stream().mapToInt(d -> (Integer) d.getMetadata().get(ContextPacker.TOKEN_COUNT_METADATA_KEY))
+                .sum();
+        assertTrue(used <= budget);
+        assertEquals(estimator.estimate(large.getText().strip()),
+                large.getMetadata().get(ContextPacker.TOKEN_COUNT_METADATA_KEY), "token 数缓存在元数据中");
+    }
+
+    private static Document doc(String id, String text) {
+        return Document.builder().id(id).text(text).build();
+    }
+}
@@ -0,0 +1,52 @@
+package dev.dong4j.ai.spring.advisor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 检索上下文注入测试，验证检索结果按顺序拼入用户消息，且按需检索只执行一次。
+ */
+class RetrievalContextAdvisorTest {
+
+    private final RetrievalContextAdvisor advisor = new RetrievalContextAdvisor(
+            new ContextPacker(new JTokkitTokenCountEstimator(), 3000, 0.8, new SimpleMeterRegistry()));
+
+    @Test
+    void injectsDocumentsInOrder() {
+        AtomicInteger retrievals = new AtomicInteger();
+        Supplier<List<Document>> retriever = () -> {
+            retrievals.incrementAndGet();
+            return List.of(new Document("RAG 是检索增强生成"), new Document("Spring AI 支持向量存储"));
+        };
+        ChatClientRequest request = ChatClientRequest.builder()
+                .prompt(new Prompt("什么是 RAG？"))
+                .context(Map.of(RetrievalContext.DOCUMENTS, retriever))
+                .build();
+
+        String userText = advisor.before(request, null).prompt().getUserMessage().getText();
+
+        assertTrue(userText.startsWith("什么是 RAG？"));
+        assertTrue(userText.indexOf("[1] RAG 是检索增强生成") < userText.indexOf("[2] Spring AI 支持向量存储"));
+        assertEquals(1, retrievals.get());
+    }
+
+    @Test
+    void requestsWithoutContextPassThrough() {
+        ChatClientRequest request = ChatClientRequest.builder().prompt(new Prompt("你好")).build();
+
+        assertSame(request, advisor.before(request, null));
+    }
+}
@@ -0,0 +1,61 @@
+package dev.dong4j.ai.spring.advisor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.vectorstore.KnowledgeBaseVersion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.util.List;
+
+/**
+ * 语义缓存 Advisor 测试，覆盖检索到的文档集合不同（如 topK 不同）时不复用缓存的回答。
+ */
+class SemanticCacheAdvisorTest {
+
+    @Test
+    void retrievedDocumentsArePartOfTheCacheScope() {
+        EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+        when(embeddingModel.embed(anyString())).thenReturn(new float[] {1f, 0f});
+        ChatModel chatModel = mock(ChatModel.class);
+        when(chatModel.call(any(Prompt.class)))
+                .thenReturn(new ChatResponse(List.of(new Generation(new AssistantMessage("回答")))));
+        SemanticCacheAdvisor advisor = new SemanticCacheAdvisor(embeddingModel, new KnowledgeBaseVersion(),
+                new RagProperties.SemanticCache(0.92f, 16), new SimpleMeterRegistry());
+        ChatClient chatClient = ChatClient.builder(chatModel).defaultAdvisors(advisor).build();
+
+        List<Document> top2 = List.of(new Document("RAG 是检索增强生成"), new Document("Spring AI 支持向量存储"));
+        List<Document> top3 = List.of(top2.get(0), top2.get(1), new Document("HNSW 是近似最近邻索引"));
+        ask(chatClient, top2);
+        ask(chatClient, List.of(top2.get(1), top2.get(0)));
+        verify(chatModel, times(1)).call(any(Prompt.class));
+
+        assertEquals("回答", ask(chatClient, top3));
+        verify(chatModel, times(2)).call(any(Prompt.class));
+    }
+
+    private static String ask(ChatClient chatClient, List<Document> documents) {
+        return chatClient.prompt()
+                .user("什么是 RAG？")
+                .advisors(RetrievalContext.of(documents))
+                .advisors(SemanticCacheAdvisor.scope("/rag/rerank"))
+                .call()
+                .content();
+    }
+}
@@ -0,0 +1,46 @@
+package dev.dong4j.ai.spring.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 查询转换缓存测试，覆盖查询归一化、提示词版本隔离、TTL 过期与命中指标。
+ */
+class InMemoryQueryTransformCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void normalizedQueryHitsCache() {
+        QueryTransformCache cache = new InMemoryQueryTransformCache(10, Duration.ofMinutes(5), registry);
+
+        assertEquals("rewritten", cache.getOrCompute("rewrite-v1", "Spring  AI？", this::transform));
+        assertEquals("rewritten", cache.getOrCompute("rewrite-v1", " spring ai? ", this::transform));
+        cache.getOrCompute("rewrite-v2", "Spring AI？", this::transform);
+
+        assertEquals(2, calls.get());
+        assertEquals(1.0, registry.counter(InMemoryQueryTransformCache.METRIC_NAME, "result", "hit").count());
+        assertEquals(2.0, registry.counter(InMemoryQueryTransformCache.METRIC_NAME, "result", "miss").count());
+    }
+
+    @Test
+    void expiredEntryIsRecomputed() {
+        QueryTransformCache cache = new InMemoryQueryTransformCache(10, Duration.ZERO, registry);
+
+        cache.getOrCompute("rewrite-v1", "Spring AI", this::transform);
+        cache.getOrCompute("rewrite-v1", "Spring AI", this::transform);
+
+        assertEquals(2, calls.get());
+    }
+
+    private String transform(String query) {
+        calls.incrementAndGet();
+        return "rewritten";
+    }
+}
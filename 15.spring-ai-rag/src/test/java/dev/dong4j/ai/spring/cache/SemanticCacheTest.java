@@ -0,0 +1,46 @@
+package dev.dong4j.ai.spring.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * 语义缓存测试，覆盖相似度阈值、作用域隔离、知识库版本失效与循环覆盖。
+ */
+class SemanticCacheTest {
+
+    @Test
+    void matchesParaphraseAboveThresholdWithinScope() {
+        SemanticCache<String> cache = new SemanticCache<>(4, 0.9f);
+        cache.put("/rag/naive", 1, new float[] {1f, 0f, 0f}, "答案");
+
+        assertEquals("答案", cache.find("/rag/naive", 1, new float[] {0.95f, 0.2f, 0f}));
+        assertNull(cache.find("/rag/naive", 1, new float[] {0.5f, 0.8f, 0f}));
+        assertNull(cache.find("/rag/rerank", 1, new float[] {1f, 0f, 0f}));
+    }
+
+    @Test
+    void knowledgeBaseChangeInvalidatesEntries() {
+        SemanticCache<String> cache = new SemanticCache<>(4, 0.9f);
+        cache.put("s", 1, new float[] {1f, 0f}, "旧答案");
+
+        assertNull(cache.find("s", 2, new float[] {1f, 0f}));
+
+        cache.put("s", 2, new float[] {0f, 1f}, "新答案");
+        cache.put("s", 1, new float[] {1f, 0f}, "过时答案");
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void oldestEntryIsOverwrittenWhenFull() {
+        SemanticCache<String> cache = new SemanticCache<>(2, 0.99f);
+        cache.put("s", 0, new float[] {1f, 0f, 0f}, "a");
+        cache.put("s", 0, new float[] {0f, 1f, 0f}, "b");
+        cache.put("s", 0, new float[] {0f, 0f, 1f}, "c");
+
+        assertNull(cache.find("s", 0, new float[] {1f, 0f, 0f}));
+        assertEquals("c", cache.find("s", 0, new float[] {0f, 0f, 1f}));
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,68 @@
+package dev.dong4j.ai.spring.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import dev.dong4j.ai.spring.cache.QueryTransformCache;
+import dev.dong4j.ai.spring.rerank.CascadeReranker;
+import dev.dong4j.ai.spring.rerank.LlmReranker;
+import dev.dong4j.ai.spring.rerank.MmrSelector;
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+import dev.dong4j.ai.spring.stream.RagStreamer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * 重排接口测试，覆盖默认参数下候选池大于 top-K、廉价阶段区分不开时升级到 LLM 评分。
+ */
+class RerankingControllerTest {
+
+    private static final String QUERY = "Spring AI 的核心特性是什么？";
+
+    private final VectorStore vectorStore = mock(VectorStore.class);
+    private final LlmReranker llmReranker = mock(LlmReranker.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RerankingController controller = new RerankingController(
+            mock(ChatClient.class, RETURNS_DEEP_STUBS),
+            vectorStore,
+            mock(RecallExecutor.class),
+            llmReranker,
+            new CascadeReranker(llmReranker, 0.5, 0.1, meterRegistry),
+            mock(MmrSelector.class),
+            mock(QueryTransformCache.class),
+            mock(RagStreamer.class));
+
+    @Test
+    void basicRerankEscalatesAtDefaultParameters() {
+        // 文本相同、向量分数接近：关键词和向量阶段都区分不开
+        List<Document> candidates = IntStream.range(0, 10)
+                .mapToObj(i -> Document.builder().id("doc-" + i).text("Spring AI 特性").score(0.80 + i * 0.001).build())
+                .toList();
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(candidates);
+        when(llmReranker.rerank(eq(QUERY), anyList(), eq(5))).thenReturn(candidates.subList(0, 5));
+
+        controller.basicRerank(QUERY, 5);
+
+        ArgumentCaptor<SearchRequest> request = ArgumentCaptor.forClass(SearchRequest.class);
+        verify(vectorStore).similaritySearch(request.capture());
+        assertEquals(10, request.getValue().getTopK());
+        verify(llmReranker).rerank(QUERY, candidates, 5);
+        assertEquals(1, meterRegistry.get(CascadeReranker.METRIC_NAME).tag("stage", "llm").tag("decision", "accept")
+                .counter().count());
+    }
+}
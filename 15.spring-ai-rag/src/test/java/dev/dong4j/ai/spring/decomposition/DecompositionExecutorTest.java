@@ -0,0 +1,91 @@
+package dev.dong4j.ai.spring.decomposition;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 查询分解执行器测试，覆盖子查询解析、并发上限，以及每个子查询拿到许可后独立计时。
+ */
+class DecompositionExecutorTest {
+
+    private final RecallExecutor recallExecutor = new RecallExecutor(Duration.ofSeconds(5));
+
+    @AfterEach
+    void tearDown() {
+        recallExecutor.destroy();
+    }
+
+    @Test
+    void parsesNumberedAndBulletedLines() {
+        String decomposition = """
+                子查询列表:
+                1. Spring AI 与 Spring Framework 的关系
+                - Spring AI 的核心特性
+
+                2、Spring AI 支持哪些模型
+                """;
+
+        assertEquals(List.of("Spring AI 与 Spring Framework 的关系", "Spring AI 的核心特性", "Spring AI 支持哪些模型"),
+                DecompositionExecutor.parseSubQueries(decomposition));
+    }
+
+    @Test
+    void subQueriesRunInParallelWithinConcurrencyCap() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        VectorStore vectorStore = mock(VectorStore.class);
+        when(vectorStore.similaritySearch(anyString())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(100);
+            running.decrementAndGet();
+            return List.of(new Document(invocation.getArgument(0, String.class)));
+        });
+        ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+
+        DecompositionExecutor executor =
+                new DecompositionExecutor(chatClient, vectorStore, recallExecutor, 2, Duration.ofSeconds(2));
+        List<DecompositionExecutor.SubAnswer> subAnswers = executor.answerAll(List.of("a", "b", "c", "d"));
+
+        assertEquals(4, subAnswers.size());
+        assertEquals("c", subAnswers.get(2).documents().get(0).getText());
+        assertTrue(subAnswers.stream().allMatch(s -> s.status() == RecallExecutor.Status.COMPLETED));
+        assertEquals(2, peak.get());
+    }
+
+    @Test
+    void slowSubQueryTimesOutWithoutStarvingQueuedOnes() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        when(vectorStore.similaritySearch(anyString())).thenAnswer(invocation -> {
+            String subQuery = invocation.getArgument(0, String.class);
+            Thread.sleep("slow".equals(subQuery) ? 5_000 : 150);
+            return List.of(new Document(subQuery));
+        });
+        ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+
+        DecompositionExecutor executor =
+                new DecompositionExecutor(chatClient, vectorStore, recallExecutor, 1, Duration.ofMillis(400));
+        List<DecompositionExecutor.SubAnswer> subAnswers = executor.answerAll(List.of("slow", "b", "c"));
+
+        // 串行执行：slow 在自己的 400ms 截止时间到达时被取消，b、c 排队后各有完整的截止时间
+        assertEquals(RecallExecutor.Status.TIMEOUT, subAnswers.get(0).status());
+        assertEquals(RecallExecutor.Status.COMPLETED, subAnswers.get(1).status());
+        assertEquals(RecallExecutor.Status.COMPLETED, subAnswers.get(2).status());
+        assertEquals("c", subAnswers.get(2).documents().get(0).getText());
+    }
+}
@@ -0,0 +1,126 @@
+package dev.dong4j.ai.spring.embedding;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 持久化嵌入缓存测试，覆盖重新打开后命中、只请求未命中的文本、半精度存储，以及损坏记录处截断。
+ */
+class CachingEmbeddingModelTest {
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    void reopenedCacheServesVectorsWithoutCallingDelegate() {
+        Path file = workDir.resolve("cache.bin");
+        try (MappedEmbeddingCache cache = new MappedEmbeddingCache(file, MappedEmbeddingCache.Precision.FLOAT32, 64)) {
+            EmbeddingModel first = caching(stubDelegate(), cache);
+            assertArrayEquals(new float[] {5f, 1f}, first.embed("hello"));
+        }
+
+        EmbeddingModel delegate = stubDelegate();
+        try (MappedEmbeddingCache cache = new MappedEmbeddingCache(file, MappedEmbeddingCache.Precision.FLOAT32, 64)) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(new float[] {5f, 1f}, caching(delegate, cache).embed("hello"));
+        }
+        verify(delegate, never()).call(any());
+    }
+
+    @Test
+    void onlyMissingTextsAreSentToDelegate() {
+        EmbeddingModel delegate = stubDelegate();
+        try (MappedEmbeddingCache cache = new MappedEmbeddingCache(
+                workDir.resolve("cache.bin"), MappedEmbeddingCache.Precision.FLOAT32, 64)) {
+            EmbeddingModel model = caching(delegate, cache);
+            model.embed("a");
+
+            List<float[]> vectors = model.embed(List.of("bb", "a", "ccc"));
+
+            assertArrayEquals(new float[] {2f, 1f}, vectors.get(0));
+            assertArrayEquals(new float[] {1f, 1f}, vectors.get(1));
+            assertArrayEquals(new float[] {3f, 1f}, vectors.get(2));
+            ArgumentCaptor<EmbeddingRequest> requests = ArgumentCaptor.forClass(EmbeddingRequest.class);
+            verify(delegate, times(2)).call(requests.capture());
+            assertEquals(List.of("bb", "ccc"), requests.getAllValues().get(1).getInstructions());
+        }
+    }
+
+    @Test
+    void float16VectorsRoundTripApproximately() {
+        try (MappedEmbeddingCache cache = new MappedEmbeddingCache(
+                workDir.resolve("cache.bin"), MappedEmbeddingCache.Precision.FLOAT16, 16)) {
+            byte[] key = MappedEmbeddingCache.key("m", 0, "text");
+            cache.put(key, new float[] {0.1234f, -0.5f, 0.75f});
+
+            assertArrayEquals(new float[] {0.1234f, -0.5f, 0.75f}, cache.get(key).orElseThrow(), 1e-3f);
+        }
+    }
+
+    @Test
+    void corruptRecordTruncatesInsteadOfFailing() throws Exception {
+        Path file = workDir.resolve("cache.bin");
+        byte[] first = MappedEmbeddingCache.key("m", 0, "first");
+        byte[] second = MappedEmbeddingCache.key("m", 0, "second");
+        try (MappedEmbeddingCache cache = new MappedEmbeddingCache(file, MappedEmbeddingCache.Precision.FLOAT32, 64)) {
+            cache.put(first, new float[] {1f, 2f});
+            cache.put(second, new float[] {3f, 4f});
+        }
+        // 把第二条记录的维度改成负数：文件头 16 字节 + 第一条记录 45 字节 + key 32 字节 + 精度 1 字节
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, -7), 16 + 45 + 33);
+        }
+
+        try (MappedEmbeddingCache cache = new MappedEmbeddingCache(file, MappedEmbeddingCache.Precision.FLOAT32, 64)) {
+            assertEquals(1, cache.size());
+            assertArrayEquals(new float[] {1f, 2f}, cache.get(first).orElseThrow());
+            assertTrue(cache.get(second).isEmpty());
+
+            cache.put(second, new float[] {5f, 6f});
+            assertArrayEquals(new float[] {5f, 6f}, cache.get(second).orElseThrow());
+        }
+    }
+
+    private static EmbeddingModel caching(EmbeddingModel delegate, MappedEmbeddingCache cache) {
+        return new CachingEmbeddingModel(delegate, cache, "text-embedding-v3", null, new SimpleMeterRegistry());
+    }
+
+    /**
+     * 每段文本嵌入为 [长度, 1]
+     */
+    private static EmbeddingModel stubDelegate() {
+        EmbeddingModel delegate = mock(EmbeddingModel.class);
+        when(delegate.call(any())).thenAnswer(invocation -> {
+            EmbeddingRequest request = invocation.getArgument(0);
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(new float[] {text.length(), 1f}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        });
+        return delegate;
+    }
+}
@@ -0,0 +1,105 @@
+package dev.dong4j.ai.spring.embedding;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 嵌入请求合并测试，覆盖并发调用合并为一次请求、重复文本去重、失败传播，以及等待超时与停止后调用方不会一直阻塞。
+ */
+class CoalescingEmbeddingModelTest {
+
+    private final EmbeddingModel delegate = mock(EmbeddingModel.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CoalescingEmbeddingModel model;
+
+    @AfterEach
+    void tearDown() {
+        model.destroy();
+    }
+
+    @Test
+    void concurrentEmbedsShareOneRequest() throws Exception {
+        when(delegate.embed(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            return texts.stream().map(text -> new float[] {text.length()}).toList();
+        });
+        model = new CoalescingEmbeddingModel(delegate, Duration.ofMillis(200), 4, Duration.ofSeconds(5), meterRegistry);
+
+        List<String> texts = List.of("a", "bb", "ccc", "bb");
+        List<Future<float[]>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String text : texts) {
+                results.add(executor.submit(() -> model.embed(text)));
+            }
+            for (int i = 0; i < texts.size(); i++) {
+                assertArrayEquals(new float[] {texts.get(i).length()}, results.get(i).get());
+            }
+        }
+
+        verify(delegate, times(1)).embed(anyList());
+        var batchSize = meterRegistry.get(CoalescingEmbeddingModel.METRIC_NAME).summary();
+        assertEquals(1, batchSize.count());
+        assertEquals(3, batchSize.totalAmount());
+    }
+
+    @Test
+    void delegateFailureReachesCaller() {
+        when(delegate.embed(anyList())).thenThrow(new IllegalStateException("嵌入服务不可用"));
+        model = new CoalescingEmbeddingModel(delegate, Duration.ofMillis(1), 4, Duration.ofSeconds(5), meterRegistry);
+
+        assertThrows(IllegalStateException.class, () -> model.embed("a"));
+    }
+
+    @Test
+    void slowDelegateTimesOutCaller() {
+        when(delegate.embed(anyList())).thenAnswer(invocation -> {
+            Thread.sleep(5_000);
+            return List.of(new float[] {1f});
+        });
+        model = new CoalescingEmbeddingModel(delegate, Duration.ofMillis(1), 4, Duration.ofMillis(100), meterRegistry);
+
+        long start = System.nanoTime();
+        assertThrows(IllegalStateException.class, () -> model.embed("a"));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(2).toNanos());
+    }
+
+    @Test
+    void destroyFailsTakenBatchAndRejectsNewCalls() throws Exception {
+        model = new CoalescingEmbeddingModel(
+                delegate, Duration.ofSeconds(30), 4, Duration.ofSeconds(30), meterRegistry);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // 调度线程取出第一条后在攒批窗口内等待，此时停止
+            Future<float[]> waiting = executor.submit(() -> model.embed("a"));
+            Thread.sleep(100);
+            model.destroy();
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> waiting.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+        }
+        assertThrows(IllegalStateException.class, () -> model.embed("b"));
+        verify(delegate, never()).embed(anyList());
+    }
+}
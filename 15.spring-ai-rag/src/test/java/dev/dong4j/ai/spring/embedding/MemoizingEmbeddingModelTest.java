@@ -0,0 +1,98 @@
+package dev.dong4j.ai.spring.embedding;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import dev.dong4j.ai.spring.retrieval.ChannelResult;
+import dev.dong4j.ai.spring.retrieval.RecallChannel;
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 请求内查询嵌入备忘录测试，覆盖同一请求内（含并行通道）同一文本只嵌入一次、召回通道沿用提交线程的备忘录、请求外不记忆、失败不被记住。
+ */
+class MemoizingEmbeddingModelTest {
+
+    private final EmbeddingModel delegate = mock(EmbeddingModel.class);
+    private final MemoizingEmbeddingModel model = new MemoizingEmbeddingModel(delegate);
+
+    @Test
+    void queryIsEmbeddedOncePerRequestAcrossChannels() {
+        when(delegate.embed("spring")).thenAnswer(invocation -> {
+            Thread.sleep(50);
+            return new float[] {1f, 0f};
+        });
+        RecallExecutor executor = new RecallExecutor(Duration.ofSeconds(5));
+        QueryEmbeddingMemo.Scope scope = QueryEmbeddingMemo.open();
+        try {
+            model.embed("spring")[0] = 42f;
+            Callable<float[]> channel = () -> model.embed("spring");
+            for (RecallExecutor.Outcome<float[]> outcome : executor.fanOut(Collections.nCopies(4, channel),
+                    Duration.ofSeconds(5))) {
+                assertArrayEquals(new float[] {1f, 0f}, outcome.value(), "调用方修改返回值不影响备忘录");
+            }
+            assertEquals(1, QueryEmbeddingMemo.current().size());
+        } finally {
+            scope.close();
+            executor.destroy();
+        }
+        assertNull(QueryEmbeddingMemo.current());
+        verify(delegate, times(1)).embed("spring");
+
+        model.embed("spring");
+        model.embed("spring");
+        verify(delegate, times(3)).embed("spring");
+    }
+
+    @Test
+    void recallChannelsSeeSubmittingThreadsMemo() {
+        AtomicReference<QueryEmbeddingMemo> seen = new AtomicReference<>();
+        RecallChannel channel = new RecallChannel("vector", () -> {
+            seen.set(QueryEmbeddingMemo.current());
+            return List.of(new Document("1", "向量检索", Map.of()));
+        });
+        RecallExecutor executor = new RecallExecutor(Duration.ofSeconds(5));
+        QueryEmbeddingMemo.Scope scope = QueryEmbeddingMemo.open();
+        try {
+            List<ChannelResult> results = executor.recall(List.of(channel));
+            assertEquals(RecallExecutor.Status.COMPLETED, results.getFirst().status());
+            assertSame(QueryEmbeddingMemo.current(), seen.get(), "执行线程沿用提交线程的备忘录");
+        } finally {
+            scope.close();
+            executor.destroy();
+        }
+    }
+
+    @Test
+    void failedEmbeddingIsRetried() {
+        when(delegate.embed("rag"))
+                .thenThrow(new IllegalStateException("嵌入服务不可用"))
+                .thenReturn(new float[] {0f, 1f});
+        QueryEmbeddingMemo.Scope scope = QueryEmbeddingMemo.open();
+        try {
+            assertThrows(IllegalStateException.class, () -> model.embed("rag"));
+            assertArrayEquals(new float[] {0f, 1f}, model.embed("rag"));
+            assertArrayEquals(new float[] {0f, 1f}, model.embed("rag"));
+        } finally {
+            scope.close();
+        }
+        verify(delegate, times(2)).embed("rag");
+    }
+}
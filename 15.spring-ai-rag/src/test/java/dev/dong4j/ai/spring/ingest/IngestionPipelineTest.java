@@ -0,0 +1,133 @@
+package dev.dong4j.ai.spring.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量导入流水线测试，覆盖格式错误行跳过、读取失败、失败后从检查点续传。
+ */
+class IngestionPipelineTest {
+
+    private static final String SOURCE = """
+            {"id": "a", "text": "Spring AI 是 Spring 的 AI 模块", "metadata": {"source": "intro"}}
+            这一行不是 JSON
+            {"id": "b", "text": "RAG 是检索增强生成"}
+
+            {"text": "向量存储保存文档的向量表示"}
+            """;
+
+    @TempDir
+    Path workDir;
+
+    private final Map<String, Document> stored = new LinkedHashMap<>();
+    private final AtomicInteger addCalls = new AtomicInteger();
+    private IngestionPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        pipeline.destroy();
+    }
+
+    @Test
+    void ingestsValidLinesAndSkipsMalformedOnes() throws Exception {
+        pipeline = pipeline(mockStore(-1));
+
+        IngestionJob.Progress progress = await(pipeline.submit(stream(SOURCE)).jobId());
+
+        assertEquals(IngestionJob.Status.COMPLETED, progress.status());
+        assertEquals(5, progress.linesRead());
+        assertEquals(2, progress.skippedLines());
+        assertEquals(5, progress.committedLines());
+        assertEquals(3, stored.size());
+        assertEquals("intro", stored.values().iterator().next().getMetadata().get("source"));
+    }
+
+    @Test
+    void failedJobResumesFromCheckpointWithoutDuplicates() throws Exception {
+        pipeline = pipeline(mockStore(2));
+
+        String jobId = pipeline.submit(stream(SOURCE)).jobId();
+        IngestionJob.Progress failed = await(jobId);
+        assertEquals(IngestionJob.Status.FAILED, failed.status());
+        assertEquals(1, failed.committedLines());
+
+        pipeline.resume(jobId);
+        IngestionJob.Progress resumed = await(jobId);
+
+        assertEquals(IngestionJob.Status.COMPLETED, resumed.status());
+        assertEquals(5, resumed.committedLines());
+        assertEquals(3, stored.size());
+    }
+
+    @Test
+    void readFailureFailsJobInsteadOfCompleting() throws Exception {
+        pipeline = pipeline(mockStore(-1));
+        byte[] valid = SOURCE.getBytes(StandardCharsets.UTF_8);
+        byte[] content = new byte[valid.length + 2];
+        System.arraycopy(valid, 0, content, 0, valid.length);
+        // 非法 UTF-8 序列，读取时抛出 MalformedInputException
+        content[valid.length] = (byte) 0xC3;
+        content[valid.length + 1] = (byte) 0x28;
+
+        IngestionJob.Progress progress = await(pipeline.submit(new ByteArrayInputStream(content)).jobId());
+
+        assertEquals(IngestionJob.Status.FAILED, progress.status());
+        assertTrue(progress.committedLines() < 5);
+    }
+
+    private IngestionPipeline pipeline(VectorStore vectorStore) {
+        return new IngestionPipeline(vectorStore, new ObjectMapper(), new TokenTextSplitter(), workDir, 2, 1);
+    }
+
+    /**
+     * 第 failOnCall 次写入时抛出异常，小于 1 表示从不失败
+     */
+    private VectorStore mockStore(int failOnCall) {
+        VectorStore vectorStore = mock(VectorStore.class);
+        doAnswer(invocation -> {
+            if (addCalls.incrementAndGet() == failOnCall) {
+                throw new IllegalStateException("嵌入服务不可用");
+            }
+            List<Document> documents = invocation.getArgument(0);
+            synchronized (stored) {
+                documents.forEach(doc -> stored.put(doc.getId(), doc));
+            }
+            return null;
+        }).when(vectorStore).add(anyList());
+        return vectorStore;
+    }
+
+    private IngestionJob.Progress await(String jobId) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            IngestionJob.Progress progress = pipeline.progress(jobId).orElseThrow();
+            if (progress.status() != IngestionJob.Status.RUNNING) {
+                return progress;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("导入任务未在预期时间内结束");
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
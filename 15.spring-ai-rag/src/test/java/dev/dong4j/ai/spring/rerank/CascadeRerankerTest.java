@@ -0,0 +1,66 @@
+package dev.dong4j.ai.spring.rerank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 级联重排测试，覆盖关键词、向量阶段能区分 top-K 时提前结束，区分不开时才调用 LLM，并记录每次判定。
+ */
+class CascadeRerankerTest {
+
+    private final LlmReranker llmReranker = mock(LlmReranker.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CascadeReranker reranker = new CascadeReranker(llmReranker, 0.5, 0.1, meterRegistry);
+
+    @Test
+    void expensiveStageRunsOnlyForAmbiguousQueries() {
+        // 关键词能明确区分：只有 a 包含全部查询词
+        List<Document> lexical = List.of(doc("a", "spring ai rag", 0.5), doc("b", "spring boot", 0.6),
+                doc("c", "kotlin", 0.7));
+        assertEquals(List.of("a"), ids(reranker.rerank("spring ai rag", lexical, 1)));
+
+        // 关键词区分不开，向量分数差距明显
+        List<Document> vector = List.of(doc("a", "spring", 0.6), doc("b", "spring", 0.9), doc("c", "spring", 0.5));
+        assertEquals(List.of("b"), ids(reranker.rerank("spring ai", vector, 1)));
+        verify(llmReranker, never()).rerank(anyString(), any(), anyInt());
+
+        // 两个廉价阶段都区分不开，交给 LLM
+        List<Document> ambiguous = List.of(doc("a", "spring", 0.80), doc("b", "spring", 0.82),
+                doc("c", "spring", 0.81));
+        when(llmReranker.rerank("spring ai", ambiguous, 1)).thenReturn(List.of(doc("c", "spring", 0.95)));
+        List<Document> reranked = reranker.rerank("spring ai", ambiguous, 1);
+        assertEquals(List.of("c"), ids(reranked));
+        assertEquals("llm", reranked.getFirst().getMetadata().get(CascadeReranker.STAGE_METADATA_KEY));
+
+        assertEquals(1, count("lexical", "accept"));
+        assertEquals(2, count("lexical", "escalate"));
+        assertEquals(1, count("vector", "accept"));
+        assertEquals(1, count("vector", "escalate"));
+        assertEquals(1, count("llm", "accept"));
+    }
+
+    private double count(String stage, String decision) {
+        return meterRegistry.get(CascadeReranker.METRIC_NAME).tag("stage", stage).tag("decision", decision)
+                .counter().count();
+    }
+
+    private static Document doc(String id, String text, double score) {
+        return Document.builder().id(id).text(text).score(score).build();
+    }
+
+    private static List<String> ids(List<Document> docs) {
+        return docs.stream().map(Document::getId).toList();
+    }
+}
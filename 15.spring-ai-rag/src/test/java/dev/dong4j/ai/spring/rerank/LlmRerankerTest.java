@@ -0,0 +1,75 @@
+package dev.dong4j.ai.spring.rerank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import dev.dong4j.ai.spring.retrieval.RecallExecutor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * LLM 重排测试，覆盖截止时间内完成打分时按 LLM 分数排序、超时时回退为检索顺序并记录结果类型。
+ */
+class LlmRerankerTest {
+
+    private final ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+    private final RecallExecutor executor = new RecallExecutor(Duration.ofSeconds(5));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final LlmReranker reranker =
+            new LlmReranker(chatClient, executor, 8, Duration.ofMillis(200), 16, meterRegistry);
+
+    private final List<Document> candidates = List.of(doc("a", 0.9), doc("b", 0.8), doc("c", 0.7));
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void slowProviderFallsBackToRetrievalOrder() {
+        when(chatClient.prompt().user(anyString()).call().entity(LlmReranker.WindowScores.class))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(2_000);
+                    return scores();
+                })
+                .thenReturn(scores());
+
+        long start = System.nanoTime();
+        List<Document> fallback = reranker.rerank("spring", candidates, 2);
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos(), "重排不超过截止时间太久");
+        assertEquals(List.of("a", "b"), ids(fallback));
+        assertEquals(0.9, fallback.getFirst().getScore());
+        assertEquals("FALLBACK", fallback.getFirst().getMetadata().get(LlmReranker.OUTCOME_METADATA_KEY));
+
+        List<Document> reranked = reranker.rerank("spring", candidates, 2);
+        assertEquals(List.of("c", "b"), ids(reranked));
+        assertEquals("RERANKED", reranked.getFirst().getMetadata().get(LlmReranker.OUTCOME_METADATA_KEY));
+
+        assertEquals(1, meterRegistry.get(LlmReranker.METRIC_NAME).tag("outcome", "fallback").counter().count());
+        assertEquals(1, meterRegistry.get(LlmReranker.METRIC_NAME).tag("outcome", "reranked").counter().count());
+    }
+
+    private static LlmReranker.WindowScores scores() {
+        return new LlmReranker.WindowScores(List.of(new LlmReranker.DocumentScore(0, 0.1),
+                new LlmReranker.DocumentScore(1, 0.5), new LlmReranker.DocumentScore(2, 0.9)));
+    }
+
+    private static Document doc(String id, double score) {
+        return Document.builder().id(id).text("文档 " + id).score(score).build();
+    }
+
+    private static List<String> ids(List<Document> docs) {
+        return docs.stream().map(Document::getId).toList();
+    }
+}
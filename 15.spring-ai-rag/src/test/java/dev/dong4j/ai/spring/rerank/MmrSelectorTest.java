@@ -0,0 +1,46 @@
+package dev.dong4j.ai.spring.rerank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MMR 选择测试，验证近重复文档会被更有差异的候选挤到后面。
+ */
+class MmrSelectorTest {
+
+    private final Map<String, float[]> embeddings = Map.of(
+            "a", new float[] {1f, 0f, 0f},
+            "a-copy", new float[] {0.99f, 0.14f, 0f},
+            "b", new float[] {0f, 1f, 0f});
+
+    @Test
+    void nearDuplicateIsDemoted() {
+        List<Document> candidates = List.of(doc("a", 0.9), doc("a-copy", 0.88), doc("b", 0.7));
+
+        MmrSelector selector = new MmrSelector(embeddings::get, 0.5);
+
+        assertEquals(List.of("a", "b", "a-copy"), ids(selector.select(candidates, 3)));
+    }
+
+    @Test
+    void lambdaOneKeepsRelevanceOrder() {
+        List<Document> candidates = List.of(doc("a", 0.9), doc("a-copy", 0.88), doc("b", 0.7));
+
+        MmrSelector selector = new MmrSelector(embeddings::get, 1.0);
+
+        assertEquals(List.of("a", "a-copy"), ids(selector.select(candidates, 2)));
+    }
+
+    private static Document doc(String id, double score) {
+        return Document.builder().id(id).text("内容 " + id).score(score).build();
+    }
+
+    private static List<String> ids(List<Document> docs) {
+        return docs.stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,117 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * BM25 关键词索引测试，覆盖中英混合分词、增量更新与删除、墓碑回收及压缩期间的并发写入。
+ */
+class Bm25IndexTest {
+
+    private final Bm25Index index = new Bm25Index(1.2f, 0.75f);
+
+    @Test
+    void tokenizeMixedText() {
+        assertEquals(List.of("spring", "ai", "向量", "量存", "存储"), KeywordTokenizer.tokenize("Spring AI 向量存储"));
+        assertEquals(List.of("的", "pgvector"), KeywordTokenizer.tokenize("的 PgVector!"));
+    }
+
+    @Test
+    void keywordMatchRanksFirst() {
+        index.add(List.of(
+                new Document("1", "Spring AI 的向量存储支持 PgVector、Milvus 等后端", Map.of()),
+                new Document("2", "RAG 是一种结合检索和生成的技术", Map.of()),
+                new Document("3", "提示词模板支持变量渲染", Map.of())));
+
+        List<Document> hits = index.search("Milvus 向量存储", 2);
+
+        assertEquals("1", hits.get(0).getId());
+        assertTrue(hits.get(0).getScore() > 0);
+        assertEquals(1, hits.size());
+    }
+
+    @Test
+    void removeAndReplaceById() {
+        index.add(List.of(new Document("1", "检索增强生成", Map.of())));
+        index.add(List.of(new Document("1", "提示词工程", Map.of())));
+
+        assertEquals(1, index.size());
+        assertTrue(index.search("检索", 5).isEmpty());
+        assertEquals("1", index.search("提示词", 5).get(0).getId());
+
+        index.remove(List.of("1"));
+        assertEquals(0, index.size());
+        assertTrue(index.search("提示词", 5).isEmpty());
+    }
+
+    @Test
+    void compactionKeepsRankingAndAcceptsNewDocuments() {
+        for (int i = 0; i < 100; i++) {
+            index.add(List.of(new Document("doc-" + i, "文档 " + i + (i % 2 == 0 ? " 向量检索" : " 提示词"), Map.of())));
+        }
+        index.remove(IntStream.range(0, 80).mapToObj(i -> "doc-" + i).toList());
+        index.add(List.of(new Document("doc-90", "向量检索 向量检索 重排", Map.of())));
+        List<String> before = index.search("向量检索", 20).stream().map(Document::getId).toList();
+
+        assertEquals(81, index.compact());
+        assertEquals(0, index.compact());
+        assertEquals(20, index.size());
+        assertEquals(before, index.search("向量检索", 20).stream().map(Document::getId).toList());
+        assertEquals("doc-90", index.search("重排", 5).get(0).getId());
+
+        index.add(List.of(new Document("doc-85", "重排 重排 重排", Map.of())));
+        index.remove(List.of("doc-90"));
+        assertEquals(List.of("doc-85"), index.search("重排", 5).stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void compactionKeepsWritesMadeWhileItRuns() throws Exception {
+        Map<String, Document> expected = new ConcurrentHashMap<>();
+        for (int i = 0; i < 6000; i++) {
+            Document doc = new Document("doc-" + i, "文档 " + i + (i % 3 == 0 ? " 向量检索" : " 提示词"), Map.of());
+            index.add(List.of(doc));
+            expected.put(doc.getId(), doc);
+        }
+        List<String> removed = IntStream.range(0, 4000).mapToObj(i -> "doc-" + i).toList();
+        index.remove(removed);
+        removed.forEach(expected::remove);
+
+        // 压缩期间持续新增、替换和删除文档
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = Thread.ofVirtual().start(() -> {
+            for (int i = 0; running.get() || i < 500; i++) {
+                Document doc = new Document("doc-" + (4000 + i % 4000), "新文档 " + i + " 向量检索 重排", Map.of());
+                index.add(List.of(doc));
+                expected.put(doc.getId(), doc);
+                String victim = "doc-" + (6000 + i);
+                index.add(List.of(new Document(victim, "临时文档 提示词", Map.of())));
+                index.remove(List.of(victim));
+            }
+        });
+        int reclaimed = index.compact();
+        running.set(false);
+        writer.join();
+
+        assertTrue(reclaimed >= 4000);
+        Bm25Index rebuilt = new Bm25Index(1.2f, 0.75f);
+        rebuilt.add(List.copyOf(expected.values()));
+        assertEquals(rebuilt.size(), index.size());
+        for (String query : List.of("向量检索", "提示词", "重排", "文档 42")) {
+            assertEquals(scores(rebuilt.search(query, 10_000)), scores(index.search(query, 10_000)));
+        }
+    }
+
+    private static Map<String, Double> scores(List<Document> hits) {
+        return hits.stream().collect(Collectors.toMap(Document::getId, hit -> Math.round(hit.getScore() * 1e4) / 1e4));
+    }
+}
@@ -0,0 +1,46 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.MetadataMode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 文档去重测试，覆盖指纹去重、入库指纹的读取以及原生 long 集合的扩容。
+ */
+class DocumentDeduplicatorTest {
+
+    @Test
+    void sameContentKeepsFirstOccurrence() {
+        Document stamped = new Document("1", "向量存储", new HashMap<>());
+        DocumentDeduplicator.stamp(stamped);
+
+        List<Document> merged = DocumentDeduplicator.distinct(List.of(
+                List.of(stamped, new Document("2", "提示词模板", Map.of())),
+                List.of(new Document("3", "向量存储", Map.of()), new Document("2", "提示词模板", Map.of()))));
+
+        assertEquals(List.of("1", "2"), merged.stream().map(Document::getId).toList());
+        assertFalse(stamped.getFormattedContent(MetadataMode.EMBED)
+                .contains(DocumentDeduplicator.FINGERPRINT_METADATA_KEY));
+    }
+
+    @Test
+    void longHashSetGrowsAndHandlesZero() {
+        LongHashSet set = new LongHashSet(2);
+        for (long key = -500; key < 500; key++) {
+            assertTrue(set.add(key));
+        }
+        assertFalse(set.add(0L));
+        assertFalse(set.add(-500L));
+        assertTrue(set.contains(499L));
+        assertFalse(set.contains(500L));
+        assertEquals(1000, set.size());
+    }
+}
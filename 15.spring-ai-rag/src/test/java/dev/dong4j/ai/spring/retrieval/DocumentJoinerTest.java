@@ -0,0 +1,89 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * RRF 融合测试，覆盖跨通道累加、topK 截断与加权，以及提前停止登记新文档后结果与全量融合一致。
+ */
+class DocumentJoinerTest {
+
+    private final DocumentJoiner joiner = new DocumentJoiner(60);
+
+    @Test
+    void documentsInSeveralChannelsRankFirst() {
+        List<Document> vector = List.of(doc("a"), doc("b"), doc("c"));
+        List<Document> keyword = List.of(doc("c"), doc("d"), doc("b"));
+
+        List<Document> fused = joiner.reciprocalRankFusion(List.of(vector, keyword), 3);
+
+        assertEquals(List.of("c", "b", "a"), fused.stream().map(Document::getId).toList());
+        assertEquals(1.0 / 61 + 1.0 / 63, fused.get(0).getScore(), 1e-9);
+        assertEquals(fused.get(0).getScore(), fused.get(0).getMetadata().get(DocumentJoiner.SCORE_METADATA_KEY));
+    }
+
+    @Test
+    void weightsShiftTheRanking() {
+        List<Document> vector = List.of(doc("a"), doc("x"), doc("b"));
+        List<Document> keyword = List.of(doc("b"));
+        List<List<Document>> channels = List.of(vector, keyword);
+
+        assertEquals("b", joiner.reciprocalRankFusion(channels, 1).get(0).getId());
+        assertEquals("a", joiner.weightedReciprocalRankFusion(channels, new double[] {1.0, 0.01}, 1).get(0).getId());
+    }
+
+    @Test
+    void earlyCutoffMatchesExhaustiveFusion() {
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            int channelCount = 1 + random.nextInt(4);
+            List<List<Document>> channels = new ArrayList<>();
+            double[] weights = new double[channelCount];
+            for (int c = 0; c < channelCount; c++) {
+                // 各路从同一个文档池中不放回抽样，模拟部分重叠的召回结果
+                List<Integer> pool = new ArrayList<>(IntStream.range(0, 60).boxed().toList());
+                Collections.shuffle(pool, random);
+                channels.add(pool.subList(0, random.nextInt(40)).stream().map(i -> doc("d" + i)).toList());
+                weights[c] = random.nextInt(4) * 0.5;
+            }
+            int topK = 1 + random.nextInt(8);
+
+            List<Document> fused = joiner.weightedReciprocalRankFusion(channels, weights, topK);
+
+            assertEquals(exhaustive(channels, weights, topK), fused.stream().map(Document::getId).toList());
+        }
+    }
+
+    /**
+     * 累加全部文档的得分后整体排序，同分时先出现的文档优先
+     */
+    private static List<String> exhaustive(List<List<Document>> channels, double[] weights, int topK) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        int maxDepth = channels.stream().mapToInt(List::size).max().orElse(0);
+        for (int depth = 0; depth < maxDepth; depth++) {
+            for (int c = 0; c < channels.size(); c++) {
+                if (depth < channels.get(c).size()) {
+                    scores.merge(channels.get(c).get(depth).getId(), weights[c] / (60 + depth + 1), Double::sum);
+                }
+            }
+        }
+        List<String> ids = new ArrayList<>(scores.keySet());
+        ids.sort(Comparator.comparingDouble((String id) -> scores.get(id)).reversed());
+        return ids.subList(0, Math.min(topK, ids.size()));
+    }
+
+    private static Document doc(String id) {
+        return new Document(id, "内容 " + id, Map.of());
+    }
+}
@@ -0,0 +1,52 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多路召回执行器测试，覆盖慢通道在共同截止时间被取消、按时返回的结果照常合并。
+ */
+class RecallExecutorTest {
+
+    private final RecallExecutor recallExecutor = new RecallExecutor(Duration.ofMillis(200));
+
+    @AfterEach
+    void tearDown() {
+        recallExecutor.destroy();
+    }
+
+    @Test
+    void slowChannelIsCancelledAtSharedDeadline() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        RecallChannel fast = new RecallChannel("vector", () -> List.of(new Document("1", "向量检索", Map.of())));
+        RecallChannel slow = new RecallChannel("bm25", () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return List.of(new Document("2", "关键词检索", Map.of()));
+        });
+
+        long start = System.nanoTime();
+        List<ChannelResult> results = recallExecutor.recall(List.of(fast, slow));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsed < 2_000, "召回延迟不超过截止时间太多: " + elapsed + "ms");
+        assertEquals(RecallExecutor.Status.COMPLETED, results.get(0).status());
+        assertEquals(List.of("1"), results.get(0).documents().stream().map(Document::getId).toList());
+        assertEquals(RecallExecutor.Status.TIMEOUT, results.get(1).status());
+        assertTrue(results.get(1).documents().isEmpty());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "超时的通道被中断");
+    }
+}
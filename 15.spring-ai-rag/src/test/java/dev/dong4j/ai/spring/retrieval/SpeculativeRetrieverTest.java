@@ -0,0 +1,66 @@
+package dev.dong4j.ai.spring.retrieval;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 推测检索测试，覆盖改写前后查询相近时复用结果、偏离时重新检索两种路径。
+ */
+class SpeculativeRetrieverTest {
+
+    private final RecallExecutor recallExecutor = new RecallExecutor(Duration.ofSeconds(5));
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+    private final SpeculativeRetriever retriever =
+            new SpeculativeRetriever(recallExecutor, embeddingModel, 0.9, Duration.ofSeconds(5));
+
+    private final List<String> searched = new ArrayList<>();
+    private final Function<String, List<Document>> search = q -> {
+        synchronized (searched) {
+            searched.add(q);
+        }
+        return List.of(new Document(q));
+    };
+
+    @AfterEach
+    void tearDown() {
+        recallExecutor.destroy();
+    }
+
+    @Test
+    void reusesSpeculativeResultsWhenRewriteIsClose() {
+        when(embeddingModel.embed("原始")).thenReturn(new float[] {1f, 0f});
+        when(embeddingModel.embed("改写")).thenReturn(new float[] {0.98f, 0.1f});
+
+        SpeculativeRetriever.Result result = retriever.retrieve("原始", q -> "改写", search);
+
+        assertTrue(result.reused());
+        assertEquals("改写", result.rewrittenQuery());
+        assertEquals("原始", result.documents().get(0).getText());
+        assertEquals(List.of("原始"), searched);
+    }
+
+    @Test
+    void retrievesAgainWhenRewriteDrifts() {
+        when(embeddingModel.embed("原始")).thenReturn(new float[] {1f, 0f});
+        when(embeddingModel.embed("改写")).thenReturn(new float[] {0f, 1f});
+
+        SpeculativeRetriever.Result result = retriever.retrieve("原始", q -> "改写", search);
+
+        assertFalse(result.reused());
+        assertEquals("改写", result.documents().get(0).getText());
+        assertEquals(List.of("原始", "改写"), searched);
+    }
+}
@@ -0,0 +1,104 @@
+package dev.dong4j.ai.spring.stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import dev.dong4j.ai.spring.advisor.SemanticCacheAdvisor;
+import dev.dong4j.ai.spring.config.RagProperties;
+import dev.dong4j.ai.spring.embedding.MemoizingEmbeddingModel;
+import dev.dong4j.ai.spring.vectorstore.KnowledgeBaseVersion;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.http.codec.ServerSentEvent;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * RAG 流式响应测试，覆盖事件顺序（检索结果、生成文本、结束），检索失败时只推送一个错误事件，以及检索和语义缓存查询共用一次问题嵌入。
+ */
+class RagStreamerTest {
+
+    private final ChatClient chatClient = mock(ChatClient.class, RETURNS_DEEP_STUBS);
+    private final RagStreamer streamer = new RagStreamer(chatClient);
+
+    @Test
+    void emitsRetrievalThenTokensThenDone() {
+        when(chatClient.prompt()
+                .user(anyString())
+                .advisors(ArgumentMatchers.<Consumer<ChatClient.AdvisorSpec>>any())
+                .advisors(ArgumentMatchers.<Consumer<ChatClient.AdvisorSpec>>any())
+                .stream()
+                .content()).thenReturn(Flux.just("Spring", " AI"));
+
+        List<ServerSentEvent<String>> events = streamer
+                .stream("什么是 RAG", "test", () -> List.of(new Document("检索增强"), new Document("向量检索")))
+                .collectList()
+                .block();
+
+        assertEquals(List.of(RagStreamer.RETRIEVAL_EVENT, RagStreamer.RETRIEVAL_EVENT,
+                        RagStreamer.TOKEN_EVENT, RagStreamer.TOKEN_EVENT, RagStreamer.DONE_EVENT),
+                events.stream().map(ServerSentEvent::event).toList());
+        assertEquals(List.of("1", "2"), events.subList(0, 2).stream().map(ServerSentEvent::id).toList());
+        assertEquals(List.of("检索增强", "向量检索", "Spring", " AI", ""),
+                events.stream().map(ServerSentEvent::data).toList());
+    }
+
+    @Test
+    void failedRetrievalEmitsSingleErrorEvent() {
+        List<ServerSentEvent<String>> events = streamer
+                .stream("什么是 RAG", "test", () -> {
+                    throw new IllegalStateException("向量库不可用");
+                })
+                .collectList()
+                .block();
+
+        assertEquals(1, events.size());
+        assertEquals(RagStreamer.ERROR_EVENT, events.get(0).event());
+        assertEquals("向量库不可用", events.get(0).data());
+        verifyNoInteractions(chatClient);
+    }
+
+    @Test
+    void queryIsEmbeddedOnceAcrossRetrievalAndCacheLookup() {
+        EmbeddingModel delegate = mock(EmbeddingModel.class);
+        when(delegate.embed("什么是 RAG")).thenReturn(new float[] {1f, 0f});
+        MemoizingEmbeddingModel embeddingModel = new MemoizingEmbeddingModel(delegate);
+        ChatModel chatModel = mock(ChatModel.class);
+        when(chatModel.stream(any(Prompt.class)))
+                .thenReturn(Flux.just(new ChatResponse(List.of(new Generation(new AssistantMessage("回答"))))));
+        SemanticCacheAdvisor advisor = new SemanticCacheAdvisor(embeddingModel, new KnowledgeBaseVersion(),
+                new RagProperties.SemanticCache(0.92f, 16), new SimpleMeterRegistry());
+        RagStreamer cachingStreamer = new RagStreamer(ChatClient.builder(chatModel).defaultAdvisors(advisor).build());
+
+        List<ServerSentEvent<String>> events = cachingStreamer
+                .stream("什么是 RAG", "test", () -> {
+                    // 向量检索嵌入问题，语义缓存查询沿用同一备忘录
+                    embeddingModel.embed("什么是 RAG");
+                    return List.of(new Document("检索增强"));
+                })
+                .collectList()
+                .block();
+
+        assertEquals(RagStreamer.DONE_EVENT, events.getLast().event());
+        verify(delegate, times(1)).embed("什么是 RAG");
+    }
+}
@@ -0,0 +1,474 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * HNSW 向量存储测试，覆盖与暴力检索对比的召回率、量化后的召回率与堆内存占用，topK、相似度阈值、元数据过滤（位图求值与 SimpleVectorStore 一致，大整数精确比较）、替换与删除语义（快照往返后重复写入不产生墓碑），以及快照读写（分段映射与损坏校验）。
+ */
+class HnswVectorStoreTest {
+
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "spring", new float[] {1f, 0f, 0f},
+            "spring ai", new float[] {0.9f, 0.1f, 0f},
+            "rag", new float[] {0.6f, 0.8f, 0f},
+            "python", new float[] {0f, 0f, 1f});
+
+    @Test
+    void approximateSearchMatchesBruteForceRecall() {
+        Random random = new Random(7);
+        int dimensions = 32;
+        List<float[]> vectors = new ArrayList<>();
+        HnswIndex index = new HnswIndex(dimensions, 16, 200, 42);
+        for (int i = 0; i < 3000; i++) {
+            float[] vector = randomVector(random, dimensions);
+            vectors.add(vector);
+            index.add(vector);
+        }
+
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random, dimensions);
+            Set<Integer> expected = new HashSet<>(IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -cosine(query, vectors.get(i))))
+                    .limit(10)
+                    .toList());
+            for (HnswIndex.Neighbor neighbor : index.search(query, 10, 64, null)) {
+                if (expected.contains(neighbor.node())) {
+                    hits++;
+                }
+            }
+        }
+        double recall = hits / (queries * 10.0);
+        assertTrue(recall >= 0.95, "recall@10 = " + recall);
+    }
+
+    @Test
+    void quantizedSearchKeepsRecallAfterRescoring() {
+        Random random = new Random(11);
+        int dimensions = 128;
+        List<float[]> centroids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            centroids.add(randomVector(random, dimensions));
+        }
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            vectors.add(clusteredVector(random, centroids.get(i % centroids.size())));
+        }
+        List<float[]> queries = new ArrayList<>();
+        List<Set<Integer>> expected = new ArrayList<>();
+        for (int q = 0; q < 50; q++) {
+            float[] query = clusteredVector(random, centroids.get(random.nextInt(centroids.size())));
+            queries.add(query);
+            expected.add(new HashSet<>(IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -cosine(query, vectors.get(i))))
+                    .limit(10)
+                    .toList()));
+        }
+
+        Map<VectorQuantization, Double> recalls = new EnumMap<>(VectorQuantization.class);
+        Map<VectorQuantization, Long> heapBytes = new EnumMap<>(VectorQuantization.class);
+        for (VectorQuantization quantization : VectorQuantization.values()) {
+            // 1-bit 编码区分不了同一簇内的向量，需要更多候选交给原始向量重排
+            int rescoreFactor = quantization == VectorQuantization.BINARY ? 16 : 4;
+            HnswIndex index = new HnswIndex(dimensions, 16, 200, 42, quantization, rescoreFactor);
+            try {
+                vectors.forEach(index::add);
+                int hits = 0;
+                for (int q = 0; q < queries.size(); q++) {
+                    for (HnswIndex.Neighbor neighbor : index.search(queries.get(q), 10, 64, null)) {
+                        if (expected.get(q).contains(neighbor.node())) {
+                            hits++;
+                        }
+                    }
+                }
+                recalls.put(quantization, hits / (queries.size() * 10.0));
+                heapBytes.put(quantization, index.vectorHeapBytes());
+            } finally {
+                // 量化索引的原始向量在临时映射文件中，关闭时删除
+                index.close();
+            }
+        }
+
+        double baseline = recalls.get(VectorQuantization.NONE);
+        assertTrue(recalls.get(VectorQuantization.INT8) >= baseline - 0.02, "recall@10 = " + recalls);
+        assertTrue(recalls.get(VectorQuantization.BINARY) >= baseline - 0.05, "recall@10 = " + recalls);
+        long exact = heapBytes.get(VectorQuantization.NONE);
+        assertTrue(heapBytes.get(VectorQuantization.INT8) * 3 < exact, "heap bytes = " + heapBytes);
+        assertTrue(heapBytes.get(VectorQuantization.BINARY) * 20 < exact, "heap bytes = " + heapBytes);
+    }
+
+    @Test
+    void searchHonoursTopKThresholdAndFilter() {
+        HnswVectorStore store = HnswVectorStore.builder(new FixedEmbeddingModel()).build();
+        store.add(List.of(
+                new Document("1", "spring ai", Map.of("lang", "java")),
+                new Document("2", "rag", Map.of("lang", "java")),
+                new Document("3", "python", Map.of("lang", "python"))));
+
+        List<Document> top = store.similaritySearch(SearchRequest.builder().query("spring").topK(2).build());
+        assertEquals(List.of("1", "2"), top.stream().map(Document::getId).toList());
+        assertEquals(0.994, top.get(0).getScore(), 1e-3);
+        assertEquals(1 - top.get(0).getScore(), (double) top.get(0).getMetadata().get("distance"), 1e-6);
+
+        List<Document> close = store.similaritySearch(
+                SearchRequest.builder().query("spring").topK(5).similarityThreshold(0.9).build());
+        assertEquals(List.of("1"), close.stream().map(Document::getId).toList());
+
+        List<Document> python = store.similaritySearch(
+                SearchRequest.builder().query("spring").topK(5).filterExpression("lang == 'python'").build());
+        assertEquals(List.of("3"), python.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void bitmapFilterMatchesSimpleVectorStoreSemantics() {
+        List<Document> documents = List.of(
+                new Document("1", "spring", Map.of("topic", "java", "year", 2023)),
+                new Document("2", "spring ai", Map.of("topic", "java", "year", 2024L)),
+                new Document("3", "rag", Map.of("topic", "rag", "year", 2025.0)),
+                new Document("4", "python", Map.of("topic", "python")),
+                new Document("5", "rag", Map.of("topic", "rag", "draft", true)),
+                new Document("6", "spring", Map.of("source", "blog")));
+        SimpleVectorStore reference = SimpleVectorStore.builder(new FixedEmbeddingModel()).build();
+        reference.add(documents);
+        HnswVectorStore scanning = HnswVectorStore.builder(new FixedEmbeddingModel()).build();
+        scanning.add(documents);
+        HnswVectorStore searching = HnswVectorStore.builder(new FixedEmbeddingModel()).bruteForceThreshold(0).build();
+        searching.add(documents);
+
+        for (String filter : List.of(
+                "topic == 'java'",
+                "topic != 'java'",
+                "year >= 2024",
+                "year < 2024",
+                "topic in ['java', 'rag'] && year > 2023",
+                "topic nin ['java'] || draft == true",
+                "year == 2024 || source == 'blog'")) {
+            SearchRequest request = SearchRequest.builder().query("spring").topK(10).filterExpression(filter).build();
+            Set<String> expected = ids(reference.similaritySearch(request));
+            assertEquals(expected, ids(scanning.similaritySearch(request)), filter);
+            assertEquals(expected, ids(searching.similaritySearch(request)), filter);
+        }
+    }
+
+    @Test
+    void bitmapFilterComparesLargeIntegersExactly() {
+        long large = 1L << 53;
+        HnswVectorStore store = HnswVectorStore.builder(new FixedEmbeddingModel()).build();
+        store.add(List.of(
+                new Document("1", "spring", Map.of("seq", large, "content_fingerprint", 5L)),
+                new Document("2", "rag", Map.of("seq", large + 1, "content_fingerprint", 6L)),
+                new Document("3", "python", Map.of("seq", 2.5))));
+        FilterExpressionBuilder b = new FilterExpressionBuilder();
+
+        assertEquals(Set.of("2"), filtered(store, b.eq("seq", large + 1).build()));
+        assertEquals(Set.of("2"), filtered(store, b.gt("seq", large).build()));
+        assertEquals(Set.of("1", "3"), filtered(store, b.lt("seq", large + 1).build()));
+        assertEquals(Set.of("3"), filtered(store, b.lt("seq", 3).build()), "整数与小数混合比较");
+        // 内容指纹不建位图索引，回退到逐个文档求值后结果不变
+        assertEquals(Set.of("2"), filtered(store, b.eq("content_fingerprint", 6L).build()));
+    }
+
+    @Test
+    void destroyDeletesQuantizedVectorFile() throws IOException {
+        Set<Path> before = vectorFiles();
+        HnswVectorStore store = HnswVectorStore.builder(new FixedEmbeddingModel())
+                .quantization(VectorQuantization.INT8)
+                .build();
+        store.add(List.of(new Document("1", "spring ai", Map.of()), new Document("2", "rag", Map.of())));
+        Set<Path> created = vectorFiles();
+        created.removeAll(before);
+        assertEquals(1, created.size(), "量化索引把原始向量写入临时映射文件");
+
+        store.destroy();
+
+        assertTrue(Files.notExists(created.iterator().next()));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void replacedAndDeletedDocumentsDisappearFromResults() {
+        HnswVectorStore store = HnswVectorStore.builder(new FixedEmbeddingModel()).build();
+        store.add(List.of(new Document("1", "spring ai", Map.of()), new Document("2", "rag", Map.of())));
+        store.add(List.of(new Document("1", "python", Map.of())));
+        store.delete(List.of("2"));
+
+        List<Document> results = store.similaritySearch(SearchRequest.builder().query("python").topK(5).build());
+
+        assertEquals(1, store.size());
+        assertEquals(List.of("python"), results.stream().map(Document::getText).toList());
+        assertNull(store.findEmbedding("2"));
+    }
+
+    @Test
+    void compactionReclaimsTombstonesWhileWritesContinue() throws Exception {
+        HnswVectorStore store = HnswVectorStore.builder(new HashingEmbeddingModel()).build();
+        for (int i = 0; i < 200; i++) {
+            store.add(List.of(new Document("doc-" + i, "text " + i, Map.of("n", i))));
+        }
+        store.delete(IntStream.range(0, 100).mapToObj(i -> "doc-" + i).toList());
+        store.add(List.of(new Document("doc-150", "replaced", Map.of("n", -1))));
+        store.add(List.of(new Document("doc-151", "text 151", Map.of("n", 151))));
+        // 过滤后走精确扫描，能取到全部文档
+        SearchRequest all = SearchRequest.builder().query("query").topK(1000).filterExpression("n > -10").build();
+        Set<String> before = ids(store.similaritySearch(all));
+        assertEquals(100, before.size());
+
+        assertEquals(101, store.tombstones(), "内容未变的重复写入不产生墓碑");
+        assertEquals(101, store.compact());
+        assertEquals(0, store.tombstones());
+        assertEquals(100, store.size());
+        assertEquals(before, ids(store.similaritySearch(all)));
+        assertEquals("doc-150", store.similaritySearch(SearchRequest.builder().query("replaced").topK(1).build())
+                .get(0).getId());
+
+        // 压缩与写入、查询并发进行，结束后内容与只写入不压缩时一致
+        AtomicBoolean done = new AtomicBoolean();
+        Thread compactor = Thread.ofPlatform().start(() -> {
+            while (!done.get()) {
+                store.compact();
+            }
+        });
+        Set<String> expected = new HashSet<>(before);
+        SearchRequest request = SearchRequest.builder().query("query").topK(10).build();
+        for (int i = 0; i < 2000; i++) {
+            String id = "doc-" + (i % 300);
+            if (i % 3 == 0) {
+                store.delete(List.of(id));
+                expected.remove(id);
+            } else {
+                store.add(List.of(new Document(id, "text " + i, Map.of("n", i))));
+                expected.add(id);
+            }
+            if (i % 100 == 0) {
+                assertEquals(10, store.similaritySearch(request).size());
+            }
+        }
+        done.set(true);
+        compactor.join();
+        store.compact();
+
+        assertEquals(expected, ids(store.similaritySearch(all)));
+        assertEquals(expected.size(), store.size());
+        assertEquals(0, store.tombstones());
+        for (int i = 0; i < 300; i++) {
+            assertEquals(expected.contains("doc-" + i), store.findEmbedding("doc-" + i) != null);
+        }
+    }
+
+    @Test
+    void snapshotRestoresDocumentsGraphAndDeletions(@TempDir Path workDir) throws Exception {
+        HnswVectorStore store = HnswVectorStore.builder(new FixedEmbeddingModel()).build();
+        store.add(List.of(
+                new Document("1", "spring ai", Map.of("lang", "java")),
+                new Document("2", "rag", Map.of("lang", "java")),
+                new Document("3", "python", Map.of("lang", "python"))));
+        store.delete(List.of("2"));
+        Path file = workDir.resolve("store.snapshot");
+        store.save(file);
+
+        HnswVectorStore restored = HnswVectorStore.builder(new FixedEmbeddingModel()).build();
+        List<Document> documents = restored.load(file);
+
+        assertEquals(2, documents.size());
+        assertEquals(2, restored.size());
+        SearchRequest request = SearchRequest.builder().query("spring").topK(5).build();
+        List<Document> expected = store.similaritySearch(request);
+        List<Document> actual = restored.similaritySearch(request);
+        assertEquals(expected.stream().map(Document::getId).toList(), actual.stream().map(Document::getId).toList());
+        assertEquals(expected.get(0).getScore(), actual.get(0).getScore(), 1e-6);
+        assertEquals("java", actual.get(0).getMetadata().get("lang"));
+        assertArrayEquals(store.findEmbedding("3"), restored.findEmbedding("3"));
+
+        restored.add(List.of(new Document("4", "spring", Map.of())));
+        assertEquals("4", restored.similaritySearch(request).get(0).getId());
+    }
+
+    @Test
+    void reAddingLoadedDocumentsLeavesNoTombstones(@TempDir Path workDir) throws Exception {
+        List<Document> documents = List.of(
+                new Document("1", "spring ai", Map.of("fingerprint", 1L << 40, "small", 7L, "weight", 0.1f)),
+                new Document("2", "rag", Map.of("page", 3, "tags", List.of(1L, 2L), "nested", Map.of("score", 0.3f))));
+        HnswVectorStore store = HnswVectorStore.builder(new HashingEmbeddingModel()).build();
+        store.add(documents);
+        Path file = workDir.resolve("store.snapshot");
+        store.save(file);
+
+        HnswVectorStore restored = HnswVectorStore.builder(new HashingEmbeddingModel()).build();
+        restored.load(file);
+        restored.add(documents);
+
+        assertEquals(List.of(), restored.changed(documents), "快照往返后数值类型变化不算内容变化");
+        assertEquals(0, restored.tombstones());
+        assertEquals(List.of("2"), restored.changed(List.of(
+                documents.get(0), new Document("2", "rag", Map.of("page", 4)))).stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void snapshotReadSpansMultipleMappedChunksAndRejectsCorruption(@TempDir Path workDir) throws Exception {
+        Random random = new Random(3);
+        HnswIndex index = new HnswIndex(32, 8, 100, 42);
+        List<Document> documents = new ArrayList<>();
+        Map<String, Integer> nodesById = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            int node = index.add(randomVector(random, 32));
+            documents.add(new Document("doc-" + i, "text " + i, Map.of("n", i)));
+            nodesById.put("doc-" + i, node);
+        }
+        Path file = workDir.resolve("chunked.snapshot");
+        HnswSnapshot.write(file, new HnswSnapshot.Contents(index, documents, nodesById));
+
+        // 1000 字节的段既不是向量长度的整数倍，也远小于向量块，向量与邻居都会跨段
+        HnswSnapshot.Contents restored = HnswSnapshot.read(file, 100, 42, VectorQuantization.NONE, 4, 1000);
+        for (int node = 0; node < index.size(); node++) {
+            assertArrayEquals(index.vector(node), restored.index().vector(node));
+            assertArrayEquals(index.links(node)[0], restored.index().links(node)[0]);
+        }
+        assertEquals("text 499", restored.documents().get(nodesById.get("doc-499")).getText());
+
+        // 把第一个节点的层数改成超出最大层数：必须报告文件损坏，而不是数组越界
+        long graphOffset = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(64);
+            channel.read(header, 0);
+            graphOffset = header.getLong(8 * Integer.BYTES + Long.BYTES);
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, 1000), graphOffset);
+        }
+        assertThrows(IOException.class,
+                () -> HnswSnapshot.read(file, 100, 42, VectorQuantization.NONE, 4, 1000));
+        Files.write(file, Arrays.copyOf(Files.readAllBytes(file), (int) graphOffset - 7));
+        assertThrows(IOException.class, () -> HnswSnapshot.read(file, 100, 42, VectorQuantization.NONE, 4));
+    }
+
+    private static float[] randomVector(Random random, int dimensions) {
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static Set<String> filtered(HnswVectorStore store, Filter.Expression filter) {
+        return ids(store.similaritySearch(SearchRequest.builder().query("spring").topK(10).filterExpression(filter)
+                .build()));
+    }
+
+    private static Set<Path> vectorFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("rag-vectors-"))
+                    .collect(Collectors.toCollection(HashSet::new));
+        }
+    }
+
+    private static Set<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).collect(Collectors.toSet());
+    }
+
+    private static float[] clusteredVector(Random random, float[] centroid) {
+        float[] vector = randomVector(random, centroid.length);
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = centroid[i] + vector[i] * 0.5f;
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    /**
+     * 按文本哈希生成伪随机向量的嵌入模型，不同文本的向量互不相同；分量非负，相似度都不低于默认阈值 0
+     */
+    private static class HashingEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                float[] vector = randomVector(new Random(text.hashCode()), 32);
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = Math.abs(vector[i]);
+                }
+                embeddings.add(new Embedding(vector, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+
+    /**
+     * 按固定映射返回向量的嵌入模型
+     */
+    private static class FixedEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                // SimpleVectorStore 嵌入的是带元数据前缀的格式化内容
+                embeddings.add(new Embedding(VECTORS.get(text.substring(text.lastIndexOf('\n') + 1)),
+                        embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return VECTORS.get(document.getText());
+        }
+
+        @Override
+        public int dimensions() {
+            return 3;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package dev.dong4j.ai.spring.vectorstore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import dev.dong4j.ai.spring.advisor.ContextPacker;
+import dev.dong4j.ai.spring.retrieval.Bm25Index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关键词索引装饰器测试，覆盖只为有变化的文档更新关键词索引与知识库版本号、入库时写入 token 数，
+ * 以及按过滤表达式删除时同步关键词索引。
+ */
+class KeywordIndexedVectorStoreTest {
+
+    private final HnswVectorStore hnswVectorStore = HnswVectorStore.builder(new LengthEmbeddingModel()).build();
+    private final Bm25Index keywordIndex = new Bm25Index(1.2f, 0.75f);
+    private final KnowledgeBaseVersion version = new KnowledgeBaseVersion();
+    private final KeywordIndexedVectorStore store = new KeywordIndexedVectorStore(hnswVectorStore, keywordIndex,
+            version, new ContextPacker(new JTokkitTokenCountEstimator(), 3000, 0.8, new SimpleMeterRegistry()));
+
+    @Test
+    void reAddingUnchangedDocumentsTouchesNothing() {
+        store.add(List.of(doc("1", "向量检索"), doc("2", "提示词模板")));
+        long afterFirstAdd = version.current();
+
+        store.add(List.of(doc("1", "向量检索"), doc("2", "提示词模板")));
+        assertEquals(afterFirstAdd, version.current(), "内容未变的重复写入不使缓存失效");
+        assertEquals(0, keywordIndex.compact(), "内容未变的重复写入不在关键词索引中留下墓碑");
+        assertEquals(0, hnswVectorStore.tombstones());
+
+        store.add(List.of(doc("1", "向量检索"), doc("2", "重排模型")));
+        assertEquals(afterFirstAdd + 1, version.current());
+        assertEquals(1, keywordIndex.compact());
+        assertEquals("2", keywordIndex.search("重排", 5).get(0).getId());
+
+        // 两路检索结果都带有入库时写入的 token 数
+        Document keywordHit = keywordIndex.search("重排", 5).get(0);
+        Document vectorHit = store.similaritySearch(SearchRequest.builder().query("重排模型").topK(1).build()).get(0);
+        for (Document hit : List.of(keywordHit, vectorHit)) {
+            assertEquals(new JTokkitTokenCountEstimator().estimate(hit.getText()),
+                    hit.getMetadata().get(ContextPacker.TOKEN_COUNT_METADATA_KEY));
+        }
+    }
+
+    @Test
+    void filterDeleteRemovesMatchingDocumentsFromKeywordIndex() {
+        store.add(List.of(
+                new Document("1", "向量检索 Spring", Map.of("source", "a.md")),
+                new Document("2", "向量检索 Milvus", Map.of("source", "b.md")),
+                new Document("3", "向量检索 PgVector", Map.of("source", "a.md"))));
+        long beforeDelete = version.current();
+
+        store.delete("source == 'a.md'");
+
+        assertEquals(List.of("2"), keywordIndex.search("向量检索", 5).stream().map(Document::getId).toList());
+        assertEquals(1, keywordIndex.size());
+        assertEquals(1, hnswVectorStore.size());
+        assertEquals(beforeDelete + 1, version.current());
+
+        store.delete("source == 'missing.md'");
+        assertEquals(beforeDelete + 1, version.current(), "没有匹配文档时不使缓存失效");
+    }
+
+    private static Document doc(String id, String text) {
+        return new Document(id, text, Map.of());
+    }
+
+    /**
+     * 按文本长度生成向量的嵌入模型
+     */
+    private static class LengthEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(new float[] {1f, text.length()}, embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+    }
+}
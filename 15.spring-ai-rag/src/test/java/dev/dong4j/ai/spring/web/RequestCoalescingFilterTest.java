@@ -0,0 +1,77 @@
+package dev.dong4j.ai.spring.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import dev.dong4j.ai.spring.config.RagProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 请求合并过滤器测试，覆盖并发的相同请求只执行一次并共享响应、流式接口与排除路径不参与合并。
+ */
+class RequestCoalescingFilterTest {
+
+    private final RequestCoalescingFilter filter = new RequestCoalescingFilter(
+            new RagProperties.Coalescing(true, Duration.ofSeconds(5), List.of("/rag/naive/add-document")),
+            new SimpleMeterRegistry());
+
+    @Test
+    void concurrentIdenticalRequestsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain chain = (request, response) -> {
+            executions.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.setContentType("text/plain;charset=UTF-8");
+            response.getOutputStream().write("答案".getBytes(StandardCharsets.UTF_8));
+        };
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<MockHttpServletResponse> leader = executor.submit(() -> get("/rag/naive/query", "Spring AI", chain));
+            while (executions.get() == 0) {
+                Thread.onSpinWait();
+            }
+            // 参数大小写与空白不同，规范化后仍是同一个请求
+            Future<MockHttpServletResponse> follower =
+                    executor.submit(() -> get("/rag/naive/query", "  spring   ai ", chain));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertEquals("答案", leader.get().getContentAsString(StandardCharsets.UTF_8));
+            assertEquals("答案", follower.get().getContentAsString(StandardCharsets.UTF_8));
+            assertEquals("text/plain;charset=UTF-8", follower.get().getContentType());
+        }
+        assertEquals(1, executions.get());
+
+        get("/rag/naive/query", "Spring AI", chain);
+        get("/rag/naive/query/stream", "Spring AI", chain);
+        get("/rag/naive/add-document", "Spring AI", chain);
+        assertEquals(4, executions.get(), "已完成的请求不缓存，流式接口与排除路径直接执行");
+    }
+
+    private MockHttpServletResponse get(String path, String query, FilterChain chain) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.addParameter("query", query);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}